@@ -0,0 +1,386 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.w3c.dom.Document;
+
+/**
+ * Generates the synthetic xhtml pages and resource bundles of the benchmarks.
+ * The content depends only on the shape, the size and the seed, so every run
+ * measures the same input. The pages use the xhtml 1.0 transitional DOCTYPE,
+ * the JSF/Seam tags and the kind of texts the utility finds in real projects:
+ * plain texts, texts with entities and EL expressions, value attributes, date
+ * patterns and texts without letters.
+ */
+public class Corpus {
+
+	/**
+	 * The shapes of the generated pages
+	 */
+	public enum Shape {
+
+		/**
+		 * Many small pages with a form each, size = fields per form
+		 */
+		SMALL_FORMS,
+
+		/**
+		 * Few pages with a big data table each, size = rows per table
+		 */
+		HUGE_TABLES,
+
+		/**
+		 * Templates nested deep, size = nesting depth
+		 */
+		NESTED_TEMPLATES
+	}
+
+	/**
+	 * The locales of the generated resource bundles
+	 */
+	public static final String[] LOCALES = { "en", "de", "hu" };
+
+	private static final String[] WORDS = { "Order", "customer", "name", "address", "delivery", "date", "total",
+			"price", "status", "active", "Edit", "details", "Save", "Cancel", "Search", "results", "invoice", "number",
+			"Département", "Größe", "Ügyfél", "tükörfúrógép", "payment", "method", "shipping", "note", "quantity" };
+
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+			+ "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" "
+			+ "\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n"
+			+ "<ui:composition xmlns=\"http://www.w3.org/1999/xhtml\" xmlns:ui=\"http://java.sun.com/jsf/facelets\" "
+			+ "xmlns:h=\"http://java.sun.com/jsf/html\" xmlns:f=\"http://java.sun.com/jsf/core\" "
+			+ "xmlns:s=\"http://jboss.com/products/seam/taglib\">\n";
+
+	private static final String FOOTER = "</ui:composition>\n";
+
+	private Corpus() {
+	}
+
+	/**
+	 * Returns the number of pages of a corpus of the shape
+	 *
+	 * @param shape the shape
+	 * @return the number of pages
+	 */
+	public static int getPageCount(Shape shape) {
+		switch (shape) {
+		case SMALL_FORMS:
+			return 200;
+		case HUGE_TABLES:
+			return 4;
+		default:
+			return 20;
+		}
+	}
+
+	/**
+	 * Returns the size parameter of the pages of a corpus of the shape
+	 *
+	 * @param shape the shape
+	 * @return fields per form, rows per table or nesting depth
+	 */
+	public static int getPageSize(Shape shape) {
+		switch (shape) {
+		case SMALL_FORMS:
+			return 12;
+		case HUGE_TABLES:
+			return 2000;
+		default:
+			return 150;
+		}
+	}
+
+	/**
+	 * Generates a page
+	 *
+	 * @param shape the shape of the page
+	 * @param size  fields per form, rows per table or nesting depth
+	 * @param seed  the seed of the texts
+	 * @return the content of the page
+	 */
+	public static String page(Shape shape, int size, long seed) {
+
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder(HEADER);
+
+		switch (shape) {
+		case SMALL_FORMS:
+			smallForm(sb, random, size);
+			break;
+		case HUGE_TABLES:
+			hugeTable(sb, random, size);
+			break;
+		default:
+			nestedTemplate(sb, random, size);
+			break;
+		}
+
+		sb.append(FOOTER);
+		return sb.toString();
+	}
+
+	private static void smallForm(StringBuilder sb, Random random, int fields) {
+
+		sb.append("  <h1>").append(text(random, 3)).append("</h1>\n");
+		sb.append("  <h:form id=\"form\">\n");
+		sb.append("    <h:panelGrid columns=\"2\">\n");
+
+		for (int i = 0; i < fields; i++) {
+			sb.append("      <h:outputLabel for=\"f").append(i).append("\" value=\"").append(text(random, 2))
+					.append("\"/>\n");
+			sb.append("      <h:inputText id=\"f").append(i).append("\" value=\"#{bean.field").append(i)
+					.append("}\"/>\n");
+			if (i % 4 == 3) {
+				sb.append("      <s:convertDateTime pattern=\"yyyy.MM.dd\"/>\n");
+			}
+		}
+
+		sb.append("    </h:panelGrid>\n");
+		sb.append("    <p>").append(text(random, 6)).append("&nbsp;#{bean.note}</p>\n");
+		sb.append("    <h:commandButton value=\"Save\" action=\"#{bean.save}\"/>\n");
+		sb.append("    <h:commandButton value=\"Cancel\" action=\"#{bean.cancel}\"/>\n");
+		sb.append("    <s:graphicImage value=\"Logo image\"/>\n");
+		sb.append("  </h:form>\n");
+	}
+
+	private static void hugeTable(StringBuilder sb, Random random, int rows) {
+
+		sb.append("  <h2>").append(text(random, 2)).append("</h2>\n");
+		sb.append("  <table>\n");
+		sb.append("    <tr><th>").append(text(random, 1)).append("</th><th>").append(text(random, 1))
+				.append("</th><th>").append(text(random, 1)).append("</th></tr>\n");
+
+		for (int i = 0; i < rows; i++) {
+			sb.append("    <tr><td>").append(text(random, 1 + random.nextInt(4))).append(" ").append(i)
+					.append("</td><td>").append(random.nextInt(10000)).append(".").append(random.nextInt(100))
+					.append("</td><td><h:outputText value=\"").append(text(random, 2)).append("\"/></td></tr>\n");
+		}
+
+		sb.append("  </table>\n");
+	}
+
+	private static void nestedTemplate(StringBuilder sb, Random random, int depth) {
+
+		for (int i = 0; i < depth; i++) {
+			indent(sb, i);
+			switch (i % 3) {
+			case 0:
+				sb.append("<ui:define name=\"level").append(i).append("\">\n");
+				break;
+			case 1:
+				sb.append("<h:panelGroup layout=\"block\">\n");
+				break;
+			default:
+				sb.append("<div class=\"level").append(i).append("\">\n");
+				break;
+			}
+			indent(sb, i + 1);
+			sb.append("<span>").append(text(random, 2)).append(" &amp; #{level").append(i).append(".name}</span>\n");
+		}
+
+		for (int i = depth - 1; i >= 0; i--) {
+			indent(sb, i);
+			switch (i % 3) {
+			case 0:
+				sb.append("</ui:define>\n");
+				break;
+			case 1:
+				sb.append("</h:panelGroup>\n");
+				break;
+			default:
+				sb.append("</div>\n");
+				break;
+			}
+		}
+	}
+
+	private static void indent(StringBuilder sb, int level) {
+		for (int i = 0; i <= level; i++) {
+			sb.append("  ");
+		}
+	}
+
+	/**
+	 * Returns a text of the given number of words
+	 */
+	private static String text(Random random, int words) {
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a corpus into the directory: the pages into "xhtml" and the resource
+	 * bundles into "bundles". The bundles contain half of the labels of the pages
+	 * (every tenth of them with a different value, so there are conflicts) and
+	 * as many unused labels.
+	 *
+	 * @param root  the directory
+	 * @param shape the shape of the pages
+	 * @return the directory
+	 * @throws Exception on I/O or parse errors
+	 */
+	public static Path write(Path root, Shape shape) throws Exception {
+
+		Path xhtml = root.resolve("xhtml");
+		Path bundles = root.resolve("bundles");
+		Files.createDirectories(bundles);
+
+		int pages = getPageCount(shape);
+		int size = getPageSize(shape);
+		Charset charset = Charset.forName(ISO_8859_1);
+
+		DomPageProcessor processor = new DomPageProcessor(createGrammarCache(), ISO_8859_1);
+		List<Label> labels = new ArrayList<Label>();
+
+		for (int i = 0; i < pages; i++) {
+
+			// a few directories, like the modules of a project
+			Path dir = xhtml.resolve("module" + (i % 5));
+			Files.createDirectories(dir);
+
+			File file = dir.resolve(shape.name().toLowerCase() + i + XHTML).toFile();
+			byte[] content = page(shape, size, i).getBytes(charset);
+			Files.write(file.toPath(), content);
+
+			ProcessedPage page = new ProcessedPage(file);
+			Document document = processor.parse(content);
+			processor.extract(page, document);
+			labels.addAll(page.getLabels());
+		}
+
+		for (String locale : LOCALES) {
+			writeBundle(bundles.resolve(MESSAGES_ + locale + _PROPERTIES).toFile(), labels);
+		}
+
+		return root;
+	}
+
+	private static void writeBundle(File file, List<Label> labels) throws IOException {
+
+		Map<String, String> properties = new HashMap<String, String>();
+
+		for (int i = 0; i < labels.size(); i += 2) {
+			Label label = labels.get(i);
+			String value = i % 20 == 0 ? label.getValue() + " old" : label.getValue();
+			properties.put(label.getName(), value);
+			properties.put("legacy_" + i + "_" + label.getName(), label.getValue());
+		}
+
+		try (BufferedWriter bw = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), ISO_8859_1))) {
+			for (Map.Entry<String, String> e : properties.entrySet()) {
+				bw.write(saveConvert(e.getKey(), true) + "=" + saveConvert(e.getValue(), false) + CRLF);
+			}
+		}
+	}
+
+	/**
+	 * Escapes like {@link java.util.Properties#store} (the utility itself does
+	 * not escape the spaces of the keys)
+	 */
+	private static String saveConvert(String text, boolean escapeSpace) {
+
+		String converted = Util.saveConvert(text, false, true);
+
+		return escapeSpace ? converted.replace(" ", "\\ ") : converted;
+	}
+
+	/**
+	 * Copies the directory tree
+	 *
+	 * @param source the directory to copy
+	 * @param target the copy, created if needed
+	 * @throws IOException on I/O errors
+	 */
+	public static void copy(final Path source, final Path target) throws IOException {
+
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(target.resolve(source.relativize(dir)));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Deletes the directory tree
+	 *
+	 * @param root the directory
+	 * @throws IOException on I/O errors
+	 */
+	public static void delete(Path root) throws IOException {
+
+		if (!Files.exists(root)) {
+			return;
+		}
+
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Creates the grammar cache of the xhtml DTD, like the utility does: the
+	 * classpath resources are registered, they are loaded when a page first
+	 * declares the DTD
+	 *
+	 * @return the grammar cache
+	 */
+	public static GrammarCache createGrammarCache() {
+
+		Map<String, String> entities = new HashMap<String, String>();
+
+		entities.put(W3C_DTD_XHTML_1_0_TRANSITIONAL_EN, XHTML1_TRANSITIONAL_DTD);
+		entities.put(W3C_ENTITIES_LATIN_1_FOR_XHTML_EN, XHTML_LAT1_ENT);
+		entities.put(W3C_ENTITIES_SYMBOLS_FOR_XHTML_EN, XHTML_SYMBOL_ENT);
+		entities.put(W3C_ENTITIES_SPECIAL_FOR_XHTML_EN, XHTML_SPECIAL_ENT);
+
+		return new GrammarCache(entities);
+	}
+
+}
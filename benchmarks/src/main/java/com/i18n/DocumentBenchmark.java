@@ -0,0 +1,98 @@
+package com.i18n;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import com.i18n.Corpus.Shape;
+
+/**
+ * Benchmarks of the processing of a single page held in memory: parsing, label
+ * extraction, serialization and the StAX based processing. The file system is
+ * not used, see {@link RunBenchmark} for the full runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentBenchmark {
+
+	@Param({ "SMALL_FORMS", "HUGE_TABLES", "NESTED_TEMPLATES" })
+	public Shape shape;
+
+	private final File file = new File("page.xhtml");
+
+	private byte[] content;
+
+	private Document extracted;
+
+	private DomPageProcessor domProcessor;
+
+	private StreamingPageProcessor streamingProcessor;
+
+	@Setup
+	public void setup() throws Exception {
+
+		content = Corpus.page(shape, Corpus.getPageSize(shape), 0).getBytes(Charset.forName(Constants.ISO_8859_1));
+
+		GrammarCache grammarCache = Corpus.createGrammarCache();
+		domProcessor = new DomPageProcessor(grammarCache, Constants.ISO_8859_1);
+		streamingProcessor = new StreamingPageProcessor(grammarCache, Constants.ISO_8859_1);
+
+		extracted = domProcessor.parse(content);
+		domProcessor.extract(new ProcessedPage(file), extracted);
+	}
+
+	@Benchmark
+	public Document parse() throws Exception {
+		return domProcessor.parse(content);
+	}
+
+	@Benchmark
+	public ProcessedPage parseAndExtract() throws Exception {
+
+		ProcessedPage page = new ProcessedPage(file);
+		domProcessor.extract(page, domProcessor.parse(content));
+		return page;
+	}
+
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		return domProcessor.serialize(extracted);
+	}
+
+	@Benchmark
+	public byte[] processDom() throws Exception {
+
+		ProcessedPage page = new ProcessedPage(file);
+		Document document = domProcessor.parse(content);
+		domProcessor.extract(page, document);
+		return domProcessor.serialize(document);
+	}
+
+	@Benchmark
+	public byte[] processStreaming() throws Exception {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 2);
+		streamingProcessor.process(new ProcessedPage(file), new ByteArrayInputStream(content), out);
+		return out.toByteArray();
+	}
+
+}
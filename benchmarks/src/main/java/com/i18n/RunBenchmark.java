@@ -0,0 +1,109 @@
+package com.i18n;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.i18n.Corpus.Shape;
+
+/**
+ * Benchmarks of full runs of the utility over a generated corpus: walking the
+ * xhtml dir, processing and rewriting the pages and saving the resource
+ * bundles. Every invocation starts from a fresh copy of the corpus (the copy is
+ * not measured). The console output of the utility is discarded.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RunBenchmark {
+
+	@Param({ "SMALL_FORMS", "HUGE_TABLES", "NESTED_TEMPLATES" })
+	public Shape shape;
+
+	/**
+	 * The options of the run, separated by spaces
+	 */
+	@Param({ "", "-threads=4", "-streaming", "-pipeline -threads=4" })
+	public String options;
+
+	private Path corpus;
+
+	private Path work;
+
+	private PrintStream console;
+
+	@Setup(Level.Trial)
+	public void createCorpus() throws Exception {
+
+		corpus = Corpus.write(Files.createTempDirectory("i18ngen-corpus"), shape);
+
+		console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteCorpus() throws Exception {
+
+		System.setOut(console);
+		Corpus.delete(corpus);
+	}
+
+	@Setup(Level.Invocation)
+	public void copyCorpus() throws Exception {
+
+		work = Files.createTempDirectory("i18ngen-run");
+		Corpus.copy(corpus, work);
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteCopy() throws Exception {
+		Corpus.delete(work);
+	}
+
+	@Benchmark
+	public void run() throws Exception {
+
+		List<String> args = new ArrayList<String>();
+		args.add(work.resolve("xhtml").toString());
+		args.add(work.resolve("bundles").toString());
+
+		for (String option : options.split(" ")) {
+			if (option.length() > 0) {
+				args.add(option);
+			}
+		}
+
+		I18nGen.main(args.toArray(new String[args.size()]));
+	}
+
+}
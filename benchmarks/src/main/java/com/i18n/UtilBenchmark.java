@@ -0,0 +1,69 @@
+package com.i18n;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the single string utilities called for every text and
+ * attribute of every page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UtilBenchmark {
+
+	/**
+	 * The texts: a label, a text with surrounding whitespace, an EL expression
+	 * only, a text with an EL expression, digits only and a long paragraph with
+	 * accented letters
+	 */
+	@Param({ "Customer name", //
+			"\t   Edit order details   \t", //
+			"#{order.customer}", //
+			"Price: #{order.price} EUR", //
+			"12:30 - 2012.04.01", //
+			"Le département a reçu la commande n° 42, la Größe est vérifiée & l'ügyfél est prévenu, merci." })
+	public String text;
+
+	private final File file = new File("pages/orderEdit.xhtml");
+
+	@Benchmark
+	public boolean containsNoLetters() {
+		return Util.containsNoLetters(text);
+	}
+
+	@Benchmark
+	public String trim() {
+		return Util.trim(text);
+	}
+
+	@Benchmark
+	public String convertTextToLabel() {
+		return Util.convertTextToLabel(text);
+	}
+
+	@Benchmark
+	public String getLabelName() {
+		return Util.getLabelName(file, Constants.TEXT_LABEL, text);
+	}
+
+	@Benchmark
+	public String saveConvert() {
+		return Util.saveConvert(text, false, true);
+	}
+
+}
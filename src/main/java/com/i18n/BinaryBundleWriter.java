@@ -0,0 +1,194 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compiles the resource bundles into a binary format, saved next to the
+ * messages_xx.properties files as messages_xx.bin, and generates the
+ * java.util.ResourceBundle classes reading them (messages_xx.java and their
+ * common superclass, BinaryMessages.java). The classes map the files into the
+ * memory and look up the keys with a binary search, so loading a bundle does
+ * not parse it, and the values are decoded only when they are used.<br>
+ * The file: the magic number, the version, the number of the keys and the
+ * offset of the string pool, then the key and value offsets and lengths of
+ * every key, sorted by the UTF-8 bytes of the keys, then the string pool with
+ * the UTF-8 keys and values (a value used more than once is stored once). The
+ * numbers are big-endian ints. The content depends only on the properties, the
+ * files are written only if they changed.
+ */
+public class BinaryBundleWriter {
+
+	/**
+	 * Compiles the resource bundles and generates their classes
+	 *
+	 * @param resourceBundles the resource bundles
+	 * @throws IOException on I/O errors
+	 */
+	public void saveAll(List<ResourceBundle> resourceBundles) throws IOException {
+
+		// the directories of the resource bundles, the superclass is generated into each
+		Set<File> dirs = new LinkedHashSet<File>();
+
+		for (ResourceBundle rb : resourceBundles) {
+
+			File propertiesFile = rb.getPropertiesFile();
+			String name = MESSAGES_ + rb.getLocale();
+
+			boolean written = save(new File(propertiesFile.getParentFile(), name + _BIN), getProperties(rb));
+
+			if (isJavaIdentifier(name)) {
+				dirs.add(propertiesFile.getParentFile());
+				String source = String.format(BINARY_BUNDLE_CLASS, name, BINARY_MESSAGES, name, name + _BIN);
+				save(new File(propertiesFile.getParentFile(), name + _JAVA), source.getBytes(StandardCharsets.UTF_8));
+			} else {
+				System.out.format(BINARY_BUNDLE_NO_CLASS, name);
+			}
+
+			System.out.format(SAVING_BINARY_BUNDLE, name + _BIN, written ? BINARY_BUNDLE_WRITTEN : BINARY_BUNDLE_UNCHANGED);
+		}
+
+		if (!dirs.isEmpty()) {
+			byte[] superclass = loadFromClasspath(BINARY_MESSAGES_TEMPLATE);
+			for (File dir : dirs) {
+				save(new File(dir, BINARY_MESSAGES + _JAVA), superclass);
+			}
+		}
+	}
+
+	/**
+	 * Returns the properties of the resource bundle, as saved into the
+	 * messages_xx.properties file
+	 *
+	 * @param rb the resource bundle
+	 * @return the properties by key
+	 */
+	private static Map<String, String> getProperties(ResourceBundle rb) {
+
+		Properties oldButUsed = rb.getOldButUsed();
+		Properties newProperties = rb.getNewProperties();
+		Properties oldNotUsed = rb.getOldNotUsed();
+
+		addDateTimeFormatIfNotFound(oldButUsed, oldNotUsed, newProperties);
+
+		// the file is read in this order, a later section overrides an earlier one
+		Map<String, String> properties = new HashMap<String, String>();
+		for (Properties section : new Properties[] { oldButUsed, newProperties, oldNotUsed }) {
+			for (String key : section.stringPropertyNames()) {
+				properties.put(key, section.getProperty(key));
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Compiles the properties into the binary format
+	 *
+	 * @param properties the properties by key
+	 * @return the content of the binary file
+	 * @throws IOException on I/O errors
+	 */
+	static byte[] compile(Map<String, String> properties) throws IOException {
+
+		// sorted by the UTF-8 bytes, the order of the binary search of the generated class
+		TreeMap<byte[], String> sorted = new TreeMap<byte[], String>(Arrays::compareUnsigned);
+		for (Map.Entry<String, String> e : properties.entrySet()) {
+			sorted.put(e.getKey().getBytes(StandardCharsets.UTF_8), e.getValue());
+		}
+
+		ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		Map<String, int[]> values = new HashMap<String, int[]>();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				BINARY_BUNDLE_HEADER + sorted.size() * BINARY_BUNDLE_ENTRY);
+		DataOutputStream table = new DataOutputStream(out);
+
+		table.writeInt(BINARY_BUNDLE_MAGIC);
+		table.writeInt(BINARY_BUNDLE_VERSION);
+		table.writeInt(sorted.size());
+		table.writeInt(BINARY_BUNDLE_HEADER + sorted.size() * BINARY_BUNDLE_ENTRY);
+
+		for (Map.Entry<byte[], String> e : sorted.entrySet()) {
+
+			byte[] key = e.getKey();
+			table.writeInt(pool.size());
+			table.writeInt(key.length);
+			pool.write(key);
+
+			int[] value = values.get(e.getValue());
+			if (value == null) {
+				byte[] bytes = e.getValue().getBytes(StandardCharsets.UTF_8);
+				value = new int[] { pool.size(), bytes.length };
+				pool.write(bytes);
+				values.put(e.getValue(), value);
+			}
+			table.writeInt(value[0]);
+			table.writeInt(value[1]);
+		}
+
+		pool.writeTo(table);
+		table.flush();
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Compiles the properties into the file, if they changed
+	 *
+	 * @param file       the binary file
+	 * @param properties the properties by key
+	 * @return true if the file was written
+	 * @throws IOException on I/O errors
+	 */
+	private static boolean save(File file, Map<String, String> properties) throws IOException {
+		return save(file, compile(properties));
+	}
+
+	/**
+	 * Writes the content into the file, if it changed
+	 *
+	 * @param file    the file
+	 * @param content the content of the file
+	 * @return true if the file was written
+	 * @throws IOException on I/O errors
+	 */
+	private static boolean save(File file, byte[] content) throws IOException {
+		byte[] original = file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+		return writeIfChanged(file, original, content);
+	}
+
+	/**
+	 * Returns true if the name can be the name of a class
+	 *
+	 * @param name the name
+	 * @return true if the name is a Java identifier
+	 */
+	private static boolean isJavaIdentifier(String name) {
+
+		if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+			return false;
+		}
+		for (int i = 1; i < name.length(); i++) {
+			if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -9,9 +9,52 @@ public class Constants {
 	public static final String OLD_BUT_USED_PROPERTIES = "OLD but USED properties";
 	public static final String _2_RESOURCE_BUNDLE_DIR_DIRECTORY_CONTAINING_MESSAGES_XX_PROPERTIES_FILES = "\t\t2. resource bundle dir (directory containing messages_xx.properties files)";
 	public static final String _1_XHTML_DIR_DIRECTORY_CONTAINING_XHTML_FILES = "\t\t1. xhtml dir (directory containing xhtml files)";
+	public static final String _3_XHTML_ENCODING = "\t\t3. character encoding of the xhtml files (optional, default: ISO-8859-1)";
 	public static final String PARAMETERS = "PARAMETERS: ";
+	public static final String OPTIONS = "OPTIONS: ";
+	public static final String OPTION_PREFIX = "-";
+	public static final String OPTION_THREADS = "-threads=";
+	public static final String OPTION_THREADS_USAGE = "\t\t-threads=N number of threads processing the xhtml files (default: 1)";
+	public static final String OPTION_STREAMING = "-streaming";
+	public static final String OPTION_STREAMING_USAGE = "\t\t-streaming process the xhtml files with StAX instead of DOM (keeps the original formatting)";
+	public static final String OPTION_SPLICE = "-splice";
+	public static final String OPTION_SPLICE_USAGE = "\t\t-splice only replace the texts and attribute values in the original content of the xhtml files, the rest of the bytes are kept";
+	public static final String OPTION_SHARDS = "-shards";
+	public static final String OPTION_SHARDS_USAGE = "\t\t-shards save every resource bundle in shards, one messages_xx/<lead>.properties file for every key lead (xhtml file), with a messages_xx.index";
+	public static final String OPTION_BINARY = "-binary";
+	public static final String OPTION_BINARY_USAGE = "\t\t-binary also compile every resource bundle into messages_xx.bin and generate the messages_xx.java ResourceBundle classes reading it";
+	public static final String OPTION_DEDUP = "-dedup=";
+	public static final String OPTION_DEDUP_USAGE = "\t\t-dedup=exact|normalized replace the labels of the same text found in more than one page with shared common_ keys (normalized: whitespaces collapsed, case ignored)";
+	public static final String OPTION_GRAMMAR_STATS = "-grammarStats";
+	public static final String OPTION_GRAMMAR_STATS_USAGE = "\t\t-grammarStats report the time saved by parsing the documents with the compiled DTD";
+	public static final String OPTION_INCREMENTAL = "-incremental";
+	public static final String OPTION_INCREMENTAL_USAGE = "\t\t-incremental skip the xhtml files not changed since the last run (see i18ngen.manifest)";
+	public static final String OPTION_INCLUDE = "-include=";
+	public static final String OPTION_INCLUDE_USAGE = "\t\t-include=GLOB,... process only the xhtml files matching the glob patterns";
+	public static final String OPTION_EXCLUDE = "-exclude=";
+	public static final String OPTION_EXCLUDE_USAGE = "\t\t-exclude=GLOB,... skip the files and directories matching the glob patterns (e.g.: target,node_modules)";
+	public static final String OPTION_PIPELINE = "-pipeline";
+	public static final String OPTION_PIPELINE_USAGE = "\t\t-pipeline read, parse, serialize and write the xhtml files in separate stages (DOM only)";
+	public static final String OPTION_VIRTUAL_IO = "-virtualIo";
+	public static final String OPTION_VIRTUAL_IO_USAGE = "\t\t-virtualIo pipeline with the reading and the writing on virtual threads (Java 21+), for slow network file systems";
+	public static final String OPTION_METRICS = "-metrics=";
+	public static final String OPTION_METRICS_USAGE = "\t\t-metrics=json|prometheus print the timing of the phases and the counters at the end of the run";
+	public static final String OPTION_METRICS_FILE = "-metricsFile=";
+	public static final String OPTION_METRICS_FILE_USAGE = "\t\t-metricsFile=PATH write the metrics into the file instead of the standard output";
+	public static final String OPTION_DAEMON = "-daemon";
+	public static final String OPTION_DAEMON_USAGE = "\t\t-daemon keep running, watch the xhtml dir and process the changed files (implies -incremental)";
+	public static final String OPTION_DEBOUNCE = "-debounce=";
+	public static final String OPTION_DEBOUNCE_USAGE = "\t\t-debounce=MS time without changes before the changed files are processed in daemon mode (default: 200)";
+	public static final String OPTION_JOURNAL = "-journal";
+	public static final String OPTION_JOURNAL_USAGE = "\t\t-journal record the labels in i18ngen.journal while running, a failed run is resumed from it";
+	public static final String OPTION_REPORT = "-report";
+	public static final String OPTION_REPORT_USAGE = "\t\t-report only report the labels found and the changes of the resource bundles, no file is written";
+	public static final String UNKNOWN_OPTION = "Unknown option: ";
+	public static final String INVALID_OPTION_VALUE = "Invalid option value: ";
+	public static final String CONFLICTING_OPTIONS = "Conflicting options: ";
 	public static final String OPEN_PARENTHESIS = " (";
 	public static final String NEW_MESSAGE_S_FOUND = " new message(s) found)\r\n";
+	public static final String UNCHANGED_MESSAGE_S_REPLAYED = " message(s) replayed, unchanged)\r\n";
 	public static final char U = 'u';
 	public static final char CHAR_BACKSLASH = '\\';
 
@@ -23,6 +66,26 @@ public class Constants {
 	public static final String GENERATED_ON = "# Generated on ";
 	public static final String COMMENT_LINE = "#########################################################################\r\n";
 	public static final String _PROPERTIES = ".properties";
+	public static final String _INDEX = ".index";
+	public static final String SHARDS = "Shards (lead of the key = shard file)";
+	public static final String SAVING_SHARDS = "Saving %s: %d shard(s), %d rewritten%n";
+	public static final String _BIN = ".bin";
+	public static final String _JAVA = ".java";
+	public static final String BINARY_MESSAGES = "BinaryMessages";
+	public static final String BINARY_MESSAGES_TEMPLATE = "BinaryMessages.java.template";
+	public static final String BINARY_BUNDLE_CLASS = "// Generated by i18ngen, do not edit%n%npublic class %s extends %s {%n%n\tpublic %s() {%n\t\tsuper(\"%s\");%n\t}%n%n}%n";
+	public static final String BINARY_BUNDLE_NO_CLASS = "No class generated for %s, the name is not a Java identifier%n";
+	public static final String SAVING_BINARY_BUNDLE = "Saving %s (%s)%n";
+	public static final String BINARY_BUNDLE_WRITTEN = "written";
+	public static final String BINARY_BUNDLE_UNCHANGED = "unchanged";
+	public static final int BINARY_BUNDLE_MAGIC = 0x49313842;
+	public static final int BINARY_BUNDLE_VERSION = 1;
+	public static final int BINARY_BUNDLE_HEADER = 16;
+	public static final int BINARY_BUNDLE_ENTRY = 16;
+	public static final String DEDUP_EXACT = "exact";
+	public static final String DEDUP_NORMALIZED = "normalized";
+	public static final String COMMON_ = "common_";
+	public static final String DEDUP_SUMMARY = "Deduplication: %d shared key(s) replaced %d page key(s) in %d page(s), %d key(s) and %d byte(s) saved per resource bundle (%d key(s) and %d byte(s) in all)%n";
 	public static final String MESSAGES_ = "messages_";
 	public static final String EQUALS = "=";
 	public static final String YYYY_MM_DD_HH_MM_SS_Z = "yyyy-MM-dd HH:mm:ss z";
@@ -51,6 +114,47 @@ public class Constants {
 	public static final String PATTERN = "pattern";
 	public static final String RES = "/res/";
 	public static final String TEXT_LABEL = "TEXT";
+	public static final String TMP = ".tmp";
+	public static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+	public static final String SHA_256 = "SHA-256";
+	public static final String TAB = "\t";
+	public static final String COMMA = ",";
+	public static final String GLOB = "glob:";
+	public static final String MANIFEST_FILE = "i18ngen.manifest";
+	public static final String MANIFEST_HEADER = "# i18ngen manifest: P path hash result label-count / L name value\r\n";
+	public static final String MANIFEST_PAGE = "P";
+	public static final String MANIFEST_LABEL = "L";
+	public static final String MANIFEST_REWRITTEN = "REWRITTEN";
+	public static final String MANIFEST_UNCHANGED = "UNCHANGED";
+	public static final String JOURNAL_FILE = "i18ngen.journal";
+	public static final String JOURNAL_BATCH = "B";
+	public static final int JOURNAL_BATCH_PAGES = 32;
+	public static final String JOURNAL_RESUMED = "Resuming the failed run, %d page(s) found in the journal%n";
+	public static final String COMMENT_START = "<!--";
+	public static final String COMMENT_END = "-->";
+	public static final String PI_START = "<?";
+	public static final String PI_END = "?>";
+	public static final String DECLARATION_START = "<!";
+	public static final String TRAVERSAL_FEATURE = "Traversal";
+	public static final String TRAVERSAL_VERSION = "2.0";
+	public static final String TAG_START = "<";
+	public static final String END_TAG_START = "</";
+	public static final String CDATA_START = "<![CDATA[";
+	public static final String CDATA_END = "]]>";
+	public static final String DOCTYPE_START = "<!DOCTYPE";
+	public static final String XML_DECLARATION_START = "<?xml";
+	public static final String MARKUP_CHARACTERS = "<>&;=\"'/?![] \t\r\n";
+	public static final String PARAMETER_ENTITY_DECLARATION_START = "<!ENTITY %";
+	public static final String ENTITY_DECLARATION_START = "<!ENTITY";
+	public static final String PUBLIC = "PUBLIC";
+	public static final String INVALID_DTD = "Invalid DTD content: ";
+	public static final String GRAMMAR_CACHE_STATISTICS = "Grammar cache: %d document(s) parsed with the compiled DTD (%d bytes, compiled from %d bytes of DTD and entity files in %.1f ms), the parses took %.1f ms%n";
+	public static final String GRAMMAR_CACHE_SAVED = "Grammar cache: %d sampled document(s) parsed in %.2f ms through the DTD and entity files and in %.2f ms with the compiled DTD (medians), an estimated %.1f ms saved in the run%n";
+	public static final String GRAMMAR_CACHE_NOT_SAMPLED = "Grammar cache: the time saved is not measured, one of every %d documents parsed with the compiled DTD is sampled and there were fewer%n";
+	public static final int GRAMMAR_CACHE_SAMPLE_INTERVAL = 32;
+	public static final String REPORT_CDATA_EVENT = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+	public static final String UNKNOWN_ENTITY = "Unknown entity: ";
+	public static final String RESOURCE_NOT_FOUND = "Resource not found: ";
 
 	public static final String UNDERSCORE = "_";
 	public static final String UTF_8 = "UTF-8";
@@ -66,5 +170,31 @@ public class Constants {
 	public static final String XHTML1_TRANSITIONAL_DTD = "xhtml1-transitional.dtd";
 	public static final String YES = "yes";
 	public static final char CHAR_DOT = '.';
+	public static final char CHAR_SLASH = '/';
 
+
+	public static final int PIPELINE_QUEUE_CAPACITY = 64;
+	public static final int PARALLEL_TASKS_PER_THREAD = 4;
+	public static final String JAVA_VERSION = "java.version";
+	public static final String VIRTUAL_IO_FALLBACK = "Virtual threads are not supported by Java %s, the reading and the writing run on %d platform threads%n";
+	public static final int PROPERTIES_WRITER_BUFFER_SIZE = 256 * 1024;
+	public static final int SHARD_WRITER_BUFFER_SIZE = 8 * 1024;
+	public static final String METRICS_JSON = "json";
+	public static final String METRICS_PROMETHEUS = "prometheus";
+	public static final int METRICS_SLOWEST_PAGES = 10;
+	public static final long DAEMON_DEBOUNCE_MILLIS = 200;
+	public static final String DAEMON_WATCHING = "Watching %s for changes, press Ctrl+C to stop%n";
+	public static final String DAEMON_UPDATED = "Updated in %d ms%n";
+	public static final String DAEMON_ERROR = "Error processing %s: %s%n";
+	public static final String PIPELINE_STATISTICS = "Pipeline: %d ms%n";
+	public static final String REPORT_HEADER = "%nReport (no file was written)%n";
+	public static final String REPORT_PAGES = "Pages: %d, labels: %d, not in any resource bundle: %d%n";
+	public static final String REPORT_PAGE = "  %s: %d label(s), %d new%n";
+	public static final String REPORT_LOCALES = "Resource bundles:%n";
+	public static final String REPORT_LOCALE = "  %s: %d used, %d to add, %d conflicting, %d unused%n";
+	public static final String REPORT_PROPOSED_KEYS = "Proposed keys: %d%n";
+	public static final String REPORT_INDENT = "  ";
+	public static final String CLOSE_PARENTHESIS = ")";
+	public static final String REPORT_LOCALE_SEPARATOR = ", ";
+	public static final String PIPELINE_STAGE_STATISTICS = "  %-9s threads: %2d, pages: %6d, busy: %6d ms, %8.1f pages/s, queue depth max: %2d, avg: %5.1f%n";
 }
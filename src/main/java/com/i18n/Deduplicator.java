@@ -0,0 +1,398 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.i18n.Metrics.Counter;
+
+/**
+ * Replaces the labels of the same text found in more than one page with a
+ * shared label: "common_" and the text converted to a label name (e.g.:
+ * "Save" in orderEdit.xhtml and orderList.xhtml gives common_Save instead of
+ * orderEdit_TEXT_Save and orderList_TEXT_Save). The EL expressions of the
+ * page labels are replaced in the written pages, and the page labels are
+ * replaced in the {@link LabelIndex}.<br>
+ * The texts are compared as they are, or normalized: the whitespaces
+ * collapsed and trimmed, the letters in lower case. The shared label gets the
+ * most frequent form of the text.<br>
+ * A page label is replaced only if its EL expression is found in the written
+ * page. The page labels loaded from the property files stay there, as old and
+ * not used properties.
+ */
+public class Deduplicator {
+
+	/**
+	 * True if the texts are compared normalized
+	 */
+	private final boolean normalized;
+
+	/**
+	 * The character encoding the pages were written with
+	 */
+	private final Charset charset;
+
+	/**
+	 * The manifest recording the pages, null if there is none
+	 */
+	private final Manifest manifest;
+
+	/**
+	 * Constructor
+	 *
+	 * @param normalized true if the texts are compared normalized
+	 * @param charset    the character encoding the pages were written with
+	 * @param manifest   the manifest recording the pages, null if there is none
+	 */
+	public Deduplicator(boolean normalized, Charset charset, Manifest manifest) {
+		this.normalized = normalized;
+		this.charset = charset;
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Replaces the labels of the same text found in more than one page, and
+	 * prints the number of the keys and the bytes saved
+	 *
+	 * @param pages      the merged pages
+	 * @param labelIndex the index the labels of the pages were put into
+	 * @throws IOException on I/O errors
+	 */
+	public void deduplicate(Collection<ProcessedPage> pages, LabelIndex labelIndex) throws IOException {
+
+		// the labels by the (normalized) text, in the order they were found
+		Map<String, Group> groups = new LinkedHashMap<String, Group>();
+		Set<String> names = new HashSet<String>();
+
+		for (ProcessedPage page : pages) {
+			for (Label label : page.getLabels()) {
+				names.add(label.getName());
+				String text = normalize(label.getValue());
+				Group group = groups.get(text);
+				if (group == null) {
+					group = new Group();
+					groups.put(text, group);
+				}
+				group.add(page, label);
+			}
+		}
+
+		// the shared labels by page and by the name of the page label
+		Map<ProcessedPage, Map<String, Label>> sharedLabels = new LinkedHashMap<ProcessedPage, Map<String, Label>>();
+
+		for (Group group : groups.values()) {
+
+			if (group.pages.size() < 2) {
+				continue;
+			}
+
+			Label shared = new Label(group.getSharedName(names), group.getSharedValue());
+
+			for (int i = 0; i < group.labels.size(); i++) {
+				Map<String, Label> pageLabels = sharedLabels.get(group.labelPages.get(i));
+				if (pageLabels == null) {
+					pageLabels = new HashMap<String, Label>();
+					sharedLabels.put(group.labelPages.get(i), pageLabels);
+				}
+				pageLabels.put(group.labels.get(i).getName(), shared);
+			}
+		}
+
+		// the replaced page labels and the shared labels used instead
+		Map<String, Label> replaced = new LinkedHashMap<String, Label>();
+		Map<String, Label> used = new LinkedHashMap<String, Label>();
+		int rewritten = 0;
+
+		for (Map.Entry<ProcessedPage, Map<String, Label>> e : sharedLabels.entrySet()) {
+			if (rewrite(e.getKey(), e.getValue(), replaced, used)) {
+				rewritten++;
+			}
+		}
+
+		// the page labels still used by a page (whose EL expression was not found)
+		Set<String> remaining = new HashSet<String>();
+		for (ProcessedPage page : pages) {
+			for (Label label : page.getLabels()) {
+				remaining.add(label.getName());
+			}
+		}
+
+		long keys = 0;
+		long bytes = 0;
+
+		for (Label label : replaced.values()) {
+			if (!remaining.contains(label.getName())) {
+				labelIndex.removeLabel(label.getName());
+				if (!labelIndex.isLoaded(label.getName())) {
+					keys++;
+					bytes += getPropertyLength(label);
+				}
+			}
+		}
+
+		for (Label label : used.values()) {
+			if (!labelIndex.isLoaded(label.getName())) {
+				keys--;
+				bytes -= getPropertyLength(label);
+			}
+			labelIndex.addLabel(label.getValue(), label.getName());
+		}
+
+		int resourceBundles = labelIndex.getResourceBundles().size();
+
+		Metrics.add(Counter.DEDUP_KEYS_SAVED, keys * resourceBundles);
+		Metrics.add(Counter.DEDUP_BYTES_SAVED, bytes * resourceBundles);
+
+		System.out.format(DEDUP_SUMMARY, used.size(), replaced.size(), rewritten, keys, bytes,
+				keys * resourceBundles, bytes * resourceBundles);
+	}
+
+	/**
+	 * Replaces the EL expressions of the page labels with the ones of the shared
+	 * labels in the page, and the page labels in the {@link ProcessedPage}
+	 *
+	 * @param page         the page
+	 * @param sharedLabels the shared labels by the name of the page label
+	 * @param replaced     the replaced page labels are put into it, by name
+	 * @param used         the shared labels used are put into it, by name
+	 * @return true if the page was written
+	 * @throws IOException on I/O errors
+	 */
+	private boolean rewrite(ProcessedPage page, Map<String, Label> sharedLabels, Map<String, Label> replaced,
+			Map<String, Label> used) throws IOException {
+
+		File file = page.getFile();
+		byte[] original = Files.readAllBytes(file.toPath());
+
+		byte[] start = EL_START_MESSAGES.getBytes(charset);
+		byte[] end = EL_ENDS.getBytes(charset);
+
+		// the names of the page labels replaced in the content
+		Set<String> names = new HashSet<String>();
+		ByteArrayOutputStream content = new ByteArrayOutputStream(original.length);
+		int copied = 0;
+
+		for (int i = indexOf(original, start, 0); i >= 0; i = indexOf(original, start, i)) {
+
+			int nameStart = i + start.length;
+			int nameEnd = indexOf(original, end, nameStart);
+			if (nameEnd < 0) {
+				break;
+			}
+
+			String name = new String(original, nameStart, nameEnd - nameStart, charset);
+			Label shared = sharedLabels.get(name);
+
+			if (shared != null && !shared.getName().equals(name)) {
+				content.write(original, copied, nameStart - copied);
+				content.write(shared.getName().getBytes(charset));
+				copied = nameEnd;
+				names.add(name);
+			}
+			i = nameEnd + end.length;
+		}
+		content.write(original, copied, original.length - copied);
+
+		for (ListIterator<Label> i = page.getLabels().listIterator(); i.hasNext();) {
+
+			Label label = i.next();
+			Label shared = sharedLabels.get(label.getName());
+
+			// a page label whose EL expression was not written by this run (e.g. an
+			// entity reference) is kept
+			if (shared != null && (shared.getName().equals(label.getName()) || names.contains(label.getName()))) {
+				if (names.contains(label.getName())) {
+					replaced.putIfAbsent(label.getName(), label);
+				}
+				i.set(shared);
+				used.put(shared.getName(), shared);
+			}
+		}
+
+		byte[] rewritten = content.toByteArray();
+
+		if (!writeIfChanged(file, original, rewritten)) {
+			return false;
+		}
+
+		page.setRewritten(true);
+
+		if (manifest != null) {
+			page.setHash(hash(rewritten));
+			manifest.record(page);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of the target bytes
+	 *
+	 * @param content the content
+	 * @param target  the bytes to find
+	 * @param from    the index to start from
+	 * @return the index, -1 if the target was not found
+	 */
+	static int indexOf(byte[] content, byte[] target, int from) {
+
+		for (int i = from; i + target.length <= content.length; i++) {
+			if (matches(content, i, target)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if the target bytes are found at the index
+	 */
+	private static boolean matches(byte[] content, int index, byte[] target) {
+		for (int j = 0; j < target.length; j++) {
+			if (content[index + j] != target[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the text as it is compared
+	 *
+	 * @param text the text of a label
+	 * @return the text, or the text with the whitespaces collapsed and trimmed and
+	 *         the letters in lower case
+	 */
+	String normalize(String text) {
+
+		if (!normalized) {
+			return text;
+		}
+
+		StringBuilder sb = new StringBuilder(text.length());
+		boolean whitespace = false;
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				whitespace = true;
+			} else {
+				if (whitespace && sb.length() > 0) {
+					sb.append(' ');
+				}
+				whitespace = false;
+				sb.append(c);
+			}
+		}
+		return sb.toString().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the length of the line of the label in a property file
+	 */
+	private static int getPropertyLength(Label label) {
+		// the escaped line is ASCII, one byte for every character
+		return saveConvert(label.getName(), true, true).length() + EQUALS.length()
+				+ saveConvert(label.getValue(), false, true).length() + CRLF.length();
+	}
+
+	/**
+	 * The labels of the same (normalized) text
+	 */
+	private static class Group {
+
+		/**
+		 * The pages of the labels
+		 */
+		private final Set<ProcessedPage> pages = new HashSet<ProcessedPage>();
+
+		/**
+		 * The page of every label in {@link #labels}
+		 */
+		private final List<ProcessedPage> labelPages = new ArrayList<ProcessedPage>();
+
+		/**
+		 * The labels in the order they were found
+		 */
+		private final List<Label> labels = new ArrayList<Label>();
+
+		/**
+		 * The number of the labels by text, in the order the texts were found
+		 */
+		private final Map<String, Integer> texts = new LinkedHashMap<String, Integer>();
+
+		/**
+		 * Adds a label of a page
+		 */
+		void add(ProcessedPage page, Label label) {
+			pages.add(page);
+			labelPages.add(page);
+			labels.add(label);
+			Integer count = texts.get(label.getValue());
+			texts.put(label.getValue(), count == null ? 1 : count + 1);
+		}
+
+		/**
+		 * Returns the most frequent text, the first found one of the most frequent
+		 * ones
+		 */
+		String getSharedValue() {
+
+			String value = null;
+			int max = 0;
+
+			for (Map.Entry<String, Integer> e : texts.entrySet()) {
+				if (e.getValue() > max) {
+					value = e.getKey();
+					max = e.getValue();
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * Returns the name of the shared label: "common_" and the text converted to
+		 * a label name, with a number if the name is used by other labels. The
+		 * shared label of an earlier deduplication keeps its name.
+		 *
+		 * @param names the names of all the labels, the returned name is added
+		 */
+		String getSharedName(Set<String> names) {
+
+			String base = COMMON_ + convertTextToLabel(getSharedValue());
+			String name = base;
+
+			for (int n = 2; names.contains(name) && !hasLabel(name); n++) {
+				name = base + CHAR_UNDERSCORE + n;
+			}
+			names.add(name);
+			return name;
+		}
+
+		/**
+		 * Returns true if a label of the group has the name
+		 */
+		private boolean hasLabel(String name) {
+			for (Label label : labels) {
+				if (label.getName().equals(name)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.i18n;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory tree with a {@link WatchService} and reports the changed
+ * paths in batches: a batch is reported when no change arrived for the
+ * debounce time, so the many events of a save (or of a checkout) are handled
+ * together.<br>
+ * The directories excluded by the {@link PathWalker} are not watched, the new
+ * directories are registered when they are created.
+ */
+public class DirectoryWatcher implements Closeable {
+
+	/**
+	 * Receives the batches of changes
+	 */
+	public interface Listener {
+
+		/**
+		 * Called with the paths created, modified or deleted since the last batch
+		 *
+		 * @param paths    the changed files and directories
+		 * @param overflow true if events were lost, every file may have changed
+		 * @throws Exception on any problem, the watching stops
+		 */
+		void changed(Set<Path> paths, boolean overflow) throws Exception;
+	}
+
+	/**
+	 * The root of the watched tree
+	 */
+	private final Path root;
+
+	/**
+	 * The walker selecting the directories to watch
+	 */
+	private final PathWalker walker;
+
+	/**
+	 * The time without changes before a batch is reported
+	 */
+	private final long debounceMillis;
+
+	/**
+	 * The watch service of the file system of the tree
+	 */
+	private final WatchService watchService;
+
+	/**
+	 * The watched directories by their keys
+	 */
+	private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+	/**
+	 * Constructor, registers the directories of the tree
+	 *
+	 * @param root           the root of the tree
+	 * @param walker         the walker with the exclude patterns
+	 * @param debounceMillis the time without changes before a batch is reported
+	 * @throws Exception on I/O errors
+	 */
+	public DirectoryWatcher(Path root, PathWalker walker, long debounceMillis) throws Exception {
+		this.root = root;
+		this.walker = walker;
+		this.debounceMillis = debounceMillis;
+		this.watchService = root.getFileSystem().newWatchService();
+
+		registerDirectories();
+	}
+
+	/**
+	 * Registers the directories of the tree which are not watched yet (a
+	 * directory is registered only once, registering it again returns the same
+	 * key)
+	 */
+	private void registerDirectories() throws Exception {
+
+		register(root);
+
+		walker.walk(root, new Visitor() {
+
+			public boolean visit(Path path, BasicFileAttributes attributes) {
+				if (attributes.isDirectory()) {
+					try {
+						register(path);
+					} catch (IOException e) {
+						// deleted in the meantime, its parent reports it
+					}
+					return true;
+				}
+				return false;
+			}
+
+			public boolean visit(File f) {
+				return f.isDirectory();
+			}
+
+			public void process(File f) {
+			}
+		});
+	}
+
+	/**
+	 * Registers a directory
+	 */
+	private void register(Path directory) throws IOException {
+		directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+	}
+
+	/**
+	 * Waits for the changes and reports them to the listener, until the thread
+	 * is interrupted or the watcher is closed
+	 *
+	 * @param listener the listener
+	 * @throws Exception the exception of the listener, or an I/O error
+	 */
+	public void watch(Listener listener) throws Exception {
+
+		Set<Path> paths = new LinkedHashSet<Path>();
+		boolean overflow = false;
+
+		try {
+			while (true) {
+
+				WatchKey key;
+
+				if (paths.isEmpty() && !overflow) {
+					key = watchService.take();
+				} else {
+					key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+				}
+
+				if (key == null) {
+					listener.changed(paths, overflow);
+					paths = new LinkedHashSet<Path>();
+					overflow = false;
+					continue;
+				}
+
+				Path directory = directories.get(key);
+				boolean newDirectory = false;
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+
+					if (event.kind() == OVERFLOW || directory == null) {
+						overflow = true;
+						continue;
+					}
+
+					Path path = directory.resolve((Path) event.context());
+					paths.add(path);
+
+					if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+						newDirectory = true;
+					}
+				}
+
+				if (!key.reset()) {
+					directories.remove(key);
+				}
+
+				if (newDirectory) {
+					// the files created before the registration are found by the listener
+					registerDirectories();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+
+	/**
+	 * Stops the watching
+	 */
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+}
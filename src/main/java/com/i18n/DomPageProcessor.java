@@ -0,0 +1,363 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.DocumentTraversal;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.TreeWalker;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.i18n.Metrics.Counter;
+import com.i18n.Metrics.Phase;
+
+/**
+ * Processes an xhtml file through the DOM: parses the file, replaces the texts
+ * with the EL expressions of the labels and serializes the document back into
+ * the file. The steps are also available one by one for the
+ * {@link PagePipeline}.
+ */
+public class DomPageProcessor implements PageProcessor {
+
+	/**
+	 * The compiled xhtml DTD shared by all the parsed documents
+	 */
+	private final GrammarCache grammarCache;
+
+	/**
+	 * Character encoding for XHTML files.
+	 */
+	private final String xhtmlEncoding;
+
+	/**
+	 * Resolves the xhtml entities from the {@link #grammarCache}
+	 */
+	private final EntityResolver entityResolver = new EntityResolver() {
+
+		public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+
+			return grammarCache.getInputSource(publicId);
+		}
+	};
+
+	/**
+	 * Resolves the xhtml entities from the original DTD and entity files, for the
+	 * samples of the grammar cache statistics
+	 */
+	private final EntityResolver originalEntityResolver = new EntityResolver() {
+
+		public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+
+			return grammarCache.getOriginalInputSource(publicId);
+		}
+	};
+
+	/**
+	 * Called before a page is rewritten, null if there is nothing to do
+	 */
+	private WriteAhead writeAhead;
+
+	/**
+	 * Constructor
+	 *
+	 * @param grammarCache  the cache of the xhtml DTD and entities
+	 * @param xhtmlEncoding the character encoding of the xhtml files
+	 */
+	public DomPageProcessor(GrammarCache grammarCache, String xhtmlEncoding) {
+		this.grammarCache = grammarCache;
+		this.xhtmlEncoding = xhtmlEncoding;
+	}
+
+	/**
+	 * Parses the file, collects the texts and rewrites the file.
+	 *
+	 * @param file the file to be processed.
+	 * @return the labels found in the file
+	 * @throws Exception on any problem
+	 */
+	public ProcessedPage process(File file) throws Exception {
+
+		ProcessedPage page = new ProcessedPage(file);
+
+		byte[] original = readFile(file);
+
+		Document document = parse(original);
+
+		extract(page, document);
+
+		// nothing replaced, the serialization would only reformat the page
+		if (!page.isModified()) {
+			return page;
+		}
+
+		page.setRewritten(write(page, original, serialize(document)));
+
+		return page;
+	}
+
+	/**
+	 * Sets the listener called before a page is rewritten
+	 *
+	 * @param writeAhead the listener or null
+	 */
+	public void setWriteAhead(WriteAhead writeAhead) {
+		this.writeAhead = writeAhead;
+	}
+
+	/**
+	 * Writes the new content of the page, unless the file already has the same
+	 * content. The {@link WriteAhead} is called before the file is replaced.
+	 *
+	 * @param page     the processed page
+	 * @param original the content of the file
+	 * @param content  the new content of the file
+	 * @return true if the file was written
+	 * @throws IOException on I/O errors
+	 */
+	boolean write(ProcessedPage page, byte[] original, byte[] content) throws IOException {
+
+		return writeIfChanged(page, original, content, writeAhead);
+	}
+
+	/**
+	 * Parses the content of an xhtml file
+	 *
+	 * @param original the content of the file
+	 * @return the document
+	 * @throws Exception on parse errors
+	 */
+	public Document parse(final byte[] original) throws Exception {
+
+		long start = Metrics.start();
+
+		Document document = parse(original, entityResolver);
+
+		Metrics.stop(Phase.PARSING, start);
+
+		if (grammarCache.isStatistics()) {
+			grammarCache.recordParse(System.nanoTime() - start, new GrammarCache.DocumentParser() {
+
+				public void parse(boolean originalDtd) throws Exception {
+					DomPageProcessor.this.parse(original, originalDtd ? originalEntityResolver : entityResolver);
+				}
+			});
+		}
+		return document;
+	}
+
+	/**
+	 * Parses the content of an xhtml file with the entity resolver
+	 */
+	private Document parse(byte[] original, EntityResolver resolver) throws Exception {
+
+		BufferedReader br = new BufferedReader(
+				new InputStreamReader(new ByteArrayInputStream(original), xhtmlEncoding));
+
+		InputSource fis = new InputSource(br);
+
+		DocumentBuilder builder = XmlPools.getDocumentBuilder(resolver);
+
+		return builder.parse(fis);
+	}
+
+	/**
+	 * Serializes the document
+	 *
+	 * @param document the document
+	 * @return the content of the rewritten file
+	 * @throws Exception on serialization errors
+	 */
+	public byte[] serialize(Document document) throws Exception {
+
+		String modified = getString(document);
+
+		// written with the default encoding, like a FileWriter would do
+		return modified.getBytes(Charset.defaultCharset());
+	}
+
+	/**
+	 * Collects the texts of the document and replaces them with the EL
+	 * expressions of the labels
+	 *
+	 * @param page     the processed xhtml file collecting the labels
+	 * @param document the parsed document
+	 * @return the number of the processed labels
+	 */
+	public int extract(ProcessedPage page, Document document) {
+
+		long start = Metrics.start();
+
+		int labels = processDocument(page, document, 0);
+
+		Metrics.stop(Phase.PROCESS_DOCUMENT, start);
+		return labels;
+	}
+
+	/**
+	 * Process the XML Document, collects the textual string. The nodes are
+	 * visited in document order without recursion (the stack depth does not
+	 * depend on the nesting of the page): with a {@link TreeWalker} if the DOM
+	 * implementation supports the traversal feature, following the sibling and
+	 * parent pointers otherwise. Every node is visited once, in linear time.
+	 *
+	 * @param page     the processed xhtml file collecting the labels
+	 * @param document the Document instance to be processed.
+	 * @param counter  initial processed label number
+	 * @return the number of the processed labels
+	 */
+	public int processDocument(ProcessedPage page, Node document, int counter) {
+
+		long nodes = 0;
+		TreeWalker walker = createTreeWalker(document);
+
+		if (walker != null) {
+
+			for (Node node = walker.nextNode(); node != null; node = walker.nextNode()) {
+				nodes++;
+				counter += processNode(page, node);
+			}
+		} else {
+
+			Node node = document.getFirstChild();
+
+			while (node != null) {
+				nodes++;
+				counter += processNode(page, node);
+
+				// the first child, or the next sibling of the node or of its nearest ancestor
+				Node next = node.getFirstChild();
+				while (next == null && node != document) {
+					next = node.getNextSibling();
+					if (next == null) {
+						node = node.getParentNode();
+					}
+				}
+				node = next;
+			}
+		}
+
+		Metrics.add(Counter.NODES_VISITED, nodes);
+		return counter;
+	}
+
+	/**
+	 * Returns a {@link TreeWalker} of the descendants of the node, null if the
+	 * DOM implementation does not support the traversal feature
+	 *
+	 * @param root the root of the traversal
+	 * @return the {@link TreeWalker} or null
+	 */
+	private static TreeWalker createTreeWalker(Node root) {
+
+		Document document = root.getNodeType() == Node.DOCUMENT_NODE ? (Document) root : root.getOwnerDocument();
+
+		if (document instanceof DocumentTraversal
+				&& document.getImplementation().hasFeature(TRAVERSAL_FEATURE, TRAVERSAL_VERSION)) {
+			return ((DocumentTraversal) document).createTreeWalker(root, NodeFilter.SHOW_ALL, null, true);
+		}
+		return null;
+	}
+
+	/**
+	 * Process a node of the document
+	 *
+	 * @param page the processed xhtml file collecting the labels
+	 * @param node the node
+	 * @return the number of the processed labels
+	 */
+	private int processNode(ProcessedPage page, Node node) {
+
+		if (node.getNodeType() == Node.TEXT_NODE) {
+			return processTextNode(page, node);
+		}
+		return processNonTextNode(page, node);
+	}
+
+	/**
+	 * Process xhtml elements which are not <s:graphicImage>
+	 *
+	 * @param page      the processed XHTML file collecting the labels
+	 * @param childNode {@link Node}
+	 * @throws DOMException on DOM errors
+	 */
+	private int processNonTextNode(ProcessedPage page, Node childNode) throws DOMException {
+
+		String nodeName = getNodeNameWithoutNameSpace(childNode.getNodeName());
+
+		if (!nodeName.equals(GRAPHICIMAGE)) {
+
+			NamedNodeMap attributes = childNode.getAttributes();
+
+			if (attributes != null) {
+				for (int j = 0; j < attributes.getLength(); j++) {
+
+					Node item = attributes.item(j);
+
+					if (item.getNodeName().equals(PATTERN) && !DATE_TIME_FORMAT_EL.equals(item.getNodeValue())) {
+						item.setNodeValue(DATE_TIME_FORMAT_EL);
+						page.setModified(true);
+					}
+
+					if (item.getNodeName().equals(VALUE)) {
+						String value = item.getNodeValue();
+						int start = TextScanner.trimStart(value, 0, value.length());
+						int end = TextScanner.trimEnd(value, start, value.length());
+
+						if (!TextScanner.containsNoLetters(value, start, end)) {
+							String text = value.substring(start, end);
+							String labelName = getLabelName(page.getFile(), nodeName, text);
+
+							page.addLabel(text, labelName);
+
+							item.setNodeValue(geti18nLabel(labelName));
+
+							return 1;
+						}
+					}
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Process Text Node in .xhtml
+	 *
+	 * @param page      the processed XHTML file collecting the labels
+	 * @param childNode
+	 * @throws DOMException
+	 */
+	private int processTextNode(ProcessedPage page, Node childNode) throws DOMException {
+		String textContent = childNode.getTextContent();
+		int start = TextScanner.trimStart(textContent, 0, textContent.length());
+		int end = TextScanner.trimEnd(textContent, start, textContent.length());
+
+		if (!TextScanner.containsNoLetters(textContent, start, end)) {
+
+			String text = textContent.substring(start, end);
+			String labelName = getLabelName(page.getFile(), TEXT_LABEL, text);
+
+			page.addLabel(text, labelName);
+
+			childNode.setTextContent(geti18nLabel(labelName));
+			return 1;
+		}
+		return 0;
+	}
+
+}
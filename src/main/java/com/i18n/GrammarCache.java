@@ -0,0 +1,674 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Cache of the XHTML DTD and its entity sets, shared by all the parsed
+ * documents.<br>
+ * The JDK's parser has no public API for sharing a parsed grammar between
+ * documents, so the DTD is compiled once instead: the three .ent files are
+ * inlined, the parameter entities are expanded and the comments are removed.
+ * The parser then reads one compact external subset for each document instead
+ * of the 1200 line DTD and the three entity files. The report mode, which
+ * only needs the entities, reads a subset with the entity declarations only.<br>
+ * The entity files are loaded from the classpath when they are first resolved
+ * (a run without any DOCTYPE never loads them), and they are kept as the UTF-8
+ * bytes of the resources, the parsers read them from these bytes.<br>
+ * With the statistics enabled, the compilation and the parses of the documents
+ * using the compiled DTD are timed, and every
+ * {@link Constants#GRAMMAR_CACHE_SAMPLE_INTERVAL}th document is parsed twice
+ * more: through the original DTD and entity files, and with the compiled DTD.
+ * The median of the differences is the time saved per document.
+ */
+public class GrammarCache {
+
+	/**
+	 * HashMap holding public-id and the classpath resource of their xhtml entity
+	 * definition file
+	 */
+	private final Map<String, String> resources;
+
+	/**
+	 * Map holding public-id and their xhtml entity definition file content,
+	 * loaded on first use
+	 */
+	private final Map<String, byte[]> entities = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * Map holding public-id and their compiled content, compiled on first use
+	 */
+	private final Map<String, byte[]> compiled = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * Map holding public-id and the entity declarations of their compiled
+	 * content, compiled on first use
+	 */
+	private final Map<String, byte[]> compiledEntities = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * Number of external subsets served from the compiled grammar
+	 */
+	private final AtomicInteger hits = new AtomicInteger();
+
+	/**
+	 * True if the parses are timed for the statistics
+	 */
+	private volatile boolean statistics;
+
+	/**
+	 * True on the thread whose parser was given the compiled grammar since the
+	 * last recorded parse (statistics only)
+	 */
+	private final ThreadLocal<Boolean> compiledServed = new ThreadLocal<Boolean>();
+
+	/**
+	 * The time of the compilations in nanoseconds
+	 */
+	private final AtomicLong compileNanos = new AtomicLong();
+
+	/**
+	 * The number of the recorded parses which used the compiled grammar
+	 */
+	private final AtomicInteger parses = new AtomicInteger();
+
+	/**
+	 * The time of the recorded parses which used the compiled grammar in
+	 * nanoseconds
+	 */
+	private final AtomicLong parseNanos = new AtomicLong();
+
+	/**
+	 * The sampled documents: the time of the parse through the original DTD and
+	 * entity files and of the parse with the compiled DTD in nanoseconds, guarded
+	 * by itself
+	 */
+	private final List<long[]> samples = new ArrayList<long[]>();
+
+	/**
+	 * Parses a document again, used for the samples of the statistics
+	 */
+	public interface DocumentParser {
+
+		/**
+		 * Parses the document
+		 *
+		 * @param original true if the parser should read the original DTD and entity
+		 *                 files, false for the compiled DTD
+		 * @throws Exception on parse errors
+		 */
+		public void parse(boolean original) throws Exception;
+	}
+
+	/**
+	 * Constructor, nothing is loaded until the first entity is resolved
+	 *
+	 * @param resources the classpath resources of the xhtml entity definition
+	 *                  files by public-id
+	 */
+	public GrammarCache(Map<String, String> resources) {
+		this.resources = resources;
+	}
+
+	/**
+	 * Returns the content for the public-id, the compiled one if there is any.
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the content as UTF-8 bytes, must not be modified
+	 * @throws IOException if the entity is not known or cannot be loaded
+	 */
+	public byte[] getContent(String publicId) throws IOException {
+		return getContent(publicId, false);
+	}
+
+	/**
+	 * Returns the content for the public-id, the compiled one if there is any
+	 *
+	 * @param publicId     the public-id of the entity
+	 * @param entitiesOnly true if only the entity declarations of the compiled
+	 *                     DTD are needed (no element and attribute declarations,
+	 *                     so no attribute defaults)
+	 * @return the content as UTF-8 bytes, must not be modified
+	 * @throws IOException if the entity is not known or cannot be loaded
+	 */
+	private byte[] getContent(String publicId, boolean entitiesOnly) throws IOException {
+
+		byte[] content = getCompiled(publicId, entitiesOnly);
+
+		if (content != null) {
+			hits.incrementAndGet();
+			if (statistics) {
+				compiledServed.set(Boolean.TRUE);
+			}
+			return content;
+		}
+		return getEntity(publicId);
+	}
+
+	/**
+	 * Returns the content of the entity definition file, loads it on first use
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the content as UTF-8 bytes
+	 * @throws IOException if the entity is not known or cannot be loaded
+	 */
+	private byte[] getEntity(String publicId) throws IOException {
+
+		byte[] content = entities.get(publicId);
+
+		if (content == null) {
+			synchronized (this) {
+				content = entities.get(publicId);
+				if (content == null) {
+					String resource = resources.get(publicId);
+					if (resource == null) {
+						throw new IOException(UNKNOWN_ENTITY + publicId);
+					}
+					content = loadFromClasspath(resource);
+					entities.put(publicId, content);
+				}
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Returns the compiled DTD, compiles it on first use
+	 *
+	 * @param publicId     the public-id of the entity
+	 * @param entitiesOnly true if only the entity declarations are needed
+	 * @return the compiled content as UTF-8 bytes, null if the entity is not the
+	 *         XHTML DTD
+	 * @throws IOException if the DTD or its entity files cannot be loaded
+	 */
+	private byte[] getCompiled(String publicId, boolean entitiesOnly) throws IOException {
+
+		Map<String, byte[]> cache = entitiesOnly ? compiledEntities : compiled;
+		byte[] content = cache.get(publicId);
+
+		if (content == null && publicId.equals(W3C_DTD_XHTML_1_0_TRANSITIONAL_EN) && resources.containsKey(publicId)) {
+			synchronized (this) {
+				content = cache.get(publicId);
+				if (content == null) {
+					String dtd = new String(getEntity(publicId), UTF_8);
+					long start = System.nanoTime();
+					content = new DtdCompiler(this, entitiesOnly).compile(dtd).getBytes(UTF_8);
+					compileNanos.addAndGet(System.nanoTime() - start);
+					cache.put(publicId, content);
+				}
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Returns the content of the entity definition file as text
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the content
+	 * @throws IOException if the entity is not known or cannot be loaded
+	 */
+	String getText(String publicId) throws IOException {
+		return new String(getEntity(publicId), UTF_8);
+	}
+
+	/**
+	 * Returns the entity as {@link InputSource} for the SAX/DOM parsers
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the entity
+	 * @throws IOException if the entity is not known
+	 */
+	public InputSource getInputSource(String publicId) throws IOException {
+		return toInputSource(getContent(publicId));
+	}
+
+	/**
+	 * Returns the entity as {@link InputStream} for the StAX parsers
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the entity
+	 * @throws IOException if the entity is not known
+	 */
+	public InputStream getInputStream(String publicId) throws IOException {
+		return new ByteArrayInputStream(getContent(publicId));
+	}
+
+	/**
+	 * Returns the original entity definition file (not the compiled DTD) as
+	 * {@link InputSource} for the samples of the statistics
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the entity
+	 * @throws IOException if the entity is not known
+	 */
+	public InputSource getOriginalInputSource(String publicId) throws IOException {
+		return toInputSource(getEntity(publicId));
+	}
+
+	/**
+	 * Returns the original entity definition file (not the compiled DTD) as
+	 * {@link InputStream} for the samples of the statistics
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the entity
+	 * @throws IOException if the entity is not known
+	 */
+	public InputStream getOriginalInputStream(String publicId) throws IOException {
+		return new ByteArrayInputStream(getEntity(publicId));
+	}
+
+	/**
+	 * Returns the entity as {@link InputStream} for the StAX parsers which only
+	 * need the entity declarations of the DTD (the element and attribute
+	 * declarations are left out)
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the entity
+	 * @throws IOException if the entity is not known
+	 */
+	public InputStream getEntitiesInputStream(String publicId) throws IOException {
+		return new ByteArrayInputStream(getContent(publicId, true));
+	}
+
+	/**
+	 * Returns the UTF-8 content as {@link InputSource}
+	 */
+	private static InputSource toInputSource(byte[] content) {
+		InputSource inputSource = new InputSource(new ByteArrayInputStream(content));
+		inputSource.setEncoding(UTF_8);
+		return inputSource;
+	}
+
+	/**
+	 * @return the number of external subsets served from the compiled grammar
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Enables the timing of the compilation and of the parses
+	 *
+	 * @param statistics true if the statistics should be collected
+	 */
+	public void setStatistics(boolean statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return true if the parses should be recorded
+	 */
+	public boolean isStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Records the time of a parse, if the parser was given the compiled grammar.
+	 * Every {@link Constants#GRAMMAR_CACHE_SAMPLE_INTERVAL}th such document is
+	 * sampled: parsed twice more, through the original DTD and entity files and
+	 * with the compiled DTD, in alternating order. The first sample is taken
+	 * after the JIT has warmed up on the earlier documents. A document which
+	 * cannot be parsed both ways is not sampled.
+	 *
+	 * @param nanos  the time of the parse in nanoseconds
+	 * @param parser parses the document again
+	 */
+	public void recordParse(long nanos, DocumentParser parser) {
+
+		if (compiledServed.get() == null) {
+			return;
+		}
+		compiledServed.remove();
+
+		parseNanos.addAndGet(nanos);
+		int count = parses.incrementAndGet();
+
+		if (count % GRAMMAR_CACHE_SAMPLE_INTERVAL != 0) {
+			return;
+		}
+
+		try {
+			boolean originalFirst = count / GRAMMAR_CACHE_SAMPLE_INTERVAL % 2 == 1;
+			long first = time(parser, originalFirst);
+			long second = time(parser, !originalFirst);
+
+			synchronized (samples) {
+				samples.add(originalFirst ? new long[] { first, second } : new long[] { second, first });
+			}
+		} catch (Exception e) {
+			// the document is not sampled
+		}
+		compiledServed.remove();
+	}
+
+	/**
+	 * Returns the time of a parse in nanoseconds
+	 */
+	private static long time(DocumentParser parser, boolean original) throws Exception {
+		long start = System.nanoTime();
+		parser.parse(original);
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns the median of the values
+	 */
+	private static long median(long[] values) {
+		Arrays.sort(values);
+		int middle = values.length / 2;
+		return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+	}
+
+	/**
+	 * Prints the number of the documents parsed with the compiled DTD, the size
+	 * and the compilation time of the compiled DTD, the time of the parses and
+	 * the time saved, measured on the sampled documents
+	 */
+	public void printStatistics() {
+
+		long size = 0;
+		for (byte[] content : entities.values()) {
+			size += content.length;
+		}
+
+		// a run uses either the whole DTD or its entity declarations only
+		byte[] dtd = compiled.get(W3C_DTD_XHTML_1_0_TRANSITIONAL_EN);
+		if (dtd == null) {
+			dtd = compiledEntities.get(W3C_DTD_XHTML_1_0_TRANSITIONAL_EN);
+		}
+
+		System.out.format(GRAMMAR_CACHE_STATISTICS, parses.get(), dtd != null ? dtd.length : 0, size,
+				compileNanos.get() / 1e6, parseNanos.get() / 1e6);
+
+		long[] original;
+		long[] compiled;
+		long[] saved;
+
+		synchronized (samples) {
+			original = new long[samples.size()];
+			compiled = new long[samples.size()];
+			saved = new long[samples.size()];
+			for (int i = 0; i < samples.size(); i++) {
+				original[i] = samples.get(i)[0];
+				compiled[i] = samples.get(i)[1];
+				saved[i] = original[i] - compiled[i];
+			}
+		}
+
+		if (saved.length == 0) {
+			System.out.format(GRAMMAR_CACHE_NOT_SAMPLED, GRAMMAR_CACHE_SAMPLE_INTERVAL);
+			return;
+		}
+
+		// the compilation is paid once, the difference by every document
+		long total = parses.get() * median(saved) - compileNanos.get();
+
+		System.out.format(GRAMMAR_CACHE_SAVED, saved.length, median(original) / 1e6, median(compiled) / 1e6,
+				total / 1e6);
+	}
+
+	/**
+	 * Compiles a DTD into a single external subset: the external parameter
+	 * entities are inlined, the parameter entity references are expanded and the
+	 * comments are removed. The markup declarations are kept as they are, so the
+	 * parsed grammar (attribute defaults, general entities) is the same. If only
+	 * the entities are compiled, the other declarations are left out.
+	 */
+	static class DtdCompiler {
+
+		/**
+		 * The cache providing the xhtml entity definition file contents
+		 */
+		private final GrammarCache grammarCache;
+
+		/**
+		 * True if only the general entity declarations are written
+		 */
+		private final boolean entitiesOnly;
+
+		/**
+		 * The parameter entities declared so far, by name. The value is the
+		 * replacement text.
+		 */
+		private final Map<String, String> parameterEntities = new HashMap<String, String>();
+
+		/**
+		 * The compiled DTD
+		 */
+		private final StringBuilder out = new StringBuilder();
+
+		/**
+		 * Constructor
+		 *
+		 * @param grammarCache the cache providing the entity definition file
+		 *                     contents
+		 * @param entitiesOnly true if only the general entity declarations should
+		 *                     be written
+		 */
+		DtdCompiler(GrammarCache grammarCache, boolean entitiesOnly) {
+			this.grammarCache = grammarCache;
+			this.entitiesOnly = entitiesOnly;
+		}
+
+		/**
+		 * Compiles the DTD
+		 *
+		 * @param dtd the content of the DTD
+		 * @return the compiled DTD
+		 * @throws IOException if an entity file cannot be loaded
+		 */
+		String compile(String dtd) throws IOException {
+			compileSubset(dtd);
+			return out.toString();
+		}
+
+		/**
+		 * Compiles the declarations of a (part of a) DTD into {@link #out}
+		 *
+		 * @param dtd the content
+		 */
+		private void compileSubset(String dtd) throws IOException {
+
+			int i = 0;
+			int length = dtd.length();
+
+			while (i < length) {
+
+				char c = dtd.charAt(i);
+
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (dtd.startsWith(COMMENT_START, i)) {
+					i = indexAfter(dtd, COMMENT_END, i + COMMENT_START.length());
+				} else if (dtd.startsWith(PI_START, i)) {
+					i = indexAfter(dtd, PI_END, i + PI_START.length());
+				} else if (c == '%') {
+					int end = dtd.indexOf(';', i);
+					String name = dtd.substring(i + 1, end);
+					compileSubset(getParameterEntity(name));
+					i = end + 1;
+				} else if (dtd.startsWith(DECLARATION_START, i)) {
+					int end = indexOfDeclarationEnd(dtd, i);
+					compileDeclaration(dtd.substring(i, end));
+					i = end;
+				} else {
+					throw new IllegalArgumentException(INVALID_DTD + dtd.substring(i, Math.min(length, i + 40)));
+				}
+			}
+		}
+
+		/**
+		 * Compiles a markup declaration: parameter entity declarations are recorded,
+		 * other declarations are written with their parameter entity references
+		 * expanded (only the general entity declarations if {@link #entitiesOnly}).
+		 *
+		 * @param declaration the declaration, from "&lt;!" to "&gt;"
+		 */
+		private void compileDeclaration(String declaration) throws IOException {
+
+			if (declaration.startsWith(PARAMETER_ENTITY_DECLARATION_START)) {
+				declareParameterEntity(declaration.substring(PARAMETER_ENTITY_DECLARATION_START.length(),
+						declaration.length() - 1).trim());
+			} else if (!entitiesOnly || declaration.startsWith(ENTITY_DECLARATION_START)) {
+				out.append(expandReferences(declaration, false));
+				out.append(NEWLINE);
+			}
+		}
+
+		/**
+		 * Records a parameter entity declaration (the first declaration is binding)
+		 *
+		 * @param declaration the declaration without "&lt;!ENTITY %" and "&gt;"
+		 */
+		private void declareParameterEntity(String declaration) throws IOException {
+
+			int nameEnd = 0;
+			while (!Character.isWhitespace(declaration.charAt(nameEnd))) {
+				nameEnd++;
+			}
+			String name = declaration.substring(0, nameEnd);
+			String definition = expandReferences(declaration.substring(nameEnd), false).trim();
+
+			String value;
+			if (definition.startsWith(PUBLIC)) {
+				String publicId = unquote(definition.substring(PUBLIC.length()).trim());
+				value = grammarCache.getText(publicId);
+			} else {
+				value = expandReferences(unquote(definition), true);
+			}
+
+			if (!parameterEntities.containsKey(name)) {
+				parameterEntities.put(name, value);
+			}
+		}
+
+		/**
+		 * Returns the replacement text of the parameter entity
+		 *
+		 * @param name the name of the parameter entity
+		 * @return the replacement text
+		 */
+		private String getParameterEntity(String name) {
+			String value = parameterEntities.get(name);
+			if (value == null) {
+				throw new IllegalArgumentException(UNKNOWN_ENTITY + name);
+			}
+			return value;
+		}
+
+		/**
+		 * Expands the parameter entity references in the text
+		 *
+		 * @param text         the text
+		 * @param inEntityText true if the text is the literal value of an entity
+		 *                     (references are recognized in the quotes too, and the
+		 *                     replacement text is not padded with spaces)
+		 * @return the expanded text
+		 */
+		private String expandReferences(String text, boolean inEntityText) {
+
+			if (text.indexOf('%') == -1) {
+				return text;
+			}
+
+			StringBuilder sb = new StringBuilder(text.length());
+			char quote = 0;
+
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+
+				if (!inEntityText && quote == 0 && (c == '"' || c == '\'')) {
+					quote = c;
+				} else if (quote != 0 && c == quote) {
+					quote = 0;
+				}
+
+				int end = c == '%' && quote == 0 ? text.indexOf(';', i) : -1;
+				if (end > i + 1 && isName(text, i + 1, end)) {
+					String value = getParameterEntity(text.substring(i + 1, end));
+					if (inEntityText) {
+						sb.append(value);
+					} else {
+						sb.append(' ').append(value).append(' ');
+					}
+					i = end;
+				} else {
+					sb.append(c);
+				}
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * Returns true if the characters between start and end form a name
+		 */
+		private static boolean isName(String text, int start, int end) {
+			for (int i = start; i < end; i++) {
+				char c = text.charAt(i);
+				if (!Character.isLetterOrDigit(c) && c != '.' && c != '-' && c != '_' && c != ':') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the content of the first quoted literal
+		 *
+		 * @param text the text starting with a quote
+		 * @return the content of the quoted literal
+		 */
+		private static String unquote(String text) {
+			char quote = text.charAt(0);
+			return text.substring(1, text.indexOf(quote, 1));
+		}
+
+		/**
+		 * Returns the index after the next occurrence of the string
+		 */
+		private static int indexAfter(String text, String s, int from) {
+			int index = text.indexOf(s, from);
+			if (index == -1) {
+				return text.length();
+			}
+			return index + s.length();
+		}
+
+		/**
+		 * Returns the index after the "&gt;" closing the declaration started at the
+		 * given index, skipping the quoted literals
+		 */
+		private static int indexOfDeclarationEnd(String text, int start) {
+			char quote = 0;
+			for (int i = start; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (quote != 0) {
+					if (c == quote) {
+						quote = 0;
+					}
+				} else if (c == '"' || c == '\'') {
+					quote = c;
+				} else if (c == '>') {
+					return i + 1;
+				}
+			}
+			return text.length();
+		}
+	}
+
+}
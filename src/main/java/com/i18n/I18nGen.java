@@ -1,31 +1,31 @@
 package com.i18n;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import com.i18n.Metrics.Counter;
+import com.i18n.Metrics.Phase;
 
 import static com.i18n.Constants.*;
 import static com.i18n.Util.*;
@@ -33,14 +33,25 @@ import static com.i18n.Util.*;
 public class I18nGen {
 
 	/**
-	 * HashMap holding public-id and their xhtml entity definition file content
+	 * HashMap holding public-id and the classpath resource of their xhtml entity
+	 * definition file
 	 */
 	private HashMap<String, String> entities = new HashMap<String, String>();
 
 	/**
-	 * HashMap holding resource bundle names and their original content
+	 * The compiled xhtml DTD shared by all the parsed documents
 	 */
-	private List<ResourceBundle> resourceBundles = new ArrayList<ResourceBundle>();
+	private GrammarCache grammarCache;
+
+	/**
+	 * The labels of all the resource bundles
+	 */
+	private LabelIndex labelIndex = new LabelIndex();
+
+	/**
+	 * The views of the resource bundles in the {@link #labelIndex}
+	 */
+	private List<ResourceBundle> resourceBundles = labelIndex.getResourceBundles();
 
 	/**
 	 * Directory for xhtml files
@@ -57,20 +68,63 @@ public class I18nGen {
 	 */
 	private String xhtmlEncoding;
 
+	/**
+	 * Number of threads processing the xhtml files
+	 */
+	private int threads;
+
+	/**
+	 * The command line parameters
+	 */
+	private Options options;
+
+	/**
+	 * The manifest of the incremental mode, null if every file is processed
+	 */
+	private Manifest manifest;
+
+	/**
+	 * The statistics of the report mode, null if the files are written
+	 */
+	private Report report;
+
+	/**
+	 * The journal of the run, null if the labels are not journaled
+	 */
+	private Journal journal;
+
+	/**
+	 * Processor of the xhtml files (DOM or StAX based)
+	 */
+	private PageProcessor pageProcessor;
+
+	/**
+	 * The processed pages by relative path, in the order they were found. Kept in
+	 * daemon mode only (null otherwise), the unchanged pages are not processed
+	 * again.
+	 */
+	private Map<String, ProcessedPage> pages;
+
+	/**
+	 * The relative paths of the pages which could not be processed in daemon
+	 * mode, they are processed again with the next changes
+	 */
+	private Set<String> failedPages = new HashSet<String>();
+
 	/**
 	 * Constructor with parameters
 	 * 
-	 * @param xhtmlDir    working directory
-	 * @param entitiesDir directory for entities
+	 * @param options the command line parameters
 	 * @throws IOException
 	 * @throws FileNotFoundException
 	 */
-	private I18nGen(String xhtmlDir, String resourceBundleDir, String xhtmlEncoding)
-			throws FileNotFoundException, IOException {
+	private I18nGen(Options options) throws FileNotFoundException, IOException {
 
-		this.xhtmlDir = xhtmlDir;
-		this.xhtmlEncoding = xhtmlEncoding;
-		this.resourceBundleDir = resourceBundleDir;
+		this.xhtmlDir = options.getXhtmlDir();
+		this.xhtmlEncoding = options.getXhtmlEncoding();
+		this.resourceBundleDir = options.getResourceBundleDir();
+		this.threads = options.getThreads();
+		this.options = options;
 
 		System.out.format("i18nGen utility%n" + //
 				"XHTML Directory: %s%n" + //
@@ -81,18 +135,23 @@ public class I18nGen {
 	}
 
 	/**
-	 * Loads the resource bundles from the resourceBundleDir
+	 * Loads the resource bundles from the resourceBundleDir, saved in a single
+	 * file or in shards
 	 * 
 	 * @throws Exception
 	 */
 	private void loadResourceBundles() throws Exception {
-		traverse(new File(resourceBundleDir), new Visitor() {
+
+		// the locales of the resource bundles by messages_xx.properties file
+		final Map<File, String> propertiesFiles = new LinkedHashMap<File, String>();
+
+		new PathWalker(null, null).walk(Paths.get(resourceBundleDir), new Visitor() {
 
 			public boolean visit(File f) {
 
 				String name = f.getName();
 
-				if (getLocale(name) != null) {
+				if ((getLocale(name) != null || getShardedLocale(name) != null) && !isShard(f)) {
 					return true;
 				}
 
@@ -104,52 +163,122 @@ public class I18nGen {
 				String name = f.getName();
 				String locale = getLocale(name);
 
-				Properties p = loadPropertyFile(f);
-
-				resourceBundles.add(new ResourceBundle(locale, f, p));
+				if (locale == null) {
+					locale = getShardedLocale(name);
+					f = new File(f.getParentFile(), MESSAGES_ + locale + _PROPERTIES);
+				}
 
+				propertiesFiles.put(f, locale);
 			}
 		});
+
+		for (Map.Entry<File, String> e : propertiesFiles.entrySet()) {
+
+			File f = e.getKey();
+			PropertySource properties = ShardedBundle.isSharded(f) ? ShardedBundle.load(f) : MappedPropertyFile.load(f);
+
+			labelIndex.addResourceBundle(e.getValue(), f, properties);
+		}
+	}
+
+	/**
+	 * Returns true if the file is in the shard directory of a resource bundle
+	 * 
+	 * @param f the file
+	 * @return true if the file is a shard
+	 */
+	private static boolean isShard(File f) {
+		File dir = f.getParentFile();
+		return dir != null && getLocale(dir.getName() + _PROPERTIES) != null;
+	}
+
+	/**
+	 * Replaces the labels of the same text found in more than one page with
+	 * shared labels, if the option is set
+	 * 
+	 * @throws IOException on I/O errors
+	 */
+	private void deduplicate() throws IOException {
+		if (options.getDedup() != null) {
+			new Deduplicator(options.getDedup().equals(DEDUP_NORMALIZED), getOutputCharset(), manifest)
+					.deduplicate(pages.values(), labelIndex);
+		}
+	}
+
+	/**
+	 * Returns the character encoding the pages are written with: the DOM
+	 * processors write with the default encoding, like a FileWriter would do
+	 * 
+	 * @return the character encoding of the written pages
+	 */
+	private Charset getOutputCharset() {
+		if (options.isStreaming() || options.isSplice()) {
+			return Charset.forName(xhtmlEncoding);
+		}
+		return Charset.defaultCharset();
+	}
+
+	/**
+	 * Saves all the resource bundles, in shards if the option is set, and
+	 * compiles them if the option is set
+	 * 
+	 * @throws Exception
+	 */
+	private void saveResourceBundles() throws Exception {
+		if (options.isShards()) {
+			new ShardWriter(threads).saveAll(resourceBundles);
+		} else {
+			saveAllProperties(resourceBundles);
+		}
+		if (options.isBinary()) {
+			new BinaryBundleWriter().saveAll(resourceBundles);
+		}
 	}
 
 	/**
 	 * Parameters:<br>
 	 * 1. working dir (directory containing xhtml files)<br>
-	 * 2. directory containing resource bundles
+	 * 2. directory containing resource bundles<br>
+	 * 3. character encoding of the xhtml files (optional)<br>
+	 * Options: see {@link Options}
 	 */
 	public static void main(String[] args) throws Exception {
 
-		if (args.length >= 2) {
-			String workingDir = args[0];
-			String resourceBundleDir = args[1];
+		Options options = Options.parse(args);
 
-			String xhtmlEncoding = "ISO-8859-1";
-			if (args.length > 2) {
-				xhtmlEncoding = args[2];
-			}
-			new I18nGen(workingDir, resourceBundleDir, xhtmlEncoding).generate();
+		if (options != null) {
+			new I18nGen(options).generate();
 		} else {
-			System.out.println(PARAMETERS);
-			System.out.println(_1_XHTML_DIR_DIRECTORY_CONTAINING_XHTML_FILES);
-			System.out.println(_2_RESOURCE_BUNDLE_DIR_DIRECTORY_CONTAINING_MESSAGES_XX_PROPERTIES_FILES);
+			Options.printUsage();
 		}
 
 	}
 
 	/**
-	 * Loads the XML entities from classpath
-	 * 
-	 * @throws IOException when error happened
+	 * Registers the XML entities of the classpath, they are loaded when a page
+	 * first declares the DTD
 	 */
-	private void initEntities() throws IOException {
-		entities.put(W3C_DTD_XHTML_1_0_TRANSITIONAL_EN, loadFromClasspath(XHTML1_TRANSITIONAL_DTD));
+	private void initEntities() {
+		entities.put(W3C_DTD_XHTML_1_0_TRANSITIONAL_EN, XHTML1_TRANSITIONAL_DTD);
+
+		entities.put(W3C_ENTITIES_LATIN_1_FOR_XHTML_EN, XHTML_LAT1_ENT);
 
-		entities.put(W3C_ENTITIES_LATIN_1_FOR_XHTML_EN, loadFromClasspath(XHTML_LAT1_ENT));
+		entities.put(W3C_ENTITIES_SYMBOLS_FOR_XHTML_EN, XHTML_SYMBOL_ENT);
 
-		entities.put(W3C_ENTITIES_SYMBOLS_FOR_XHTML_EN, loadFromClasspath(XHTML_SYMBOL_ENT));
+		entities.put(W3C_ENTITIES_SPECIAL_FOR_XHTML_EN, XHTML_SPECIAL_ENT);
 
-		entities.put(W3C_ENTITIES_SPECIAL_FOR_XHTML_EN, loadFromClasspath(XHTML_SPECIAL_ENT));
+		grammarCache = new GrammarCache(entities);
+		grammarCache.setStatistics(options.isGrammarStats());
 
+		if (options.isReport()) {
+			pageProcessor = new ScanningPageProcessor(grammarCache, xhtmlEncoding);
+		} else if (options.isSplice()) {
+			pageProcessor = new SplicingPageProcessor(grammarCache, xhtmlEncoding);
+		} else if (options.isStreaming()) {
+			pageProcessor = new StreamingPageProcessor(grammarCache, xhtmlEncoding);
+		} else {
+			pageProcessor = new DomPageProcessor(grammarCache, xhtmlEncoding);
+		}
 	}
 
 	/**
@@ -163,232 +292,529 @@ public class I18nGen {
 
 		if (file.getName().endsWith(XHTML)) {
 
-			System.out.print(file.getName());
-
-			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), xhtmlEncoding));
-
-			InputSource fis = new InputSource(br);
+			mergePage(extractPage(file));
+		}
 
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = dbf.newDocumentBuilder();
+	}
 
-			builder.setEntityResolver(new EntityResolver() {
+	/**
+	 * Process the file as the xhtml source: collects the texts and rewrites the
+	 * file. The collected labels are not put into the ResourceBundles, so this
+	 * method can be called from multiple threads at the same time.
+	 * 
+	 * @param file the file to be processed.
+	 * @return the labels found in the file
+	 * @throws Exception on any problem
+	 */
+	private ProcessedPage extractPage(File file) throws Exception {
 
-				public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+		long start = System.nanoTime();
+		ProcessedPage page = null;
 
-					String content = entities.get(publicId);
+		if (manifest == null) {
+			page = pageProcessor.process(file);
+		} else {
+			byte[] original = readFile(file);
+			page = manifest.getUnchangedPage(file, original);
+
+			if (page == null) {
+				page = pageProcessor.process(file);
+				// a rewritten page is completed before the write in journal mode
+				if (page.getHash() == null) {
+					manifest.completePage(page, original, readFile(file));
+				}
+			}
+		}
 
-					InputSource is = new InputSource(new StringReader(content));
+		page.setNanos(System.nanoTime() - start);
+		return page;
+	}
 
-					return is;
-				}
-			});
+	/**
+	 * Puts the labels of the processed page into the ResourceBundles. Must be
+	 * called from one thread only, in the order the files were found.
+	 * 
+	 * @param page the processed page
+	 * @throws IOException if the journal cannot be written
+	 */
+	private void mergePage(ProcessedPage page) throws IOException {
 
-			Document document = builder.parse(fis);
+		System.out.print(page.getFile().getName());
 
-			int counter = processDocument(file, document, 0);
+		addLabels(page);
 
-			System.out.print(OPEN_PARENTHESIS + counter + NEW_MESSAGE_S_FOUND);
+		if (page.isUnchanged()) {
+			System.out.print(OPEN_PARENTHESIS + page.getReplayed() + UNCHANGED_MESSAGE_S_REPLAYED);
+		} else {
+			System.out.print(OPEN_PARENTHESIS + page.getFound() + NEW_MESSAGE_S_FOUND);
+		}
 
-			String modified = getString(document);
-			FileWriter fw = new FileWriter(file);
-			fw.write(modified);
-			fw.close();
+		// the labels of a rewritten page were written ahead
+		if (journal != null && !page.isRewritten()) {
+			journal.append(page);
+		}
 
+		if (report != null) {
+			int newLabels = 0;
+			for (Label label : page.getLabels()) {
+				if (!labelIndex.isLoaded(label.getName())) {
+					newLabels++;
+				}
+			}
+			report.addPage(getRelativePath(page.getFile()), page.getFound(), newLabels);
 		}
 
+		Metrics.add(Counter.PAGES, 1);
+		Metrics.add(Counter.LABELS_EXTRACTED, page.getFound());
+		Metrics.recordPage(getRelativePath(page.getFile()), page.getNanos());
 	}
 
 	/**
-	 * The given labelName with the associated text will be inserted into the
-	 * primary and secondary
+	 * Puts the labels of the page into the ResourceBundles and records the page
+	 * in the manifest (and in the {@link #pages} in daemon mode)
 	 * 
-	 * @param labelValue the value of the property
-	 * @param labelName  the name of the property
+	 * @param page the processed page
 	 */
-	private void processLabel(String labelValue, String labelName) {
+	private void addLabels(ProcessedPage page) {
 
-		for (ResourceBundle rb : resourceBundles) {
+		for (Label label : page.getLabels()) {
+			labelIndex.addLabel(label.getValue(), label.getName());
+		}
+
+		if (manifest != null) {
+			manifest.record(page);
+		}
 
-			addLabel(rb, labelValue, labelName);
+		if (pages != null) {
+			pages.put(getRelativePath(page.getFile()), page);
 		}
 	}
 
 	/**
-	 * Process xhtml elements which are not <s:graphicImage>
+	 * Returns the path of the file relative to the xhtml dir
 	 * 
-	 * @param file the XHTML file for the label name
-	 * @param childNode {@link Node}
-	 * @throws DOMException on DOM errors
+	 * @param file the file in the xhtml dir
+	 * @return the relative path
 	 */
-	private int processNonTextNode(File file, Node childNode) throws DOMException {
+	private String getRelativePath(File file) {
+		return Util.getRelativePath(Paths.get(xhtmlDir).toAbsolutePath(), file);
+	}
 
-		String nodeName = getNodeNameWithoutNameSpace(childNode.getNodeName());
+	/**
+	 * Scan the files and saves the results.
+	 * 
+	 * @throws Exception if something fails.
+	 */
+	private void generate() throws Exception {
 
-		if (!nodeName.equals(GRAPHICIMAGE)) {
+		long start = Metrics.start();
+		initEntities();
+		Metrics.stop(Phase.INIT_ENTITIES, start);
 
-			NamedNodeMap attributes = childNode.getAttributes();
+		start = Metrics.start();
+		loadResourceBundles();
+		Metrics.stop(Phase.LOAD_RESOURCE_BUNDLES, start);
 
-			if (attributes != null) {
-				for (int j = 0; j < attributes.getLength(); j++) {
+		if (options.isDaemon() || options.getDedup() != null) {
+			pages = new LinkedHashMap<String, ProcessedPage>();
+		}
 
-					Node item = attributes.item(j);
-				
-					if (item.getNodeName().equals(PATTERN)) {
-						item.setNodeValue(DATE_TIME_FORMAT_EL);
-					}
+		if (options.isReport()) {
+			report = new Report();
+		}
 
-					if (item.getNodeName().equals(VALUE)) {
-						String text = trim(item.getNodeValue());
+		if (options.isIncremental() || options.isJournal()) {
+			manifest = new Manifest(new File(resourceBundleDir, MANIFEST_FILE), xhtmlDir, xhtmlEncoding);
+			if (options.isIncremental()) {
+				manifest.load();
+			}
+		}
 
-						if (!containsNoLetters(text)) {
-							String labelName = getLabelName(file, nodeName, text);
+		if (options.isJournal()) {
+			journal = new Journal(new File(resourceBundleDir, JOURNAL_FILE), manifest);
+			int resumed = journal.resume();
+			if (resumed > 0) {
+				System.out.format(JOURNAL_RESUMED, resumed);
+			}
 
-							processLabel(text, labelName);
+			pageProcessor.setWriteAhead(new PageProcessor.WriteAhead() {
 
-							item.setNodeValue(geti18nLabel(labelName));
+				public void beforeWrite(ProcessedPage page, byte[] original, byte[] content) throws IOException {
 
-							return 1;
-						}
+					// the pipeline completes the page before the write
+					if (page.getHash() == null) {
+						manifest.completePage(page, original, content);
 					}
+					journal.writeAhead(page);
 				}
+			});
+		}
+
+		if (resourceBundles.isEmpty()) {
+			System.out.format(
+					"Error: No message_xx.properties files found at %s. You have to create the message_XX.properties first!",
+					resourceBundleDir);
+		} else {
+			start = Metrics.start();
+			try {
+				processXHTMLFiles();
+			} finally {
+				if (journal != null) {
+					journal.close();
+				}
+			}
+			Metrics.stop(Phase.TRAVERSAL, start);
+
+			if (report != null) {
+				report.print(System.out, resourceBundles);
+			} else {
+				start = Metrics.start();
+				deduplicate();
+				Metrics.stop(Phase.DEDUPLICATION, start);
+
+				start = Metrics.start();
+				saveResourceBundles();
+				Metrics.stop(Phase.SAVE_ALL_PROPERTIES, start);
+			}
+
+			if (options.isIncremental()) {
+				manifest.save();
+			}
+
+			if (journal != null) {
+				journal.delete();
 			}
+
+			if (options.isGrammarStats()) {
+				grammarCache.printStatistics();
+			}
+
+			writeMetrics();
+
+			if (options.isDaemon()) {
+				watch();
+			}
+		}
+	}
+
+	/**
+	 * Writes the metrics summary, if it was requested
+	 * 
+	 * @throws IOException on I/O errors
+	 */
+	private void writeMetrics() throws IOException {
+
+		if (options.getMetrics() != null) {
+			String metricsFile = options.getMetricsFile();
+			Metrics.write(options.getMetrics(), metricsFile != null ? new File(metricsFile) : null);
 		}
-		return 0;
 	}
 
 	/**
-	 * Process Text Node in .xhtml
+	 * Daemon mode: watches the xhtml dir and updates the resource bundles after
+	 * every batch of changes, until the process is stopped. The entities, the
+	 * compiled DTD, the parser pools and the results of the unchanged pages are
+	 * kept between the updates.
 	 * 
-	 * @param childNode
-	 * @throws DOMException
+	 * @throws Exception
 	 */
-	private int processTextNode(File file, Node childNode) throws DOMException {
-		String textContent = childNode.getTextContent();
-		String text = trim(textContent);
+	private void watch() throws Exception {
 
-		if (!containsNoLetters(text)) {
+		manifest.startNextRun();
 
-			String labelName = getLabelName(file, TEXT_LABEL, text);
+		try (DirectoryWatcher watcher = new DirectoryWatcher(Paths.get(xhtmlDir), createXhtmlWalker(),
+				options.getDebounce())) {
 
-			processLabel(text, labelName);
+			System.out.format(DAEMON_WATCHING, xhtmlDir);
 
-			childNode.setTextContent(geti18nLabel(labelName));
-			return 1;
+			watcher.watch(new DirectoryWatcher.Listener() {
+
+				public void changed(Set<Path> paths, boolean overflow) throws Exception {
+					update(paths, overflow);
+				}
+			});
 		}
-		return 0;
 	}
 
 	/**
-	 * Works on a single file system entry and calls itself recursively if it turns
-	 * out to be a directory.
+	 * Processes the changed xhtml files and saves the resource bundles, if any of
+	 * the pages changed. The pages not touched by the changes are taken from the
+	 * {@link #pages}, the touched ones are checked against the manifest (the
+	 * files rewritten by the previous update are not processed again). The
+	 * resource bundles are loaded again, as saved by the previous update, and
+	 * the labels of all the pages are put into them in the order of the files,
+	 * so the result is the same as the result of a new run.
 	 * 
-	 * @param file A file or a directory to process
+	 * @param paths    the changed files and directories
+	 * @param overflow true if every file may have changed
 	 * @throws Exception
 	 */
-	private void traverse(File file, Visitor visitor) throws Exception {
+	private void update(final Set<Path> paths, final boolean overflow) throws Exception {
+
+		long start = System.nanoTime();
 
-		if (file.isDirectory()) {
+		// the metrics written after the update are the ones of the update
+		Metrics.reset();
 
-			String entries[] = file.list();
+		final Set<Path> changed = new HashSet<Path>();
+		for (Path path : paths) {
+			changed.add(path.toAbsolutePath().normalize());
+		}
 
-			if (entries != null) {
+		final Map<String, ProcessedPage> found = new LinkedHashMap<String, ProcessedPage>();
+		final Set<String> processed = new HashSet<String>();
+		final Set<String> failed = new HashSet<String>();
 
-				for (String entry : entries) {
+		createXhtmlWalker().walk(Paths.get(xhtmlDir), new XhtmlVisitor() {
 
-					File fileToProcess = new File(file, entry);
-					if (visitor.visit(fileToProcess)) {
-						traverse(fileToProcess, visitor);
+			public void process(File f) throws Exception {
+
+				String path = getRelativePath(f);
+				ProcessedPage page = pages.get(path);
+
+				if (page == null || overflow || failedPages.contains(path)
+						|| changed.contains(f.toPath().toAbsolutePath().normalize())) {
+					try {
+						page = extractPage(f);
+						processed.add(path);
+					} catch (Exception e) {
+						System.out.format(DAEMON_ERROR, path, e);
+						failed.add(path);
 					}
 				}
+
+				if (page != null) {
+					found.put(path, page);
+				}
 			}
-		} else {
-			if (visitor.visit(file)) {
-				visitor.process(file);
+		});
+
+		failedPages = failed;
+
+		boolean modified = !found.keySet().equals(pages.keySet());
+		for (String path : processed) {
+			modified |= !found.get(path).isUnchanged();
+		}
+
+		if (!modified) {
+			// only the files rewritten by the previous update, or no xhtml files
+			pages = found;
+			return;
+		}
+
+		labelIndex = new LabelIndex();
+		resourceBundles = labelIndex.getResourceBundles();
+		loadResourceBundles();
+
+		pages = new LinkedHashMap<String, ProcessedPage>();
+
+		for (Map.Entry<String, ProcessedPage> e : found.entrySet()) {
+			if (processed.contains(e.getKey())) {
+				mergePage(e.getValue());
+			} else {
+				// not rewritten since the previous update, like in a new run
+				e.getValue().setRewritten(false);
+				addLabels(e.getValue());
 			}
 		}
+
+		deduplicate();
+		saveResourceBundles();
+		manifest.save();
+		manifest.startNextRun();
+
+		if (journal != null) {
+			journal.delete();
+		}
+
+		writeMetrics();
+
+		System.out.format(DAEMON_UPDATED, (System.nanoTime() - start) / 1000000);
 	}
 
 	/**
-	 * Scan the files and saves the results.
+	 * Process the xhtml files
 	 * 
-	 * @throws Exception if something fails.
+	 * @throws Exception
 	 */
-	private void generate() throws Exception {
-
-		initEntities();
+	public void processXHTMLFiles() throws Exception {
 
-		loadResourceBundles();
+		if (options.isPipeline()) {
+			processXHTMLFilesInPipeline();
+			return;
+		}
 
-		if (resourceBundles.isEmpty()) {
-			System.out.format(
-					"Error: No message_xx.properties files found at %s. You have to create the message_XX.properties first!",
-					resourceBundleDir);
-		} else {
-			processXHTMLFiles();
-			saveAllProperties(resourceBundles);
+		if (threads > 1) {
+			processXHTMLFilesInParallel();
+			return;
 		}
+
+		createXhtmlWalker().walk(Paths.get(xhtmlDir), new XhtmlVisitor() {
+
+			public void process(File f) throws Exception {
+
+				processFile(f);
+
+			}
+		});
 	}
 
 	/**
-	 * Process the xhtml files
+	 * Process the xhtml files with a pool of {@link #threads} threads. The files
+	 * are parsed and rewritten concurrently, but the labels are put into the
+	 * ResourceBundles by the calling thread, in the order the files were found,
+	 * so the result is the same as the result of the sequential processing. At
+	 * most {@link Constants#PARALLEL_TASKS_PER_THREAD} pages per thread are in
+	 * flight: the oldest one is merged before a new one is submitted.
 	 * 
 	 * @throws Exception
 	 */
-	public void processXHTMLFiles() throws Exception {
+	private void processXHTMLFilesInParallel() throws Exception {
 
-		traverse(new File(xhtmlDir), new Visitor() {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Deque<Future<ProcessedPage>> pages = new ArrayDeque<Future<ProcessedPage>>();
+		int maxPages = threads * PARALLEL_TASKS_PER_THREAD;
 
-			public boolean visit(File f) {
+		try {
+			createXhtmlWalker().walk(Paths.get(xhtmlDir), new XhtmlVisitor() {
 
-				if (f.isDirectory()) {
-					return true;
-				} else if (f.getName().endsWith(XHTML)) {
-					return true;
+				public void process(final File f) throws Exception {
+
+					if (pages.size() == maxPages) {
+						mergePage(getResult(pages.poll()));
+					}
+
+					pages.add(executor.submit(new Callable<ProcessedPage>() {
+
+						public ProcessedPage call() throws Exception {
+							return extractPage(f);
+						}
+					}));
 				}
+			});
 
-				return false;
+			while (!pages.isEmpty()) {
+				mergePage(getResult(pages.poll()));
 			}
+		} catch (Exception e) {
+			journalCompleted(executor, pages);
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
-			public void process(File f) throws Exception {
+	/**
+	 * Called when the parallel processing fails: the pages not started yet are
+	 * cancelled, the running ones are waited for, and the completed pages which
+	 * were not merged are put into the journal, so the next run does not
+	 * process them again. (The rewritten ones are already there.)
+	 * 
+	 * @param executor the executor of the pages
+	 * @param pages    the pages not merged
+	 */
+	private void journalCompleted(ExecutorService executor, Deque<Future<ProcessedPage>> pages) {
 
-				processFile(f);
+		if (journal == null) {
+			return;
+		}
+
+		// the workers are not interrupted, the journal is closed by an interrupt
+		executor.shutdown();
+		for (Future<ProcessedPage> page : pages) {
+			page.cancel(false);
+		}
 
+		for (Future<ProcessedPage> future : pages) {
+			if (future.isCancelled()) {
+				continue;
 			}
-		});
+			try {
+				ProcessedPage page = getResult(future);
+				if (!page.isRewritten()) {
+					journal.append(page);
+				}
+			} catch (Exception e) {
+				// the page failed too, it is processed again by the next run
+			}
+		}
 	}
 
 	/**
-	 * Process the XML Document, collects the textual string
+	 * Process the xhtml files with the {@link PagePipeline}: the reading, the
+	 * parsing, the serialization and the writing of the files overlap. The labels
+	 * are put into the ResourceBundles by the calling thread, in the order the
+	 * files were found.
 	 * 
-	 * @param document the Document instance to be processed.
-	 * @param file     the xhtml file
-	 * @param counter  initial processed label number
-	 * @return the number of the processed labels
+	 * @throws Exception
 	 */
-	private int processDocument(File file, Node document, int counter) {
+	private void processXHTMLFilesInPipeline() throws Exception {
 
-		NodeList children = document.getChildNodes();
+		PagePipeline pipeline = new PagePipeline((DomPageProcessor) pageProcessor, manifest, threads,
+				options.isVirtualIo());
 
-		if (children != null) {
+		pipeline.run(createXhtmlWalker(), Paths.get(xhtmlDir), new PagePipeline.PageMerger() {
 
-			for (int i = 0; i < children.getLength(); i++) {
+			public void merge(ProcessedPage page) throws Exception {
+				mergePage(page);
+			}
+		});
+	}
 
-				Node childNode = children.item(i);
+	/**
+	 * Waits for the result of a processing task
+	 * 
+	 * @param future the {@link Future} of the task
+	 * @return the result of the task
+	 * @throws Exception the exception thrown by the task
+	 */
+	private static <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the walker of the xhtml dir with the include and exclude patterns
+	 * 
+	 * @return the {@link PathWalker}
+	 */
+	private PathWalker createXhtmlWalker() {
+		return new PathWalker(options.getIncludes(), options.getExcludes());
+	}
 
-				if (childNode.getNodeType() == Node.TEXT_NODE) {
+	/**
+	 * Visitor accepting the directories and the xhtml files
+	 */
+	private abstract static class XhtmlVisitor implements Visitor {
 
-					counter += processTextNode(file, childNode);
+		public boolean visit(Path path, BasicFileAttributes attributes) {
 
-				} else {
+			if (attributes.isDirectory()) {
+				return true;
+			} else if (path.getFileName().toString().endsWith(XHTML)) {
+				return true;
+			}
 
-					counter += processNonTextNode(file, childNode);
-				}
+			return false;
+		}
+
+		public boolean visit(File f) {
 
-				counter = processDocument(file, childNode, counter);
+			if (f.isDirectory()) {
+				return true;
+			} else if (f.getName().endsWith(XHTML)) {
+				return true;
 			}
+
+			return false;
 		}
-		return counter;
 	}
 
 }
@@ -0,0 +1,238 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The write-ahead journal of a run, stored next to the resource bundles, in
+ * the format of the {@link Manifest}, every batch of entries closed by a batch
+ * line and forced to the disk.<br>
+ * The labels of a page which is rewritten are written ahead, in a batch of
+ * their own, before the new content replaces the file (see
+ * {@link #writeAhead(ProcessedPage)}): once the texts of a page are replaced
+ * by the EL expressions, its labels are in the journal. The other pages are
+ * appended in batches of {@link Constants#JOURNAL_BATCH_PAGES} pages as they
+ * are put into the resource bundles; their texts are still in the files, so
+ * losing the last batch only means that they are processed again.<br>
+ * At the end of the run the resource bundles are saved (sorted, as usual) and
+ * the journal is deleted. If the run fails or the process is killed, the
+ * journal is kept: the next run takes the labels of the pages from it (the
+ * pages not changed since are not processed again), so the labels of the pages
+ * already rewritten are not lost.<br>
+ * The methods may be called from the threads processing the pages.
+ */
+public class Journal implements Closeable {
+
+	/**
+	 * Reference to the file
+	 */
+	private final File journalFile;
+
+	/**
+	 * The manifest of the run, the paths are relative to its xhtml dir
+	 */
+	private final Manifest manifest;
+
+	/**
+	 * The entries of the current batch
+	 */
+	private StringWriter batch = new StringWriter();
+
+	/**
+	 * The number of the pages in the current batch
+	 */
+	private int pages;
+
+	/**
+	 * The channel of the file, opened with the first batch
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Constructor
+	 *
+	 * @param journalFile the journal file
+	 * @param manifest    the manifest of the run
+	 */
+	public Journal(File journalFile, Manifest manifest) {
+		this.journalFile = journalFile;
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Resumes a failed run: if the journal file exists, its entries are loaded
+	 * into the manifest. The end of the file after the last batch line (written
+	 * when the process was killed) is cut off, so it is not taken as the
+	 * beginning of the next batch.
+	 *
+	 * @return the number of the loaded entries, 0 if there is no journal file
+	 * @throws IOException on I/O errors
+	 */
+	public synchronized int resume() throws IOException {
+
+		if (!journalFile.exists()) {
+			return 0;
+		}
+
+		byte[] content = Files.readAllBytes(journalFile.toPath());
+		int length = getCompleteLength(content);
+
+		if (length < content.length) {
+			try (FileChannel file = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+				file.truncate(length);
+				file.force(false);
+			}
+		}
+
+		return manifest.resume(journalFile);
+	}
+
+	/**
+	 * Returns the length of the complete batches of the journal
+	 *
+	 * @param content the content of the journal file
+	 * @return the length up to the end of the last batch line, 0 if there is none
+	 */
+	static int getCompleteLength(byte[] content) {
+
+		byte[] line = (JOURNAL_BATCH + NEWLINE).getBytes(StandardCharsets.ISO_8859_1);
+		byte[] newline = NEWLINE.getBytes(StandardCharsets.ISO_8859_1);
+
+		for (int end = content.length; end >= line.length; end--) {
+
+			int start = end - line.length;
+
+			// a batch line at the beginning of the file or of a line
+			boolean lineStart = start == 0
+					|| (start >= newline.length && regionMatches(content, start - newline.length, newline));
+
+			if (lineStart && regionMatches(content, start, line)) {
+				return end;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns true if the bytes of the content at the offset are the bytes of
+	 * the region
+	 */
+	private static boolean regionMatches(byte[] content, int offset, byte[] region) {
+		for (int i = 0; i < region.length; i++) {
+			if (content[offset + i] != region[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the labels of a page which is about to be rewritten, in a batch of
+	 * its own, and forces it to the disk. Called before the file of the page is
+	 * replaced; the labels of a rewritten page are not appended again.
+	 *
+	 * @param page the processed page, completed with its new hash
+	 * @throws IOException on I/O errors
+	 */
+	public synchronized void writeAhead(ProcessedPage page) throws IOException {
+
+		StringWriter entry = new StringWriter();
+
+		Manifest.write(entry, manifest.getRelativePath(page.getFile()), page.getHash(), true, page.getLabels());
+		entry.write(JOURNAL_BATCH + NEWLINE);
+
+		write(entry.toString());
+	}
+
+	/**
+	 * Appends the labels of a page which was not rewritten, the batch is written
+	 * when it is full
+	 *
+	 * @param page the processed page
+	 * @throws IOException on I/O errors
+	 */
+	public synchronized void append(ProcessedPage page) throws IOException {
+
+		Manifest.write(batch, manifest.getRelativePath(page.getFile()), page.getHash(), page.isRewritten(),
+				page.getLabels());
+
+		if (++pages == JOURNAL_BATCH_PAGES) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the current batch to the end of the journal file and forces it to
+	 * the disk
+	 *
+	 * @throws IOException on I/O errors
+	 */
+	public synchronized void flush() throws IOException {
+
+		if (pages == 0) {
+			return;
+		}
+
+		batch.write(JOURNAL_BATCH + NEWLINE);
+
+		write(batch.toString());
+
+		batch = new StringWriter();
+		pages = 0;
+	}
+
+	/**
+	 * Writes the entries to the end of the journal file and forces them to the
+	 * disk
+	 */
+	private void write(String entries) throws IOException {
+
+		if (channel == null) {
+			channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(entries.getBytes(ISO_8859_1));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Deletes the journal, called when the resource bundles are saved. The
+	 * labels of the current batch are already saved with them.
+	 *
+	 * @throws IOException on I/O errors
+	 */
+	public synchronized void delete() throws IOException {
+
+		batch = new StringWriter();
+		pages = 0;
+		close();
+		journalFile.delete();
+	}
+
+	/**
+	 * Writes the current batch and closes the file
+	 */
+	public synchronized void close() throws IOException {
+
+		flush();
+
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+}
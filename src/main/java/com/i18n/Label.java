@@ -0,0 +1,57 @@
+package com.i18n;
+
+/**
+ * Class for holding a label extracted from an xhtml file
+ */
+public class Label {
+
+	/**
+	 * The name of the property
+	 */
+	private final String name;
+
+	/**
+	 * The value of the property (the text found in the xhtml file)
+	 */
+	private final String value;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name  the name of the property
+	 * @param value the value of the property
+	 */
+	public Label(String name, String value) {
+		this.name = name;
+		this.value = value;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return the value
+	 */
+	public String getValue() {
+		return this.value;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("Label [name=");
+		builder.append(this.name);
+		builder.append(", value=");
+		builder.append(this.value);
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,264 @@
+package com.i18n;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import com.i18n.Metrics.Counter;
+
+/**
+ * The labels of all the resource bundles in a single table. Every label name
+ * is stored once in the {@link LabelKeys}, with the text found in the xhtml
+ * files (stored once, whatever the number of locales) and the positions of the
+ * label in the loaded property files, indexed by the slot of the locale and
+ * the number of the name. The values of the property files are decoded from
+ * the {@link MappedPropertyFile}s only when they are needed. Putting a label
+ * costs one lookup, not one per locale.<br>
+ * The {@link ResourceBundle}s are views of one slot of the index.
+ */
+public class LabelIndex {
+
+	/**
+	 * The label names
+	 */
+	private final LabelKeys keys = new LabelKeys();
+
+	/**
+	 * The texts found in the xhtml files by the number of the name, null if the
+	 * label was not found
+	 */
+	private String[] values = new String[64];
+
+	/**
+	 * The indexes of the labels in the property files by slot and by the number
+	 * of the name, plus one (0 if the file does not contain the label). Only as
+	 * long as the number of the names when the file was added.
+	 */
+	private final List<int[]> oldIndexes = new ArrayList<int[]>();
+
+	/**
+	 * The resource bundles by slot
+	 */
+	private final List<ResourceBundle> resourceBundles = new ArrayList<ResourceBundle>();
+
+	/**
+	 * The loaded property files by slot
+	 */
+	private final List<PropertySource> propertyFiles = new ArrayList<PropertySource>();
+
+	/**
+	 * Adds the properties of a resource bundle to the index
+	 *
+	 * @param locale         name of the locale for the resource bundle (e.g.:
+	 *                       "en")
+	 * @param propertiesFile the reference to the file
+	 * @param properties     the loaded property file (or shards)
+	 * @return the view of the resource bundle
+	 */
+	public ResourceBundle addResourceBundle(String locale, File propertiesFile, PropertySource properties) {
+
+		int slot = resourceBundles.size();
+		ResourceBundle rb = new ResourceBundle(locale, propertiesFile, this, slot);
+		resourceBundles.add(rb);
+		propertyFiles.add(properties);
+
+		int[] indexes = new int[keys.size() + properties.size()];
+
+		for (int i = 0; i < properties.size(); i++) {
+			indexes[keys.add(properties.getKey(i))] = i + 1;
+		}
+
+		oldIndexes.add(Arrays.copyOf(indexes, keys.size()));
+
+		return rb;
+	}
+
+	/**
+	 * Puts a label found in an xhtml file. The conflicts with the values of the
+	 * property files are added to the messages of the resource bundles.
+	 *
+	 * @param labelValue the text found in the xhtml file
+	 * @param labelName  the name of the label
+	 */
+	public void addLabel(String labelValue, String labelName) {
+
+		int number = keys.add(labelName);
+
+		if (number >= values.length) {
+			values = Arrays.copyOf(values, Math.max(values.length * 2, number + 1));
+		}
+		values[number] = labelValue;
+
+		for (int slot = 0; slot < oldIndexes.size(); slot++) {
+
+			int index = getOldIndex(slot, number);
+
+			if (index >= 0 && !propertyFiles.get(slot).valueEquals(index, labelValue)) {
+				writeConflictMessage(resourceBundles.get(slot), labelValue, labelName,
+						propertyFiles.get(slot).getValue(index));
+			}
+		}
+	}
+
+	/**
+	 * Removes a label put earlier (e.g. replaced by a shared label). If a
+	 * property file contains the label, it becomes an old and not used property.
+	 *
+	 * @param labelName the name of the label
+	 */
+	public void removeLabel(String labelName) {
+
+		int number = keys.find(labelName);
+
+		if (number >= 0 && number < values.length) {
+			values[number] = null;
+		}
+	}
+
+	/**
+	 * Writes conflicting property values message to ResourceBundle
+	 */
+	private static void writeConflictMessage(ResourceBundle resourceBundle, String labelValue, String labelName,
+			String oldLabelValue) {
+		Metrics.add(Counter.CONFLICTS, 1);
+		resourceBundle.getMessages().add("Property: \"" + labelName + "\" already exist with value: \"" + //
+				oldLabelValue + "\", the new value would have been: \"" + labelValue + "\"");
+	}
+
+	/**
+	 * Returns true if any of the loaded property files contains the label
+	 *
+	 * @param labelName the name of the label
+	 * @return true if the label is not new
+	 */
+	public boolean isLoaded(String labelName) {
+
+		int number = keys.find(labelName);
+
+		for (int slot = 0; number >= 0 && slot < oldIndexes.size(); slot++) {
+			if (getOldIndex(slot, number) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the resource bundles in the order they were added
+	 */
+	public List<ResourceBundle> getResourceBundles() {
+		return this.resourceBundles;
+	}
+
+	/**
+	 * @return the number of the distinct labels
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Returns the properties loaded from the file of the slot
+	 *
+	 * @param slot the slot of the resource bundle
+	 * @return a new {@link Properties}
+	 */
+	Properties getProperties(int slot) {
+
+		Properties p = new Properties();
+
+		for (int number = 0; number < keys.size(); number++) {
+			String oldValue = getOldValue(slot, number);
+			if (oldValue != null) {
+				p.put(keys.get(number), oldValue);
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the labels found in the xhtml files and not in the file of the slot,
+	 * with the found texts
+	 *
+	 * @param slot the slot of the resource bundle
+	 * @return a new {@link Properties}
+	 */
+	Properties getNewProperties(int slot) {
+
+		Properties p = new Properties();
+
+		for (int number = 0; number < keys.size(); number++) {
+			String value = getValue(number);
+			if (value != null && getOldIndex(slot, number) < 0) {
+				p.put(keys.get(number), value);
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the labels found in the xhtml files and in the file of the slot,
+	 * with the found texts
+	 *
+	 * @param slot the slot of the resource bundle
+	 * @return a new {@link Properties}
+	 */
+	Properties getOldButUsed(int slot) {
+
+		Properties p = new Properties();
+
+		for (int number = 0; number < keys.size(); number++) {
+			String value = getValue(number);
+			if (value != null && getOldIndex(slot, number) >= 0) {
+				p.put(keys.get(number), value);
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the labels of the file of the slot not found in the xhtml files,
+	 * with the values of the file
+	 *
+	 * @param slot the slot of the resource bundle
+	 * @return a new {@link Properties}
+	 */
+	Properties getOldNotUsed(int slot) {
+
+		Properties p = new Properties();
+
+		for (int number = 0; number < keys.size(); number++) {
+			if (getValue(number) == null && getOldIndex(slot, number) >= 0) {
+				p.put(keys.get(number), getOldValue(slot, number));
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the text found in the xhtml files, null if the label was not found
+	 */
+	private String getValue(int number) {
+		return number < values.length ? values[number] : null;
+	}
+
+	/**
+	 * Returns the index of the label in the property file of the slot, -1 if the
+	 * file does not contain the label
+	 */
+	private int getOldIndex(int slot, int number) {
+		int[] indexes = oldIndexes.get(slot);
+		return number < indexes.length ? indexes[number] - 1 : -1;
+	}
+
+	/**
+	 * Decodes the value of the label from the property file of the slot
+	 */
+	private String getOldValue(int slot, int number) {
+		int index = getOldIndex(slot, number);
+		return index < 0 ? null : propertyFiles.get(slot).getValue(index);
+	}
+
+}
@@ -0,0 +1,243 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The label names of the {@link LabelIndex}, numbered in the order they were
+ * added. The names are not stored as strings: the generated names start with
+ * the name of the file and of the node (e.g.: "orderEdit_outputText_"), shared
+ * by many labels, so the name is split after its second underscore, the
+ * prefix is interned and only the rest is stored, in a single character
+ * array. The names are found through an open addressing hash table of the
+ * numbers, comparing the characters in place.<br>
+ * The split does not change the lookup: the hash and the comparison are done
+ * on the whole name, so any name can be stored.
+ */
+public class LabelKeys {
+
+	/**
+	 * The number of the underscores in the prefix of a name
+	 */
+	private static final int PREFIX_UNDERSCORES = 2;
+
+	/**
+	 * The numbers of the interned prefixes
+	 */
+	private final Map<String, Integer> prefixNumbers = new HashMap<String, Integer>();
+
+	/**
+	 * The interned prefixes by number
+	 */
+	private String[] prefixes = new String[16];
+
+	/**
+	 * The number of the prefix of the names
+	 */
+	private int[] namePrefixes = new int[64];
+
+	/**
+	 * The start of the rest of the names in {@link #chars}, the rest of the last
+	 * name ends at {@link #length}
+	 */
+	private int[] nameStarts = new int[64];
+
+	/**
+	 * The hash codes of the names (the same as {@link String#hashCode()})
+	 */
+	private int[] hashes = new int[64];
+
+	/**
+	 * The rest of the names after their prefixes
+	 */
+	private char[] chars = new char[1024];
+
+	/**
+	 * The used length of {@link #chars}
+	 */
+	private int length;
+
+	/**
+	 * The hash table: the numbers of the names plus one, 0 for an empty slot.
+	 * The size is a power of two.
+	 */
+	private int[] table = new int[128];
+
+	/**
+	 * The number of the names
+	 */
+	private int size;
+
+	/**
+	 * @return the number of the names
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of the name
+	 *
+	 * @param name the label name
+	 * @return the number of the name, -1 if it was not added
+	 */
+	public int find(String name) {
+
+		int hash = name.hashCode();
+		int mask = table.length - 1;
+
+		for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+			int number = table[i] - 1;
+			if (number < 0) {
+				return -1;
+			}
+			if (hashes[number] == hash && matches(number, name)) {
+				return number;
+			}
+		}
+	}
+
+	/**
+	 * Adds the name if it was not added yet
+	 *
+	 * @param name the label name
+	 * @return the number of the name
+	 */
+	public int add(String name) {
+
+		int hash = name.hashCode();
+		int mask = table.length - 1;
+		int i = spread(hash) & mask;
+
+		for (;; i = (i + 1) & mask) {
+			int number = table[i] - 1;
+			if (number < 0) {
+				break;
+			}
+			if (hashes[number] == hash && matches(number, name)) {
+				return number;
+			}
+		}
+
+		int number = size;
+		store(name, hash);
+		table[i] = number + 1;
+
+		// at most half of the table is used
+		if (size * 2 > table.length) {
+			rehash();
+		}
+		return number;
+	}
+
+	/**
+	 * Returns the name
+	 *
+	 * @param number the number of the name
+	 * @return a new string of the name
+	 */
+	public String get(int number) {
+
+		String prefix = prefixes[namePrefixes[number]];
+		int start = nameStarts[number];
+		int end = number + 1 < size ? nameStarts[number + 1] : length;
+
+		StringBuilder sb = new StringBuilder(prefix.length() + end - start);
+		sb.append(prefix);
+		sb.append(chars, start, end - start);
+		return sb.toString();
+	}
+
+	/**
+	 * Mixes the high bits of the hash code into the low bits used by the table
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Returns true if the stored name is the given name
+	 */
+	private boolean matches(int number, String name) {
+
+		String prefix = prefixes[namePrefixes[number]];
+		int start = nameStarts[number];
+		int end = number + 1 < size ? nameStarts[number + 1] : length;
+
+		if (prefix.length() + end - start != name.length() || !name.startsWith(prefix)) {
+			return false;
+		}
+
+		for (int i = start, j = prefix.length(); i < end; i++, j++) {
+			if (chars[i] != name.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the prefix and the rest of a new name
+	 */
+	private void store(String name, int hash) {
+
+		int split = 0;
+		for (int underscores = 0; underscores < PREFIX_UNDERSCORES; underscores++) {
+			int underscore = name.indexOf(CHAR_UNDERSCORE, split);
+			if (underscore < 0) {
+				break;
+			}
+			split = underscore + 1;
+		}
+
+		String prefix = name.substring(0, split);
+		Integer prefixNumber = prefixNumbers.get(prefix);
+		if (prefixNumber == null) {
+			prefixNumber = prefixNumbers.size();
+			if (prefixNumber == prefixes.length) {
+				prefixes = Arrays.copyOf(prefixes, prefixNumber * 2);
+			}
+			prefixes[prefixNumber] = prefix;
+			prefixNumbers.put(prefix, prefixNumber);
+		}
+
+		if (size == hashes.length) {
+			namePrefixes = Arrays.copyOf(namePrefixes, size * 2);
+			nameStarts = Arrays.copyOf(nameStarts, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+
+		int rest = name.length() - split;
+		if (length + rest > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + rest));
+		}
+		name.getChars(split, name.length(), chars, length);
+
+		namePrefixes[size] = prefixNumber;
+		nameStarts[size] = length;
+		hashes[size] = hash;
+		length += rest;
+		size++;
+	}
+
+	/**
+	 * Doubles the hash table
+	 */
+	private void rehash() {
+
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+
+		for (int number = 0; number < size; number++) {
+			int i = spread(hashes[number]) & mask;
+			while (table[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			table[i] = number + 1;
+		}
+	}
+
+}
@@ -0,0 +1,342 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The manifest of the incremental mode, stored next to the resource bundles.
+ * For each xhtml file it records the hash of the content written by the last
+ * run, the labels extracted from the file and whether the file was rewritten.
+ * When the content of a file did not change since the last run, the file is
+ * not processed again, its labels are taken from the manifest.<br>
+ * Format (ISO-8859-1, the values are escaped like in the property files):
+ *
+ * <pre>
+ * P	relative/path.xhtml	hash	REWRITTEN|UNCHANGED	label count
+ * L	label name	label value
+ * </pre>
+ *
+ * The {@link Journal} of a run uses the same format.
+ */
+public class Manifest {
+
+	/**
+	 * Reference to the file
+	 */
+	private final File manifestFile;
+
+	/**
+	 * Directory for xhtml files, the paths are relative to it
+	 */
+	private final Path xhtmlRoot;
+
+	/**
+	 * Character encoding for XHTML files.
+	 */
+	private final String xhtmlEncoding;
+
+	/**
+	 * The entries read from the manifest file by relative path
+	 */
+	private final Map<String, Entry> previous = new HashMap<String, Entry>();
+
+	/**
+	 * The entries of the current run by relative path
+	 */
+	private final Map<String, Entry> current = new TreeMap<String, Entry>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param manifestFile  the manifest file
+	 * @param xhtmlDir      the directory of the xhtml files
+	 * @param xhtmlEncoding the character encoding of the xhtml files
+	 */
+	public Manifest(File manifestFile, String xhtmlDir, String xhtmlEncoding) {
+		this.manifestFile = manifestFile;
+		this.xhtmlRoot = Paths.get(xhtmlDir).toAbsolutePath();
+		this.xhtmlEncoding = xhtmlEncoding;
+	}
+
+	/**
+	 * Loads the entries of the last run, if the manifest file exists
+	 *
+	 * @throws IOException on I/O errors
+	 */
+	public void load() throws IOException {
+
+		if (!manifestFile.exists()) {
+			return;
+		}
+
+		read(manifestFile, false);
+	}
+
+	/**
+	 * Loads the entries of the journal of a failed run. They are newer than the
+	 * entries of the manifest, so they replace them. The entries of an
+	 * incomplete batch (after the last batch line) are dropped.
+	 *
+	 * @param journalFile the journal file
+	 * @return the number of the loaded entries
+	 * @throws IOException on I/O errors
+	 */
+	public int resume(File journalFile) throws IOException {
+		return read(journalFile, true);
+	}
+
+	/**
+	 * Reads the entries of the file into the entries of the last run
+	 *
+	 * @param batched true if the entries are valid only when their batch is
+	 *                closed by a batch line
+	 * @return the number of the read entries
+	 */
+	private int read(File file, boolean batched) throws IOException {
+
+		Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		int count = 0;
+
+		try (BufferedReader br = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), ISO_8859_1))) {
+
+			Entry entry = null;
+			String line;
+
+			while ((line = br.readLine()) != null) {
+
+				String[] fields = line.split(TAB);
+
+				if (fields[0].equals(MANIFEST_PAGE) && fields.length == 5) {
+					entry = new Entry(fields[2], fields[3].equals(MANIFEST_REWRITTEN));
+					entries.put(loadConvert(fields[1]), entry);
+				} else if (fields[0].equals(MANIFEST_LABEL) && fields.length == 3 && entry != null) {
+					entry.labels.add(new Label(loadConvert(fields[1]), loadConvert(fields[2])));
+				} else if (fields[0].equals(JOURNAL_BATCH) && batched) {
+					previous.putAll(entries);
+					count += entries.size();
+					entries.clear();
+					entry = null;
+				}
+			}
+		}
+
+		if (!batched) {
+			previous.putAll(entries);
+			count += entries.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the page with the labels from the last run, if the content of the
+	 * file did not change since.
+	 *
+	 * @param file     the xhtml file
+	 * @param original the content of the file
+	 * @return the page or null if the file has to be processed
+	 */
+	public ProcessedPage getUnchangedPage(File file, byte[] original) {
+
+		String hash = hash(original);
+		List<Label> labels = getUnchangedLabels(getRelativePath(file), hash);
+
+		if (labels == null) {
+			return null;
+		}
+
+		ProcessedPage page = new ProcessedPage(file);
+		page.addReplayedLabels(labels);
+		page.setUnchanged(true);
+		page.setHash(hash);
+		return page;
+	}
+
+	/**
+	 * Completes a processed page: the labels replaced by an earlier run, which
+	 * are still used by the page, are added and the hash of the new content is
+	 * set.
+	 *
+	 * @param page     the processed page
+	 * @param original the content of the file before processing
+	 * @param content  the content of the file after processing
+	 * @throws UnsupportedEncodingException if the xhtml encoding is not supported
+	 */
+	public void completePage(ProcessedPage page, byte[] original, byte[] content)
+			throws UnsupportedEncodingException {
+
+		String path = getRelativePath(page.getFile());
+
+		page.addReplayedLabels(getReferencedLabels(path, new String(original, xhtmlEncoding)));
+		page.setHash(hash(content));
+	}
+
+	/**
+	 * Returns the labels of the file from the last run, if the content of the
+	 * file did not change since.
+	 *
+	 * @param path the path of the file relative to the xhtml dir
+	 * @param hash the hash of the content of the file
+	 * @return the labels or null if the file has to be processed
+	 */
+	public List<Label> getUnchangedLabels(String path, String hash) {
+
+		Entry entry = previous.get(path);
+
+		if (entry != null && entry.hash.equals(hash)) {
+			return Collections.unmodifiableList(entry.labels);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the labels of the file from the last run, whose EL expressions are
+	 * still found in the (changed) content of the file. The texts of these labels
+	 * were replaced in an earlier run, so they cannot be found again.
+	 *
+	 * @param path    the path of the file relative to the xhtml dir
+	 * @param content the content of the file
+	 * @return the labels still referenced by the file
+	 */
+	public List<Label> getReferencedLabels(String path, String content) {
+
+		Entry entry = previous.get(path);
+		List<Label> labels = new ArrayList<Label>();
+
+		if (entry != null) {
+			for (Label label : entry.labels) {
+				if (content.contains(geti18nLabel(label.getName()))) {
+					labels.add(label);
+				}
+			}
+		}
+		return labels;
+	}
+
+	/**
+	 * Records the result of the current run for a file
+	 *
+	 * @param page the processed page
+	 */
+	public void record(ProcessedPage page) {
+
+		Entry entry = new Entry(page.getHash(), page.isRewritten());
+		entry.labels.addAll(page.getLabels());
+		current.put(getRelativePath(page.getFile()), entry);
+	}
+
+	/**
+	 * Returns the path of the file relative to the xhtml dir, with '/' separators
+	 *
+	 * @param file the file in the xhtml dir
+	 * @return the relative path
+	 */
+	public String getRelativePath(File file) {
+		return Util.getRelativePath(xhtmlRoot, file);
+	}
+
+	/**
+	 * Saves the entries of the current run (files not found in the current run
+	 * are dropped)
+	 *
+	 * @throws IOException on I/O errors
+	 */
+	public void save() throws IOException {
+
+		try (BufferedWriter bw = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(manifestFile), ISO_8859_1))) {
+
+			bw.write(MANIFEST_HEADER);
+
+			for (Map.Entry<String, Entry> e : current.entrySet()) {
+				Entry entry = e.getValue();
+				write(bw, e.getKey(), entry.hash, entry.rewritten, entry.labels);
+			}
+		}
+	}
+
+	/**
+	 * Writes the entry of a file
+	 *
+	 * @param writer    the writer
+	 * @param path      the path of the file relative to the xhtml dir
+	 * @param hash      the hash of the content of the file
+	 * @param rewritten true if the file was rewritten in the run
+	 * @param labels    the labels of the file
+	 * @throws IOException on I/O errors
+	 */
+	static void write(Writer writer, String path, String hash, boolean rewritten, List<Label> labels)
+			throws IOException {
+
+		writer.write(MANIFEST_PAGE + TAB + saveConvert(path, false, true) + TAB + hash + TAB
+				+ (rewritten ? MANIFEST_REWRITTEN : MANIFEST_UNCHANGED) + TAB + labels.size() + NEWLINE);
+
+		for (Label label : labels) {
+			writer.write(MANIFEST_LABEL + TAB + saveConvert(label.getName(), false, true) + TAB
+					+ saveConvert(label.getValue(), false, true) + NEWLINE);
+		}
+	}
+
+	/**
+	 * Starts a new run in the same process (daemon mode): the entries of the
+	 * current run become the entries of the last run
+	 */
+	public void startNextRun() {
+		previous.clear();
+		previous.putAll(current);
+		current.clear();
+	}
+
+	/**
+	 * The manifest entry of a file
+	 */
+	private static class Entry {
+
+		/**
+		 * The hash of the content of the file
+		 */
+		private final String hash;
+
+		/**
+		 * True if the file was rewritten in the run
+		 */
+		private final boolean rewritten;
+
+		/**
+		 * The labels of the file
+		 */
+		private final List<Label> labels = new ArrayList<Label>();
+
+		/**
+		 * Constructor
+		 *
+		 * @param hash      the hash of the content of the file
+		 * @param rewritten true if the file was rewritten in the run
+		 */
+		Entry(String hash, boolean rewritten) {
+			this.hash = hash;
+			this.rewritten = rewritten;
+		}
+	}
+
+}
@@ -0,0 +1,445 @@
+package com.i18n;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * A property file loaded into the memory. The file is scanned once and the
+ * positions of the keys and of the values are indexed, but they are decoded
+ * only when they are needed (the keys once, by the {@link LabelIndex}; most of
+ * the values are only compared to the texts of the xhtml files, which is done
+ * on the bytes).<br>
+ * The file is read like {@link java.util.Properties#load(java.io.InputStream)}
+ * reads it: ISO-8859-1, comment lines, line continuations, the key terminators
+ * and the escapes are handled the same way. If a key occurs more than once, the
+ * last value is the one used by the {@link LabelIndex}.<br>
+ * The content is read into the heap, not mapped: the values are decoded when
+ * the resource bundles are saved, and a file with a mapped view cannot be
+ * replaced or deleted on Windows (the mapping is only released by the garbage
+ * collector), so the saving could not rename over the loaded files or delete
+ * the loaded shards.
+ */
+public class MappedPropertyFile implements PropertySource {
+
+	private static final String MALFORMED_UXXXX_ENCODING = "Malformed \\uxxxx encoding.";
+
+	/**
+	 * The content of the file
+	 */
+	private final ByteBuffer content;
+
+	/**
+	 * The start of the keys in the content, in the order of the file
+	 */
+	private int[] keyStarts = new int[64];
+
+	/**
+	 * The end of the keys in the content, negative (-end - 1) if the key
+	 * contains escapes or line continuations
+	 */
+	private int[] keyEnds = new int[64];
+
+	/**
+	 * The start of the values in the content
+	 */
+	private int[] valueStarts = new int[64];
+
+	/**
+	 * The end of the values in the content, negative (-end - 1) if the value
+	 * contains escapes or line continuations
+	 */
+	private int[] valueEnds = new int[64];
+
+	/**
+	 * The number of the keys
+	 */
+	private int size;
+
+	/**
+	 * The current logical line (the continuation lines appended)
+	 */
+	private char[] line = new char[256];
+
+	/**
+	 * The position of the characters of the current logical line in the content
+	 */
+	private int[] positions = new int[256];
+
+	/**
+	 * The length of the line read by {@link #readLine(int, int)}, -1 at the end
+	 * of the content
+	 */
+	private int lineLength;
+
+	/**
+	 * Constructor, indexes the content
+	 *
+	 * @param content the content of a property file
+	 */
+	public MappedPropertyFile(ByteBuffer content) {
+		this.content = content;
+		index();
+		this.line = null;
+		this.positions = null;
+	}
+
+	/**
+	 * Reads the file into the memory and indexes it. The file is closed before
+	 * returning, it can be replaced or deleted while the values are read.
+	 *
+	 * @param file the property file
+	 * @return the indexed file
+	 * @throws IOException on I/O errors
+	 */
+	public static MappedPropertyFile load(File file) throws IOException {
+		return new MappedPropertyFile(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+	}
+
+	/**
+	 * @return the number of the keys (a repeated key is counted each time)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Decodes the key
+	 *
+	 * @param index the index of the key in the file
+	 * @return the decoded key
+	 */
+	public String getKey(int index) {
+		return decode(keyStarts[index], keyEnds[index]);
+	}
+
+	/**
+	 * Decodes the value of the key
+	 *
+	 * @param index the index of the key in the file
+	 * @return the decoded value
+	 */
+	public String getValue(int index) {
+		return decode(valueStarts[index], valueEnds[index]);
+	}
+
+	/**
+	 * Decodes a key or a value
+	 *
+	 * @param start the start in the content
+	 * @param end   the end in the content, negative (-end - 1) if the range
+	 *              contains escapes or line continuations
+	 * @return the decoded text
+	 */
+	private String decode(int start, int end) {
+
+		if (end >= 0) {
+			char[] chars = new char[end - start];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) (content.get(start + i) & 0xFF);
+			}
+			return new String(chars);
+		}
+
+		end = -end - 1;
+		char[] chars = new char[end - start];
+		int length = join(start, end, chars);
+
+		return convert(chars, 0, length, new StringBuilder(length));
+	}
+
+	/**
+	 * Returns true if the value of the key is the text. The values without
+	 * escapes are compared without decoding them.
+	 *
+	 * @param index the index of the key in the file
+	 * @param text  the text
+	 * @return true if the decoded value equals the text
+	 */
+	public boolean valueEquals(int index, String text) {
+
+		int start = valueStarts[index];
+		int end = valueEnds[index];
+
+		if (end < 0) {
+			return getValue(index).equals(text);
+		}
+
+		if (end - start != text.length()) {
+			return false;
+		}
+
+		for (int i = start; i < end; i++) {
+			if ((content.get(i) & 0xFF) != text.charAt(i - start)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Scans the content: reads the logical lines, splits them to key and value
+	 * like {@link java.util.Properties} does, and stores the key and the position
+	 * of the value
+	 */
+	private void index() {
+
+		int position = 0;
+		int limit = content.limit();
+
+		while (position < limit) {
+
+			position = readLine(position, limit);
+
+			int length = lineLength;
+			if (length < 0) {
+				break;
+			}
+
+			int keyLength = 0;
+			int valueStart = length;
+			boolean hasSeparator = false;
+			boolean precedingBackslash = false;
+
+			while (keyLength < length) {
+				char c = line[keyLength];
+				if ((c == '=' || c == ':') && !precedingBackslash) {
+					valueStart = keyLength + 1;
+					hasSeparator = true;
+					break;
+				} else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+					valueStart = keyLength + 1;
+					break;
+				}
+				precedingBackslash = c == '\\' ? !precedingBackslash : false;
+				keyLength++;
+			}
+
+			while (valueStart < length) {
+				char c = line[valueStart];
+				if (c != ' ' && c != '\t' && c != '\f') {
+					if (!hasSeparator && (c == '=' || c == ':')) {
+						hasSeparator = true;
+					} else {
+						break;
+					}
+				}
+				valueStart++;
+			}
+
+			// the key and the value are only checked here, they are decoded when needed
+			boolean keyEscaped = false;
+			for (int i = 0; i < keyLength; i++) {
+				if (line[i] == '\\') {
+					convert(line, 0, keyLength, null);
+					keyEscaped = true;
+					break;
+				}
+			}
+
+			int keyStart = keyLength > 0 ? positions[0] : 0;
+			int keyEnd = keyLength > 0 ? positions[keyLength - 1] + 1 : 0;
+			keyEscaped |= keyEnd - keyStart != keyLength;
+
+			boolean escaped = false;
+			for (int i = valueStart; i < length; i++) {
+				if (line[i] == '\\') {
+					convert(line, valueStart, length - valueStart, null);
+					escaped = true;
+					break;
+				}
+			}
+
+			int start = valueStart < length ? positions[valueStart] : position;
+			int end = valueStart < length ? positions[length - 1] + 1 : position;
+			escaped |= end - start != length - valueStart;
+
+			add(keyStart, keyEscaped ? -keyEnd - 1 : keyEnd, start, escaped ? -end - 1 : end);
+		}
+	}
+
+	/**
+	 * Reads the next logical line into {@link #line} (see the LineReader of
+	 * {@link java.util.Properties}): skips the whitespaces at the beginning, the
+	 * empty lines and the comment lines, appends the continuation lines
+	 *
+	 * @return the position after the line
+	 */
+	private int readLine(int position, int limit) {
+
+		int length = 0;
+		boolean skipWhiteSpace = true;
+		boolean appendedLineBegin = false;
+		boolean precedingBackslash = false;
+
+		while (true) {
+
+			if (position >= limit) {
+				lineLength = length == 0 ? -1 : precedingBackslash ? length - 1 : length;
+				return position;
+			}
+
+			char c = (char) (content.get(position++) & 0xFF);
+
+			if (skipWhiteSpace) {
+				if (c == ' ' || c == '\t' || c == '\f') {
+					continue;
+				}
+				if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+					continue;
+				}
+				skipWhiteSpace = false;
+				appendedLineBegin = false;
+			}
+
+			if (length == 0 && (c == '#' || c == '!')) {
+				while (position < limit) {
+					byte b = content.get(position++);
+					if (b == '\r' || b == '\n') {
+						break;
+					}
+				}
+				skipWhiteSpace = true;
+				continue;
+			}
+
+			if (c != '\n' && c != '\r') {
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+					positions = Arrays.copyOf(positions, length * 2);
+				}
+				line[length] = c;
+				positions[length] = position - 1;
+				length++;
+				precedingBackslash = c == '\\' ? !precedingBackslash : false;
+			} else {
+				if (length == 0) {
+					skipWhiteSpace = true;
+					continue;
+				}
+				if (position >= limit) {
+					lineLength = precedingBackslash ? length - 1 : length;
+					return position;
+				}
+				if (precedingBackslash) {
+					// the backslash at the end of the line is not part of the line
+					length--;
+					skipWhiteSpace = true;
+					appendedLineBegin = true;
+					precedingBackslash = false;
+					if (c == '\r' && content.get(position) == '\n') {
+						position++;
+					}
+				} else {
+					lineLength = length;
+					return position;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Appends the lines of a value: every line break in the range follows a
+	 * line continuation, the backslash before it and the whitespaces at the
+	 * beginning of the next line are dropped
+	 *
+	 * @return the number of the characters
+	 */
+	private int join(int start, int end, char[] chars) {
+
+		int length = 0;
+		int i = start;
+
+		while (i < end) {
+			char c = (char) (content.get(i++) & 0xFF);
+
+			if (c == '\r' || c == '\n') {
+				length--;
+				if (c == '\r' && i < end && content.get(i) == '\n') {
+					i++;
+				}
+				while (i < end && isWhiteSpace(content.get(i))) {
+					i++;
+				}
+			} else {
+				chars[length++] = c;
+			}
+		}
+		return length;
+	}
+
+	private static boolean isWhiteSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\f';
+	}
+
+	/**
+	 * Converts the escapes (\t, \r, \n, \f, &#92;uxxxx, \ before any other
+	 * character) like {@link java.util.Properties} does
+	 *
+	 * @param sb the buffer of the conversion, null to check the escapes only
+	 * @return the converted text, null if the buffer is null
+	 * @throws IllegalArgumentException if an &#92;uxxxx escape is malformed
+	 */
+	private static String convert(char[] in, int offset, int length, StringBuilder sb) {
+
+		int end = offset + length;
+
+		if (sb != null) {
+			sb.setLength(0);
+		}
+
+		while (offset < end) {
+			char c = in[offset++];
+			if (c == '\\') {
+				c = in[offset++];
+				if (c == 'u') {
+					if (offset > end - 4) {
+						throw new IllegalArgumentException(MALFORMED_UXXXX_ENCODING);
+					}
+					int value = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(in[offset++], 16);
+						if (digit < 0) {
+							throw new IllegalArgumentException(MALFORMED_UXXXX_ENCODING);
+						}
+						value = (value << 4) + digit;
+					}
+					c = (char) value;
+				} else if (c == 't') {
+					c = '\t';
+				} else if (c == 'r') {
+					c = '\r';
+				} else if (c == 'n') {
+					c = '\n';
+				} else if (c == 'f') {
+					c = '\f';
+				}
+			}
+			if (sb != null) {
+				sb.append(c);
+			}
+		}
+		return sb == null ? null : sb.toString();
+	}
+
+	/**
+	 * Adds the position of a key and of its value
+	 */
+	private void add(int keyStart, int keyEnd, int valueStart, int valueEnd) {
+
+		if (size == keyStarts.length) {
+			keyStarts = Arrays.copyOf(keyStarts, size * 2);
+			keyEnds = Arrays.copyOf(keyEnds, size * 2);
+			valueStarts = Arrays.copyOf(valueStarts, size * 2);
+			valueEnds = Arrays.copyOf(valueEnds, size * 2);
+		}
+		keyStarts[size] = keyStart;
+		keyEnds[size] = keyEnd;
+		valueStarts[size] = valueStart;
+		valueEnds[size] = valueEnd;
+		size++;
+	}
+
+}
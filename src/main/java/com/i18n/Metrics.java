@@ -0,0 +1,385 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the timing of the phases of a run and the counters of the processed
+ * items. The phases and the counters can be updated from any thread. At the end
+ * of the run the summary is written in JSON or in the Prometheus text format
+ * (see the "-metrics" option).<br>
+ * The phases nest: "traversal" contains the processing of the xhtml files,
+ * which contains "parsing", "processDocument" and "getString" (summed over the
+ * files and the threads). In the streaming mode the whole processing of a file
+ * is counted as "parsing".
+ */
+public class Metrics {
+
+	/**
+	 * The timed phases
+	 */
+	public enum Phase {
+		INIT_ENTITIES("initEntities"), //
+		LOAD_RESOURCE_BUNDLES("loadResourceBundles"), //
+		TRAVERSAL("traversal"), //
+		PARSING("parsing"), //
+		PROCESS_DOCUMENT("processDocument"), //
+		GET_STRING("getString"), //
+		DEDUPLICATION("deduplication"), //
+		SAVE_ALL_PROPERTIES("saveAllProperties");
+
+		/**
+		 * The name in the summary
+		 */
+		private final String key;
+
+		/**
+		 * The number of the timed calls
+		 */
+		private final LongAdder calls = new LongAdder();
+
+		/**
+		 * The time spent in the phase
+		 */
+		private final LongAdder nanos = new LongAdder();
+
+		/**
+		 * The longest call
+		 */
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		Phase(String key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The counters
+	 */
+	public enum Counter {
+		PAGES("pages"), //
+		BYTES_READ("bytesRead"), //
+		NODES_VISITED("nodesVisited"), //
+		LABELS_EXTRACTED("labelsExtracted"), //
+		CONFLICTS("conflicts"), //
+		DEDUP_KEYS_SAVED("dedupKeysSaved"), //
+		DEDUP_BYTES_SAVED("dedupBytesSaved");
+
+		/**
+		 * The name in the summary
+		 */
+		private final String key;
+
+		/**
+		 * The value
+		 */
+		private final LongAdder value = new LongAdder();
+
+		Counter(String key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The slowest pages, at most {@link Constants#METRICS_SLOWEST_PAGES}
+	 */
+	private static final List<PageTiming> slowestPages = new ArrayList<PageTiming>();
+
+	/**
+	 * Orders the pages from the slowest
+	 */
+	private static final Comparator<PageTiming> SLOWEST_FIRST = new Comparator<PageTiming>() {
+
+		public int compare(PageTiming p1, PageTiming p2) {
+			return Long.compare(p2.nanos, p1.nanos);
+		}
+	};
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the start time of a timed call
+	 *
+	 * @return the current value of {@link System#nanoTime()}
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Adds the time elapsed since the start to the phase
+	 *
+	 * @param phase the phase
+	 * @param start the value returned by {@link #start()}
+	 * @return the elapsed time in nanoseconds
+	 */
+	public static long stop(Phase phase, long start) {
+
+		long elapsed = System.nanoTime() - start;
+
+		phase.calls.increment();
+		phase.nanos.add(elapsed);
+		phase.maxNanos.accumulateAndGet(elapsed, Math::max);
+
+		return elapsed;
+	}
+
+	/**
+	 * Increments a counter
+	 *
+	 * @param counter the counter
+	 * @param delta   the increment
+	 */
+	public static void add(Counter counter, long delta) {
+		counter.value.add(delta);
+	}
+
+	/**
+	 * Records the processing time of a page, only the slowest pages are kept
+	 *
+	 * @param path  the path of the page
+	 * @param nanos the processing time in nanoseconds
+	 */
+	public static synchronized void recordPage(String path, long nanos) {
+
+		if (slowestPages.size() == METRICS_SLOWEST_PAGES
+				&& slowestPages.get(slowestPages.size() - 1).nanos >= nanos) {
+			return;
+		}
+
+		slowestPages.add(new PageTiming(path, nanos));
+		Collections.sort(slowestPages, SLOWEST_FIRST);
+
+		if (slowestPages.size() > METRICS_SLOWEST_PAGES) {
+			slowestPages.remove(slowestPages.size() - 1);
+		}
+	}
+
+	/**
+	 * Clears the phases, the counters and the page timings
+	 */
+	public static synchronized void reset() {
+		for (Phase phase : Phase.values()) {
+			phase.calls.reset();
+			phase.nanos.reset();
+			phase.maxNanos.set(0);
+		}
+		for (Counter counter : Counter.values()) {
+			counter.value.reset();
+		}
+		slowestPages.clear();
+	}
+
+	/**
+	 * Writes the summary to the file, or to the standard output if the file is
+	 * null
+	 *
+	 * @param format {@link Constants#METRICS_JSON} or
+	 *               {@link Constants#METRICS_PROMETHEUS}
+	 * @param file   the file or null
+	 * @throws IOException on I/O errors
+	 */
+	public static void write(String format, File file) throws IOException {
+
+		String summary = METRICS_PROMETHEUS.equals(format) ? toPrometheus() : toJson();
+
+		if (file == null) {
+			System.out.print(summary);
+			return;
+		}
+
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8)) {
+			writer.write(summary);
+		}
+	}
+
+	/**
+	 * Returns the summary as a JSON object
+	 *
+	 * @return the JSON text
+	 */
+	public static synchronized String toJson() {
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"phases\": {");
+
+		String separator = "\n";
+		for (Phase phase : Phase.values()) {
+			sb.append(separator);
+			sb.append(format("    \"%s\": {\"calls\": %d, \"seconds\": %.6f, \"maxSeconds\": %.6f}", phase.key,
+					phase.calls.sum(), seconds(phase.nanos.sum()), seconds(phase.maxNanos.get())));
+			separator = ",\n";
+		}
+
+		sb.append("\n  },\n  \"counters\": {");
+
+		separator = "\n";
+		for (Counter counter : Counter.values()) {
+			sb.append(separator);
+			sb.append(format("    \"%s\": %d", counter.key, counter.value.sum()));
+			separator = ",\n";
+		}
+
+		sb.append("\n  },\n  \"slowestPages\": [");
+
+		separator = "\n";
+		for (PageTiming page : slowestPages) {
+			sb.append(separator);
+			sb.append(format("    {\"page\": \"%s\", \"seconds\": %.6f}", escapeJson(page.path), seconds(page.nanos)));
+			separator = ",\n";
+		}
+
+		sb.append(slowestPages.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the summary in the Prometheus text exposition format
+	 *
+	 * @return the metrics
+	 */
+	public static synchronized String toPrometheus() {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("# HELP i18ngen_phase_seconds_total Time spent in the phase.\n");
+		sb.append("# TYPE i18ngen_phase_seconds_total counter\n");
+		for (Phase phase : Phase.values()) {
+			sb.append(format("i18ngen_phase_seconds_total{phase=\"%s\"} %.6f\n", phase.key, seconds(phase.nanos.sum())));
+		}
+
+		sb.append("# HELP i18ngen_phase_calls_total Number of the timed calls of the phase.\n");
+		sb.append("# TYPE i18ngen_phase_calls_total counter\n");
+		for (Phase phase : Phase.values()) {
+			sb.append(format("i18ngen_phase_calls_total{phase=\"%s\"} %d\n", phase.key, phase.calls.sum()));
+		}
+
+		for (Counter counter : Counter.values()) {
+			String name = "i18ngen_" + toSnakeCase(counter.key) + "_total";
+			sb.append(format("# TYPE %s counter\n", name));
+			sb.append(format("%s %d\n", name, counter.value.sum()));
+		}
+
+		sb.append("# HELP i18ngen_page_seconds Processing time of the slowest pages.\n");
+		sb.append("# TYPE i18ngen_page_seconds gauge\n");
+		for (PageTiming page : slowestPages) {
+			sb.append(format("i18ngen_page_seconds{page=\"%s\"} %.6f\n", escapeLabelValue(page.path), seconds(page.nanos)));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Formats independently of the default locale (decimal point)
+	 */
+	private static String format(String format, Object... args) {
+		return String.format(Locale.ROOT, format, args);
+	}
+
+	/**
+	 * Converts nanoseconds to seconds
+	 */
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	/**
+	 * Converts a camel case name to snake case (e.g.: "bytesRead" to
+	 * "bytes_read")
+	 */
+	private static String toSnakeCase(String name) {
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				sb.append('_');
+				sb.append(Character.toLowerCase(c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Escapes the backslashes, the quotes and the control characters
+	 */
+	private static String escapeJson(String text) {
+
+		StringBuilder sb = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == CHAR_BACKSLASH) {
+				sb.append(CHAR_BACKSLASH);
+				sb.append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else if (c < 0x20) {
+				sb.append(format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Escapes a Prometheus label value: only the backslashes, the quotes and the
+	 * line feeds are escaped, the other characters are written as they are
+	 */
+	private static String escapeLabelValue(String text) {
+
+		StringBuilder sb = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == CHAR_BACKSLASH) {
+				sb.append(CHAR_BACKSLASH);
+				sb.append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The processing time of a page
+	 */
+	private static class PageTiming {
+
+		/**
+		 * The path of the page relative to the xhtml dir
+		 */
+		private final String path;
+
+		/**
+		 * The processing time in nanoseconds
+		 */
+		private final long nanos;
+
+		PageTiming(String path, long nanos) {
+			this.path = path;
+			this.nanos = nanos;
+		}
+	}
+
+}
@@ -0,0 +1,581 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class for holding the command line parameters. Positional parameters are the
+ * xhtml dir, the resource bundle dir and the optional xhtml encoding, options
+ * start with a dash (e.g.: "-threads=4") and may be placed anywhere.
+ */
+public class Options {
+
+	/**
+	 * Directory for xhtml files
+	 */
+	private String xhtmlDir;
+
+	/**
+	 * Directory for resource bundles
+	 */
+	private String resourceBundleDir;
+
+	/**
+	 * Character encoding for XHTML files.
+	 */
+	private String xhtmlEncoding = ISO_8859_1;
+
+	/**
+	 * Number of threads processing the xhtml files (1 = sequential)
+	 */
+	private int threads = 1;
+
+	/**
+	 * True if the xhtml files are processed with StAX instead of DOM
+	 */
+	private boolean streaming;
+
+	/**
+	 * True if the EL expressions are spliced into the original content of the
+	 * xhtml files
+	 */
+	private boolean splice;
+
+	/**
+	 * True if the resource bundles are saved in shards, one file for every key
+	 * lead
+	 */
+	private boolean shards;
+
+	/**
+	 * True if the resource bundles are also compiled into the binary format
+	 */
+	private boolean binary;
+
+	/**
+	 * How the texts of the labels shared by the pages are compared ("exact" or
+	 * "normalized"), null if the labels are not deduplicated
+	 */
+	private String dedup;
+
+	/**
+	 * True if the statistics of the grammar cache should be reported
+	 */
+	private boolean grammarStats;
+
+	/**
+	 * True if the xhtml files not changed since the last run are skipped
+	 */
+	private boolean incremental;
+
+	/**
+	 * True if the xhtml files are processed by the {@link PagePipeline}
+	 */
+	private boolean pipeline;
+
+	/**
+	 * True if the xhtml files are read and written on virtual threads (implies
+	 * the pipeline)
+	 */
+	private boolean virtualIo;
+
+	/**
+	 * True if the labels are only reported, no file is written
+	 */
+	private boolean report;
+
+	/**
+	 * True if the labels are recorded in the journal while running
+	 */
+	private boolean journal;
+
+	/**
+	 * True if the utility keeps running and processes the changed xhtml files
+	 */
+	private boolean daemon;
+
+	/**
+	 * The time without changes before the changed files are processed in daemon
+	 * mode, in milliseconds
+	 */
+	private long debounce = DAEMON_DEBOUNCE_MILLIS;
+
+	/**
+	 * Format of the metrics summary ("json" or "prometheus"), null if no summary
+	 * is written
+	 */
+	private String metrics;
+
+	/**
+	 * File of the metrics summary, null for the standard output
+	 */
+	private String metricsFile;
+
+	/**
+	 * Glob patterns of the xhtml files to process
+	 */
+	private List<String> includes = new ArrayList<String>();
+
+	/**
+	 * Glob patterns of the files and directories to skip
+	 */
+	private List<String> excludes = new ArrayList<String>();
+
+	/**
+	 * Parses the command line parameters
+	 *
+	 * @param args the command line parameters
+	 * @return the parsed options or null if the mandatory parameters are missing
+	 * @throws IllegalArgumentException on unknown or invalid options
+	 */
+	public static Options parse(String[] args) {
+
+		Options options = new Options();
+		List<String> positional = new ArrayList<String>();
+
+		for (String arg : args) {
+			if (arg.startsWith(OPTION_PREFIX)) {
+				options.parseOption(arg);
+			} else {
+				positional.add(arg);
+			}
+		}
+
+		if (positional.size() < 2) {
+			return null;
+		}
+
+		options.xhtmlDir = positional.get(0);
+		options.resourceBundleDir = positional.get(1);
+		if (positional.size() > 2) {
+			options.xhtmlEncoding = positional.get(2);
+		}
+
+		checkConflict(options.virtualIo, OPTION_VIRTUAL_IO, options.streaming, OPTION_STREAMING);
+		checkConflict(options.virtualIo, OPTION_VIRTUAL_IO, options.splice, OPTION_SPLICE);
+		checkConflict(options.report, OPTION_REPORT, options.virtualIo, OPTION_VIRTUAL_IO);
+
+		if (options.virtualIo) {
+			// the reading and the writing are stages of the pipeline
+			options.pipeline = true;
+		}
+
+		checkConflict(options.pipeline, OPTION_PIPELINE, options.streaming, OPTION_STREAMING);
+		checkConflict(options.splice, OPTION_SPLICE, options.streaming, OPTION_STREAMING);
+		checkConflict(options.splice, OPTION_SPLICE, options.pipeline, OPTION_PIPELINE);
+		checkConflict(options.report, OPTION_REPORT, options.splice, OPTION_SPLICE);
+		checkConflict(options.report, OPTION_REPORT, options.pipeline, OPTION_PIPELINE);
+		checkConflict(options.report, OPTION_REPORT, options.incremental, OPTION_INCREMENTAL);
+		checkConflict(options.report, OPTION_REPORT, options.journal, OPTION_JOURNAL);
+		checkConflict(options.report, OPTION_REPORT, options.daemon, OPTION_DAEMON);
+		checkConflict(options.report, OPTION_REPORT, options.shards, OPTION_SHARDS);
+		checkConflict(options.report, OPTION_REPORT, options.binary, OPTION_BINARY);
+		checkConflict(options.report, OPTION_REPORT, options.dedup != null, OPTION_DEDUP + options.dedup);
+
+		if (options.daemon) {
+			// the changed files are found by the hashes of the manifest
+			options.incremental = true;
+		}
+
+		return options;
+	}
+
+	/**
+	 * Throws an exception if both options are set
+	 *
+	 * @param a       the value of the first option
+	 * @param optionA the name of the first option
+	 * @param b       the value of the second option
+	 * @param optionB the name of the second option
+	 */
+	private static void checkConflict(boolean a, String optionA, boolean b, String optionB) {
+		if (a && b) {
+			throw new IllegalArgumentException(CONFLICTING_OPTIONS + optionA + ", " + optionB);
+		}
+	}
+
+	/**
+	 * Parses a single option
+	 *
+	 * @param arg the option (e.g.: "-threads=4")
+	 */
+	private void parseOption(String arg) {
+
+		if (arg.startsWith(OPTION_THREADS)) {
+			this.threads = parsePositiveInt(arg, OPTION_THREADS);
+		} else if (arg.equals(OPTION_STREAMING)) {
+			this.streaming = true;
+		} else if (arg.equals(OPTION_SPLICE)) {
+			this.splice = true;
+		} else if (arg.equals(OPTION_SHARDS)) {
+			this.shards = true;
+		} else if (arg.equals(OPTION_BINARY)) {
+			this.binary = true;
+		} else if (arg.startsWith(OPTION_DEDUP)) {
+			this.dedup = arg.substring(OPTION_DEDUP.length());
+			if (!dedup.equals(DEDUP_EXACT) && !dedup.equals(DEDUP_NORMALIZED)) {
+				throw new IllegalArgumentException(INVALID_OPTION_VALUE + arg);
+			}
+		} else if (arg.equals(OPTION_GRAMMAR_STATS)) {
+			this.grammarStats = true;
+		} else if (arg.equals(OPTION_INCREMENTAL)) {
+			this.incremental = true;
+		} else if (arg.equals(OPTION_PIPELINE)) {
+			this.pipeline = true;
+		} else if (arg.equals(OPTION_VIRTUAL_IO)) {
+			this.virtualIo = true;
+		} else if (arg.equals(OPTION_REPORT)) {
+			this.report = true;
+		} else if (arg.equals(OPTION_JOURNAL)) {
+			this.journal = true;
+		} else if (arg.equals(OPTION_DAEMON)) {
+			this.daemon = true;
+		} else if (arg.startsWith(OPTION_DEBOUNCE)) {
+			this.debounce = parsePositiveInt(arg, OPTION_DEBOUNCE);
+		} else if (arg.startsWith(OPTION_METRICS)) {
+			this.metrics = arg.substring(OPTION_METRICS.length());
+			if (!metrics.equals(METRICS_JSON) && !metrics.equals(METRICS_PROMETHEUS)) {
+				throw new IllegalArgumentException(INVALID_OPTION_VALUE + arg);
+			}
+		} else if (arg.startsWith(OPTION_METRICS_FILE)) {
+			this.metricsFile = arg.substring(OPTION_METRICS_FILE.length());
+		} else if (arg.startsWith(OPTION_INCLUDE)) {
+			this.includes.addAll(PathWalker.splitGlobs(arg.substring(OPTION_INCLUDE.length())));
+		} else if (arg.startsWith(OPTION_EXCLUDE)) {
+			this.excludes.addAll(PathWalker.splitGlobs(arg.substring(OPTION_EXCLUDE.length())));
+		} else {
+			throw new IllegalArgumentException(UNKNOWN_OPTION + arg);
+		}
+	}
+
+	/**
+	 * Returns the value of an option as a positive integer
+	 *
+	 * @param arg    the option
+	 * @param option the option name with the equals sign
+	 * @return the value
+	 */
+	private static int parsePositiveInt(String arg, String option) {
+		try {
+			int value = Integer.parseInt(arg.substring(option.length()));
+			if (value > 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException(INVALID_OPTION_VALUE + arg);
+	}
+
+	/**
+	 * Prints the usage of the utility
+	 */
+	public static void printUsage() {
+		System.out.println(PARAMETERS);
+		System.out.println(_1_XHTML_DIR_DIRECTORY_CONTAINING_XHTML_FILES);
+		System.out.println(_2_RESOURCE_BUNDLE_DIR_DIRECTORY_CONTAINING_MESSAGES_XX_PROPERTIES_FILES);
+		System.out.println(_3_XHTML_ENCODING);
+		System.out.println(OPTIONS);
+		System.out.println(OPTION_THREADS_USAGE);
+		System.out.println(OPTION_STREAMING_USAGE);
+		System.out.println(OPTION_SPLICE_USAGE);
+		System.out.println(OPTION_SHARDS_USAGE);
+		System.out.println(OPTION_BINARY_USAGE);
+		System.out.println(OPTION_DEDUP_USAGE);
+		System.out.println(OPTION_GRAMMAR_STATS_USAGE);
+		System.out.println(OPTION_INCREMENTAL_USAGE);
+		System.out.println(OPTION_PIPELINE_USAGE);
+		System.out.println(OPTION_VIRTUAL_IO_USAGE);
+		System.out.println(OPTION_REPORT_USAGE);
+		System.out.println(OPTION_JOURNAL_USAGE);
+		System.out.println(OPTION_DAEMON_USAGE);
+		System.out.println(OPTION_DEBOUNCE_USAGE);
+		System.out.println(OPTION_METRICS_USAGE);
+		System.out.println(OPTION_METRICS_FILE_USAGE);
+		System.out.println(OPTION_INCLUDE_USAGE);
+		System.out.println(OPTION_EXCLUDE_USAGE);
+	}
+
+	/**
+	 * @return the xhtmlDir
+	 */
+	public String getXhtmlDir() {
+		return this.xhtmlDir;
+	}
+
+	/**
+	 * @return the resourceBundleDir
+	 */
+	public String getResourceBundleDir() {
+		return this.resourceBundleDir;
+	}
+
+	/**
+	 * @return the xhtmlEncoding
+	 */
+	public String getXhtmlEncoding() {
+		return this.xhtmlEncoding;
+	}
+
+	/**
+	 * @return the number of threads processing the xhtml files
+	 */
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * @return true if the xhtml files are processed with StAX instead of DOM
+	 */
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
+	/**
+	 * @param streaming true if the xhtml files should be processed with StAX
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * @return true if the EL expressions are spliced into the original content of
+	 *         the xhtml files
+	 */
+	public boolean isSplice() {
+		return this.splice;
+	}
+
+	/**
+	 * @param splice true if the EL expressions should be spliced into the
+	 *               original content of the xhtml files
+	 */
+	public void setSplice(boolean splice) {
+		this.splice = splice;
+	}
+
+	/**
+	 * @return true if the resource bundles are saved in shards, one file for
+	 *         every key lead
+	 */
+	public boolean isShards() {
+		return this.shards;
+	}
+
+	/**
+	 * @param shards true if the resource bundles should be saved in shards, one
+	 *               file for every key lead
+	 */
+	public void setShards(boolean shards) {
+		this.shards = shards;
+	}
+
+	/**
+	 * @return true if the resource bundles are also compiled into the binary
+	 *         format
+	 */
+	public boolean isBinary() {
+		return this.binary;
+	}
+
+	/**
+	 * @param binary true if the resource bundles should also be compiled into
+	 *               the binary format
+	 */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * @return how the texts of the labels shared by the pages are compared
+	 *         ("exact" or "normalized"), null if the labels are not deduplicated
+	 */
+	public String getDedup() {
+		return this.dedup;
+	}
+
+	/**
+	 * @param dedup how the texts of the labels shared by the pages should be
+	 *              compared ("exact" or "normalized"), null to keep the labels
+	 *              of the pages
+	 */
+	public void setDedup(String dedup) {
+		this.dedup = dedup;
+	}
+
+	/**
+	 * @return true if the statistics of the grammar cache should be reported
+	 */
+	public boolean isGrammarStats() {
+		return this.grammarStats;
+	}
+
+	/**
+	 * @param grammarStats true if the statistics of the grammar cache should be
+	 *                     reported
+	 */
+	public void setGrammarStats(boolean grammarStats) {
+		this.grammarStats = grammarStats;
+	}
+
+	/**
+	 * @return true if the xhtml files not changed since the last run are skipped
+	 */
+	public boolean isIncremental() {
+		return this.incremental;
+	}
+
+	/**
+	 * @param incremental true if the xhtml files not changed since the last run
+	 *                    should be skipped
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return true if the xhtml files are processed by the {@link PagePipeline}
+	 */
+	public boolean isPipeline() {
+		return this.pipeline;
+	}
+
+	/**
+	 * @param pipeline true if the xhtml files should be processed by the
+	 *                 {@link PagePipeline}
+	 */
+	public void setPipeline(boolean pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * @return true if the xhtml files are read and written on virtual threads
+	 */
+	public boolean isVirtualIo() {
+		return this.virtualIo;
+	}
+
+	/**
+	 * @param virtualIo true if the xhtml files should be read and written on
+	 *                  virtual threads
+	 */
+	public void setVirtualIo(boolean virtualIo) {
+		this.virtualIo = virtualIo;
+	}
+
+	/**
+	 * @return true if the labels are only reported, no file is written
+	 */
+	public boolean isReport() {
+		return this.report;
+	}
+
+	/**
+	 * @param report true if the labels should only be reported, without writing
+	 *               any file
+	 */
+	public void setReport(boolean report) {
+		this.report = report;
+	}
+
+	/**
+	 * @return true if the labels are recorded in the journal while running
+	 */
+	public boolean isJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * @param journal true if the labels should be recorded in the journal while
+	 *                running
+	 */
+	public void setJournal(boolean journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @return true if the utility keeps running and processes the changed xhtml
+	 *         files
+	 */
+	public boolean isDaemon() {
+		return this.daemon;
+	}
+
+	/**
+	 * @param daemon true if the utility should keep running and process the
+	 *               changed xhtml files
+	 */
+	public void setDaemon(boolean daemon) {
+		this.daemon = daemon;
+	}
+
+	/**
+	 * @return the time without changes before the changed files are processed in
+	 *         daemon mode, in milliseconds
+	 */
+	public long getDebounce() {
+		return this.debounce;
+	}
+
+	/**
+	 * @param debounce the time without changes before the changed files are
+	 *                 processed in daemon mode, in milliseconds
+	 */
+	public void setDebounce(long debounce) {
+		this.debounce = debounce;
+	}
+
+	/**
+	 * @return the format of the metrics summary, null if no summary is written
+	 */
+	public String getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * @param metrics the format of the metrics summary ("json" or "prometheus"),
+	 *                null if no summary should be written
+	 */
+	public void setMetrics(String metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the file of the metrics summary, null for the standard output
+	 */
+	public String getMetricsFile() {
+		return this.metricsFile;
+	}
+
+	/**
+	 * @param metricsFile the file of the metrics summary, null for the standard
+	 *                    output
+	 */
+	public void setMetricsFile(String metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+
+	/**
+	 * @return the glob patterns of the xhtml files to process
+	 */
+	public List<String> getIncludes() {
+		return this.includes;
+	}
+
+	/**
+	 * @return the glob patterns of the files and directories to skip
+	 */
+	public List<String> getExcludes() {
+		return this.excludes;
+	}
+
+	/**
+	 * @param threads the number of threads to set
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+}
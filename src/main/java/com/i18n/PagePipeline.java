@@ -0,0 +1,620 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.w3c.dom.Document;
+
+/**
+ * Processes the xhtml files in stages connected by bounded queues:<br>
+ * discover -&gt; read -&gt; parse (and extract the labels) -&gt; serialize -&gt;
+ * write<br>
+ * The file discovery, the reading and the writing run on one thread each, the
+ * parsing and the serialization on {@code threads} threads each, so the disk
+ * and the CPU are used at the same time. A full queue blocks the stage feeding
+ * it, so at most {@link Constants#PIPELINE_QUEUE_CAPACITY} pages wait between
+ * two stages, whatever the size of the tree. The discovery also waits while
+ * {@link Constants#PIPELINE_QUEUE_CAPACITY} pages are not merged yet, so the
+ * pages finished out of order and waiting for an earlier one are bounded
+ * too.<br>
+ * In the virtual I/O mode the reading and the writing run on
+ * {@link Constants#PIPELINE_QUEUE_CAPACITY} virtual threads each: on a network
+ * file system the time of a read or a write is latency, not CPU, so many
+ * requests are kept in flight while the parsing and the serialization stay on
+ * the bounded pool of platform threads. The window of the discovery never lets
+ * more pages in, so more threads would only wait. Without virtual threads
+ * (before Java 21) platform threads are used instead.<br>
+ * The processed pages are handed to a {@link PageMerger} on the calling thread,
+ * in the order the files were found, so the result is the same as the result
+ * of the sequential processing.
+ */
+public class PagePipeline {
+
+	/**
+	 * The DOM processor doing the parsing, the extraction and the serialization
+	 */
+	private final DomPageProcessor processor;
+
+	/**
+	 * The manifest of the incremental mode, null if every file is processed
+	 */
+	private final Manifest manifest;
+
+	/**
+	 * Number of the parser and of the serializer threads
+	 */
+	private final int threads;
+
+	/**
+	 * Number of the reader and of the writer threads
+	 */
+	private final int ioThreads;
+
+	/**
+	 * True if the reader and the writer threads are virtual threads (platform
+	 * threads if the Java runtime does not support them)
+	 */
+	private final boolean virtualIo;
+
+	/**
+	 * The first error of the stages, the remaining pages are dropped after it
+	 */
+	private final AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+	/**
+	 * The stages in processing order
+	 */
+	private final List<Stage> stages = new ArrayList<Stage>();
+
+	/**
+	 * The pages which can be discovered before the earlier ones are merged
+	 */
+	private final Semaphore window = new Semaphore(PIPELINE_QUEUE_CAPACITY);
+
+	/**
+	 * Marks the end of the pages in a queue
+	 */
+	private static final Item END = new Item(-1, null);
+
+	/**
+	 * Receives the processed pages
+	 */
+	public interface PageMerger {
+
+		/**
+		 * Called on the thread running the pipeline, in the order the files were
+		 * found
+		 *
+		 * @param page the processed page
+		 * @throws Exception on any problem
+		 */
+		public void merge(ProcessedPage page) throws Exception;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param processor the DOM processor
+	 * @param manifest  the manifest of the incremental mode or null
+	 * @param threads   the number of the parser and of the serializer threads
+	 * @param virtualIo true if the reading and the writing should run on many
+	 *                  virtual threads
+	 */
+	public PagePipeline(DomPageProcessor processor, Manifest manifest, int threads, boolean virtualIo) {
+		this.processor = processor;
+		this.manifest = manifest;
+		this.threads = threads;
+
+		this.ioThreads = virtualIo ? PIPELINE_QUEUE_CAPACITY : 1;
+		this.virtualIo = virtualIo;
+
+		if (virtualIo && !VirtualThreads.isSupported()) {
+			System.out.format(VIRTUAL_IO_FALLBACK, System.getProperty(JAVA_VERSION), PIPELINE_QUEUE_CAPACITY);
+		}
+	}
+
+	/**
+	 * Processes the xhtml files found by the walker
+	 *
+	 * @param walker the walker of the xhtml dir
+	 * @param root   the xhtml dir
+	 * @param merger receives the processed pages
+	 * @throws Exception the first error of the stages or of the merger
+	 */
+	public void run(final PathWalker walker, final Path root, PageMerger merger) throws Exception {
+
+		Stage discover = new Stage("discover", 1, false) {
+
+			void run() throws Exception {
+				final AtomicInteger sequence = new AtomicInteger();
+
+				try {
+					walker.walk(root, new Visitor() {
+
+						public boolean visit(Path path, BasicFileAttributes attributes) {
+							return attributes.isDirectory() || path.getFileName().toString().endsWith(XHTML);
+						}
+
+						public boolean visit(File f) {
+							return f.isDirectory() || f.getName().endsWith(XHTML);
+						}
+
+						public void process(File f) throws Exception {
+							if (error.get() != null) {
+								throw error.get();
+							}
+							window.acquire();
+							long start = System.nanoTime();
+							Item item = new Item(sequence.getAndIncrement(), f);
+							busy.addAndGet(System.nanoTime() - start);
+							items.incrementAndGet();
+							output.put(item);
+						}
+					});
+				} catch (Exception e) {
+					fail(e);
+				} finally {
+					finish();
+				}
+			}
+		};
+
+		Stage read = new Stage("read", ioThreads, virtualIo) {
+
+			void process(Item item) throws Exception {
+
+				item.original = readFile(item.file);
+
+				if (manifest != null) {
+					item.page = manifest.getUnchangedPage(item.file, item.original);
+				}
+			}
+		};
+
+		Stage parse = new Stage("parse", threads, false) {
+
+			void process(Item item) throws Exception {
+
+				if (item.page != null) {
+					return;
+				}
+
+				item.page = new ProcessedPage(item.file);
+				item.document = processor.parse(item.original);
+				processor.extract(item.page, item.document);
+			}
+		};
+
+		Stage serialize = new Stage("serialize", threads, false) {
+
+			void process(Item item) throws Exception {
+
+				// nothing replaced, the serialization would only reformat the page
+				if (item.page.isModified()) {
+					item.content = processor.serialize(item.document);
+				}
+				item.document = null;
+			}
+		};
+
+		Stage write = new Stage("write", ioThreads, virtualIo) {
+
+			void process(Item item) throws Exception {
+
+				if (item.page.isUnchanged()) {
+					item.original = null;
+					item.content = null;
+					return;
+				}
+
+				// completed before the write, the write-ahead journal records the hash
+				if (manifest != null) {
+					manifest.completePage(item.page, item.original,
+							item.content != null ? item.content : item.original);
+				}
+
+				if (item.content != null) {
+					item.page.setRewritten(processor.write(item.page, item.original, item.content));
+				}
+				item.original = null;
+				item.content = null;
+			}
+		};
+
+		stages.add(discover);
+		stages.add(read);
+		stages.add(parse);
+		stages.add(serialize);
+		stages.add(write);
+
+		BlockingQueue<Item> results = new ArrayBlockingQueue<Item>(PIPELINE_QUEUE_CAPACITY);
+
+		for (int i = 0; i < stages.size(); i++) {
+			Stage stage = stages.get(i);
+			if (i + 1 < stages.size()) {
+				stage.output = new Queue(new ArrayBlockingQueue<Item>(PIPELINE_QUEUE_CAPACITY));
+				stages.get(i + 1).input = stage.output;
+				stage.next = stages.get(i + 1).threadCount;
+			} else {
+				stage.output = new Queue(results);
+				stage.next = 1;
+			}
+		}
+
+		long start = System.nanoTime();
+
+		for (Stage stage : stages) {
+			stage.start();
+		}
+
+		try {
+			mergeInOrder(results, merger);
+		} finally {
+			for (Stage stage : stages) {
+				stage.join();
+			}
+		}
+
+		long elapsed = System.nanoTime() - start;
+
+		if (error.get() != null) {
+			throw error.get();
+		}
+
+		printStatistics(elapsed);
+	}
+
+	/**
+	 * Takes the processed pages from the last queue and hands them to the merger
+	 * in the order of their sequence numbers, and releases their places in the
+	 * window of the discovery. The queue is drained even after an error, so no
+	 * stage stays blocked.
+	 */
+	private void mergeInOrder(BlockingQueue<Item> results, PageMerger merger) throws InterruptedException {
+
+		Map<Integer, Item> waiting = new HashMap<Integer, Item>();
+		int next = 0;
+
+		for (Item item = results.take(); item != END; item = results.take()) {
+
+			if (error.get() != null) {
+				continue;
+			}
+
+			waiting.put(item.sequence, item);
+
+			try {
+				while (waiting.containsKey(next)) {
+					Item ready = waiting.remove(next);
+					ready.page.setNanos(ready.nanos);
+					merger.merge(ready.page);
+					window.release();
+					next++;
+				}
+			} catch (Exception e) {
+				fail(e);
+			}
+		}
+	}
+
+	/**
+	 * Records the first error, and opens the window of the discovery, which may
+	 * wait for pages that will never be merged
+	 */
+	private void fail(Exception e) {
+		if (error.compareAndSet(null, e)) {
+			window.release(PIPELINE_QUEUE_CAPACITY);
+		}
+	}
+
+	/**
+	 * Prints the throughput of the stages and the depth of the queues
+	 */
+	private void printStatistics(long elapsed) {
+
+		System.out.format(PIPELINE_STATISTICS, elapsed / 1000000);
+
+		for (Stage stage : stages) {
+
+			long items = stage.items.get();
+			long busyMillis = stage.busy.get() / 1000000;
+			// pages per second of the stage, with all of its threads busy
+			double throughput = stage.busy.get() > 0 ? items * 1e9 * stage.threadCount / stage.busy.get() : 0;
+
+			System.out.format(PIPELINE_STAGE_STATISTICS, stage.name, stage.threadCount, items, busyMillis,
+					throughput, stage.output.maxDepth, stage.output.getAverageDepth());
+		}
+	}
+
+	/**
+	 * A page travelling through the stages
+	 */
+	private static class Item {
+
+		/**
+		 * The order of the file in the discovery
+		 */
+		private final int sequence;
+
+		/**
+		 * The xhtml file
+		 */
+		private final File file;
+
+		/**
+		 * The content of the file, set by the reader
+		 */
+		private byte[] original;
+
+		/**
+		 * The parsed document, set by the parser
+		 */
+		private Document document;
+
+		/**
+		 * The processed page, set by the reader (unchanged pages) or by the parser
+		 */
+		private ProcessedPage page;
+
+		/**
+		 * The rewritten content, set by the serializer if the page was modified
+		 */
+		private byte[] content;
+
+		/**
+		 * The time spent processing the page, summed over the stages
+		 */
+		private long nanos;
+
+		/**
+		 * Constructor
+		 *
+		 * @param sequence the order of the file in the discovery
+		 * @param file     the xhtml file
+		 */
+		Item(int sequence, File file) {
+			this.sequence = sequence;
+			this.file = file;
+		}
+	}
+
+	/**
+	 * A bounded queue between two stages, sampling its depth on every put
+	 */
+	private static class Queue {
+
+		/**
+		 * The queue
+		 */
+		private final BlockingQueue<Item> queue;
+
+		/**
+		 * The largest depth seen
+		 */
+		private volatile int maxDepth;
+
+		/**
+		 * The sum of the sampled depths
+		 */
+		private final AtomicLong depthSum = new AtomicLong();
+
+		/**
+		 * The number of the samples
+		 */
+		private final AtomicLong samples = new AtomicLong();
+
+		/**
+		 * Constructor
+		 *
+		 * @param queue the queue
+		 */
+		Queue(BlockingQueue<Item> queue) {
+			this.queue = queue;
+		}
+
+		/**
+		 * Puts an item, blocks while the queue is full
+		 */
+		void put(Item item) throws InterruptedException {
+			queue.put(item);
+
+			if (item != END) {
+				int depth = queue.size();
+				depthSum.addAndGet(depth);
+				samples.incrementAndGet();
+				if (depth > maxDepth) {
+					maxDepth = depth;
+				}
+			}
+		}
+
+		/**
+		 * Takes an item, blocks while the queue is empty
+		 */
+		Item take() throws InterruptedException {
+			return queue.take();
+		}
+
+		/**
+		 * Returns the average of the sampled depths
+		 */
+		double getAverageDepth() {
+			long count = samples.get();
+			return count > 0 ? (double) depthSum.get() / count : 0;
+		}
+	}
+
+	/**
+	 * A stage running on one or more threads. Every thread of a stage stops at
+	 * its own END marker; the last one to stop sends an END marker to every
+	 * thread of the next stage.
+	 */
+	private abstract class Stage {
+
+		/**
+		 * The name of the stage in the statistics
+		 */
+		final String name;
+
+		/**
+		 * The number of the threads of the stage
+		 */
+		final int threadCount;
+
+		/**
+		 * True if the threads of the stage are virtual threads
+		 */
+		final boolean virtual;
+
+		/**
+		 * The threads of the stage still running
+		 */
+		private final AtomicInteger running;
+
+		/**
+		 * The number of the items processed
+		 */
+		final AtomicLong items = new AtomicLong();
+
+		/**
+		 * The time spent processing the items, summed over the threads
+		 */
+		final AtomicLong busy = new AtomicLong();
+
+		/**
+		 * The threads
+		 */
+		private final List<Thread> workers = new ArrayList<Thread>();
+
+		/**
+		 * The queue of the stage, null for the first stage
+		 */
+		Queue input;
+
+		/**
+		 * The queue of the next stage
+		 */
+		Queue output;
+
+		/**
+		 * The number of the threads of the next stage
+		 */
+		int next;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name        the name of the stage
+		 * @param threadCount the number of the threads
+		 * @param virtual     true if the threads are virtual threads
+		 */
+		Stage(String name, int threadCount, boolean virtual) {
+			this.name = name;
+			this.threadCount = threadCount;
+			this.virtual = virtual;
+			this.running = new AtomicInteger(threadCount);
+		}
+
+		/**
+		 * Starts the threads of the stage
+		 */
+		void start() {
+			for (int i = 0; i < threadCount; i++) {
+				Runnable task = new Runnable() {
+
+					public void run() {
+						try {
+							Stage.this.run();
+						} catch (Exception e) {
+							fail(e);
+						}
+					}
+				};
+				String threadName = "i18ngen-" + name + "-" + i;
+
+				Thread worker = virtual ? VirtualThreads.newThread(task, threadName) : new Thread(task, threadName);
+				// virtual threads are always daemon threads
+				if (!worker.isDaemon()) {
+					worker.setDaemon(true);
+				}
+				workers.add(worker);
+				worker.start();
+			}
+		}
+
+		/**
+		 * Waits for the threads of the stage
+		 */
+		void join() throws InterruptedException {
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		}
+
+		/**
+		 * The loop of a thread: takes the items until the END marker. After an
+		 * error the items are dropped, but the queue is still drained.
+		 */
+		void run() throws Exception {
+			try {
+				for (Item item = input.take(); item != END; item = input.take()) {
+
+					if (error.get() != null) {
+						continue;
+					}
+
+					long start = System.nanoTime();
+					try {
+						process(item);
+					} catch (Exception e) {
+						fail(e);
+						continue;
+					}
+					long elapsed = System.nanoTime() - start;
+					busy.addAndGet(elapsed);
+					items.incrementAndGet();
+					item.nanos += elapsed;
+
+					output.put(item);
+				}
+			} finally {
+				finish();
+			}
+		}
+
+		/**
+		 * Sends the END markers to the next stage when the last thread stops
+		 */
+		void finish() throws InterruptedException {
+			if (running.decrementAndGet() == 0) {
+				for (int i = 0; i < next; i++) {
+					output.put(END);
+				}
+			}
+		}
+
+		/**
+		 * Processes an item
+		 *
+		 * @param item the page
+		 * @throws Exception on any problem
+		 */
+		void process(Item item) throws Exception {
+		}
+	}
+
+}
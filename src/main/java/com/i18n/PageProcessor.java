@@ -0,0 +1,49 @@
+package com.i18n;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Interface for the processing of a single xhtml file: collecting the texts
+ * and rewriting the file. Implementations must be callable from multiple
+ * threads at the same time, the labels are put into the ResourceBundles by the
+ * caller.
+ */
+public interface PageProcessor {
+
+	/**
+	 * Process the file as the xhtml source
+	 *
+	 * @param file the file to be processed
+	 * @return the labels found in the file
+	 * @throws Exception on any problem
+	 */
+	public ProcessedPage process(File file) throws Exception;
+
+	/**
+	 * Sets the listener called before a page is rewritten
+	 *
+	 * @param writeAhead the listener or null
+	 */
+	public void setWriteAhead(WriteAhead writeAhead);
+
+	/**
+	 * Called before the new content of a page replaces the file, on the thread
+	 * processing the page. When it returns, the labels of the page must not be
+	 * lost even if the process is killed, as their texts are replaced in the
+	 * file.
+	 */
+	public interface WriteAhead {
+
+		/**
+		 * Called before the file of the page is replaced
+		 *
+		 * @param page     the processed page
+		 * @param original the content of the file
+		 * @param content  the new content of the file, different from the original
+		 * @throws IOException on I/O errors, the file is not replaced then
+		 */
+		public void beforeWrite(ProcessedPage page, byte[] original, byte[] content) throws IOException;
+	}
+
+}
@@ -0,0 +1,226 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Walks a directory tree with {@link Files#walkFileTree} and hands the files to
+ * a {@link Visitor} as soon as they are found. The attributes of the entries
+ * are read together with the directory listing, there is no separate stat call
+ * per entry, and the walk does not recurse on the Java stack. Like the
+ * recursive listing it replaced, the symbolic links to directories are
+ * followed and the entries which cannot be read (an unreadable directory, a
+ * file deleted during the walk, a link back to an enclosing directory) are
+ * skipped.<br>
+ * Glob patterns containing a '/' are matched against the path relative to the
+ * root, other patterns against the file name only (e.g.: "target" excludes
+ * every directory named target, "pages/admin/**" excludes a subtree).
+ */
+public class PathWalker {
+
+	/**
+	 * Patterns of the files to process, every file is processed if empty
+	 */
+	private final List<Pattern> includes = new ArrayList<Pattern>();
+
+	/**
+	 * Patterns of the files and directories to skip
+	 */
+	private final List<Pattern> excludes = new ArrayList<Pattern>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param includes glob patterns of the files to process (null or empty: every
+	 *                 file)
+	 * @param excludes glob patterns of the files and directories to skip (null or
+	 *                 empty: none)
+	 */
+	public PathWalker(List<String> includes, List<String> excludes) {
+		compile(includes, this.includes);
+		compile(excludes, this.excludes);
+	}
+
+	/**
+	 * Compiles the glob patterns
+	 */
+	private static void compile(List<String> globs, List<Pattern> patterns) {
+		if (globs != null) {
+			for (String glob : globs) {
+				patterns.add(new Pattern(glob));
+			}
+		}
+	}
+
+	/**
+	 * Walks the directory tree. Directories are entered if they are not excluded
+	 * and the visitor accepts them, files are processed if they are included, not
+	 * excluded, and the visitor accepts them.
+	 *
+	 * @param root    the root directory (or a single file)
+	 * @param visitor the visitor
+	 * @throws Exception the exception thrown by the visitor, or an I/O error
+	 */
+	public void walk(final Path root, final Visitor visitor) throws Exception {
+
+		try {
+			Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+					new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+
+					if (dir.equals(root)) {
+						return FileVisitResult.CONTINUE;
+					}
+
+					if (matches(excludes, root, dir) || !visitor.visit(dir, attrs)) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+
+					if (!includes.isEmpty() && !matches(includes, root, file)) {
+						return FileVisitResult.CONTINUE;
+					}
+
+					if (matches(excludes, root, file) || !visitor.visit(file, attrs)) {
+						return FileVisitResult.CONTINUE;
+					}
+
+					try {
+						visitor.process(file);
+					} catch (IOException | RuntimeException e) {
+						throw e;
+					} catch (Exception e) {
+						throw new VisitorException(e);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+					// skipped, like the directories File.list() returned null for
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (VisitorException e) {
+			throw (Exception) e.getCause();
+		}
+	}
+
+	/**
+	 * Returns true if any of the patterns matches the path
+	 */
+	private static boolean matches(List<Pattern> patterns, Path root, Path path) {
+
+		for (Pattern pattern : patterns) {
+			if (pattern.matches(root, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Splits a comma separated list of glob patterns
+	 *
+	 * @param globs the comma separated list
+	 * @return the glob patterns
+	 */
+	public static List<String> splitGlobs(String globs) {
+
+		List<String> result = new ArrayList<String>();
+
+		for (String glob : globs.split(COMMA)) {
+			if (glob.trim().length() > 0) {
+				result.add(glob.trim());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A glob pattern
+	 */
+	private static class Pattern {
+
+		/**
+		 * True if the pattern is matched against the relative path (it contains a
+		 * '/'), false if against the file name
+		 */
+		private final boolean relative;
+
+		/**
+		 * The glob pattern
+		 */
+		private final String glob;
+
+		/**
+		 * The compiled pattern, created for the file system of the walked tree
+		 */
+		private PathMatcher matcher;
+
+		/**
+		 * Constructor
+		 *
+		 * @param glob the glob pattern
+		 */
+		Pattern(String glob) {
+			this.relative = glob.indexOf('/') != -1;
+			this.glob = glob;
+		}
+
+		/**
+		 * Returns true if the pattern matches the path
+		 */
+		boolean matches(Path root, Path path) {
+
+			if (matcher == null) {
+				FileSystem fileSystem = path.getFileSystem();
+				matcher = fileSystem.getPathMatcher(GLOB + glob);
+			}
+
+			if (relative) {
+				return matcher.matches(root.relativize(path));
+			}
+
+			Path fileName = path.getFileName();
+			return fileName != null && matcher.matches(fileName);
+		}
+	}
+
+	/**
+	 * Carries the exception of the visitor through {@link Files#walkFileTree}
+	 */
+	private static class VisitorException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructor
+		 *
+		 * @param cause the exception of the visitor
+		 */
+		VisitorException(Exception cause) {
+			super(cause);
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+package com.i18n;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class for holding the result of processing a single xhtml file. The labels
+ * are collected here first, and put into the {@link ResourceBundle}s later, in
+ * the order the files were found.
+ */
+public class ProcessedPage {
+
+	/**
+	 * The processed xhtml file
+	 */
+	private final File file;
+
+	/**
+	 * Labels extracted from the file, in document order
+	 */
+	private final List<Label> labels = new ArrayList<Label>();
+
+	/**
+	 * True if the file was not processed, the labels are from the last run
+	 */
+	private boolean unchanged;
+
+	/**
+	 * True if a text or an attribute of the document was replaced
+	 */
+	private boolean modified;
+
+	/**
+	 * True if the file was written (its new content differs from the original)
+	 */
+	private boolean rewritten;
+
+	/**
+	 * Number of labels taken from the last run
+	 */
+	private int replayed;
+
+	/**
+	 * The hash of the content of the file after processing (incremental mode
+	 * only)
+	 */
+	private String hash;
+
+	/**
+	 * The processing time of the file in nanoseconds
+	 */
+	private long nanos;
+
+	/**
+	 * Constructor
+	 *
+	 * @param file the processed xhtml file
+	 */
+	public ProcessedPage(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Adds a label found in the file
+	 *
+	 * @param labelValue the value of the property
+	 * @param labelName  the name of the property
+	 */
+	public void addLabel(String labelValue, String labelName) {
+		this.labels.add(new Label(labelName, labelValue));
+		this.modified = true;
+	}
+
+	/**
+	 * Adds labels of the file from the last run
+	 *
+	 * @param labels the labels
+	 */
+	public void addReplayedLabels(List<Label> labels) {
+		this.labels.addAll(labels);
+		this.replayed += labels.size();
+	}
+
+	/**
+	 * @return the file
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return the labels
+	 */
+	public List<Label> getLabels() {
+		return this.labels;
+	}
+
+	/**
+	 * @return true if the file was not processed, the labels are from the last
+	 *         run
+	 */
+	public boolean isUnchanged() {
+		return this.unchanged;
+	}
+
+	/**
+	 * @param unchanged true if the file was not processed
+	 */
+	public void setUnchanged(boolean unchanged) {
+		this.unchanged = unchanged;
+	}
+
+	/**
+	 * @return true if a text or an attribute of the document was replaced
+	 */
+	public boolean isModified() {
+		return this.modified;
+	}
+
+	/**
+	 * @param modified true if a text or an attribute of the document was replaced
+	 */
+	public void setModified(boolean modified) {
+		this.modified = modified;
+	}
+
+	/**
+	 * @return true if the file was written
+	 */
+	public boolean isRewritten() {
+		return this.rewritten;
+	}
+
+	/**
+	 * @param rewritten true if the file was written
+	 */
+	public void setRewritten(boolean rewritten) {
+		this.rewritten = rewritten;
+	}
+
+	/**
+	 * @return the number of labels taken from the last run
+	 */
+	public int getReplayed() {
+		return this.replayed;
+	}
+
+	/**
+	 * @return the number of labels found in the file in this run
+	 */
+	public int getFound() {
+		return this.labels.size() - this.replayed;
+	}
+
+	/**
+	 * @return the hash of the content of the file after processing
+	 */
+	public String getHash() {
+		return this.hash;
+	}
+
+	/**
+	 * @param hash the hash of the content of the file to set
+	 */
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	/**
+	 * @return the processing time of the file in nanoseconds
+	 */
+	public long getNanos() {
+		return this.nanos;
+	}
+
+	/**
+	 * @param nanos the processing time of the file in nanoseconds
+	 */
+	public void setNanos(long nanos) {
+		this.nanos = nanos;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("ProcessedPage [file=");
+		builder.append(this.file);
+		builder.append(", labels=");
+		builder.append(this.labels);
+		builder.append(", unchanged=");
+		builder.append(this.unchanged);
+		builder.append(", modified=");
+		builder.append(this.modified);
+		builder.append(", rewritten=");
+		builder.append(this.rewritten);
+		builder.append(", replayed=");
+		builder.append(this.replayed);
+		builder.append(", hash=");
+		builder.append(this.hash);
+		builder.append(", nanos=");
+		builder.append(this.nanos);
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,458 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Writes the resource bundle files. The output is the same, byte by byte, as
+ * the one of the earlier {@link java.io.BufferedWriter} based writer
+ * (ISO-8859-1, escaping of {@link Util#saveConvert(String, boolean, boolean)},
+ * lines sorted as Strings, a group header before every new lead), but the
+ * texts are escaped straight into a byte buffer, which is written to the
+ * channel in large chunks.<br>
+ * The keys are escaped once, into a shared byte array, and the lines are
+ * sorted by them (a key is followed by '=' in its line, so unless a key
+ * contains a '=' the escaped keys decide the order of the lines). The group
+ * headers work on byte ranges too.
+ */
+public class PropertiesWriter implements Closeable {
+
+	/**
+	 * The channel of the file
+	 */
+	private final WritableByteChannel channel;
+
+	/**
+	 * The output buffer
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The escaped keys of the current section, one after the other
+	 */
+	private byte[] keys = new byte[1024];
+
+	/**
+	 * The line being written
+	 */
+	private byte[] line = new byte[256];
+
+	/**
+	 * The lead of the previous line
+	 */
+	private byte[] lead = new byte[64];
+
+	/**
+	 * The line compared to {@link #line} while sorting
+	 */
+	private byte[] other = new byte[256];
+
+	/**
+	 * The start of the keys of the current section in {@link #keys}, and the end
+	 * of the last one
+	 */
+	private int[] offsets;
+
+	/**
+	 * The values of the current section
+	 */
+	private String[] values;
+
+	/**
+	 * Constructor
+	 *
+	 * @param channel the channel to write to
+	 */
+	public PropertiesWriter(WritableByteChannel channel) {
+		this(channel, PROPERTIES_WRITER_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param channel    the channel to write to
+	 * @param bufferSize the size of the output buffer
+	 */
+	public PropertiesWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Opens the file for writing, the content of an existing file is replaced
+	 *
+	 * @param file the file
+	 * @return the writer
+	 * @throws IOException on I/O errors
+	 */
+	public static PropertiesWriter open(File file) throws IOException {
+		return new PropertiesWriter(FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	/**
+	 * Writes the comment block
+	 *
+	 * @param generatedOn the date of the generation
+	 * @param messages    the messages about the conflicting properties
+	 * @throws IOException on I/O errors
+	 */
+	public void writeComments(Date generatedOn, List<String> messages) throws IOException {
+
+		writeLine();
+		write(GENERATED_ON);
+		write(String.valueOf(generatedOn));
+		write(CRLF);
+		writeLine();
+
+		boolean first = true;
+
+		for (String message : messages) {
+			if (first) {
+				write(COMMENTS);
+				first = false;
+			}
+			write(HASHMARK);
+			writeEscaped(message, false);
+			write(CRLF);
+		}
+
+		if (!first) {
+			write(CRLF);
+		}
+	}
+
+	/**
+	 * Writes a header of an empty section
+	 *
+	 * @param header the header
+	 * @throws IOException on I/O errors
+	 */
+	public void writeHeader(String header) throws IOException {
+		writeLine();
+		write(HASHMARK);
+		writeEscaped(header, true);
+		write(CRLF);
+		writeLine();
+	}
+
+	/**
+	 * Writes a section: the header, then the sorted properties, with a comment
+	 * before every group of lines starting with the same lead (the part of the
+	 * line before the first '_', or if there is none, before the first '.' or
+	 * the first '=').
+	 *
+	 * @param header     the header of the section
+	 * @param properties the properties
+	 * @throws IOException on I/O errors
+	 */
+	public void writeProperties(String header, Map<?, ?> properties) throws IOException {
+
+		int size = properties.size();
+		values = new String[size];
+		offsets = new int[size + 1];
+		int keysLength = 0;
+		int n = 0;
+
+		for (Map.Entry<?, ?> e : properties.entrySet()) {
+			String key = (String) e.getKey();
+			keys = ensureCapacity(keys, keysLength + key.length() * 6);
+			keysLength = escape(key, true, keys, keysLength);
+			values[n] = (String) e.getValue();
+			offsets[++n] = keysLength;
+		}
+
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		sort(order, new int[size], 0, size);
+
+		writeSectionHeader(header);
+
+		int leadLength = 0;
+
+		for (int i : order) {
+
+			int keyStart = offsets[i];
+			int keyLength = offsets[i + 1] - keyStart;
+			String value = values[i];
+
+			line = ensureCapacity(line, keyLength + 1 + value.length() * 6);
+			System.arraycopy(keys, keyStart, line, 0, keyLength);
+			line[keyLength] = '=';
+			int lineLength = escape(value, true, line, keyLength + 1);
+
+			int index = getLeadLength(line, lineLength);
+
+			if (index != leadLength || !Arrays.equals(line, 0, index, lead, 0, leadLength)) {
+				write(NEWLINE);
+				write(PROPERTY_FILE_COMMENT_START);
+				put(line, 0, index);
+				write(NEWLINE);
+
+				lead = ensureCapacity(lead, index);
+				System.arraycopy(line, 0, lead, 0, index);
+				leadLength = index;
+			}
+
+			put(line, 0, lineLength);
+			write(NEWLINE);
+		}
+	}
+
+	/**
+	 * Writes a section: the header, then the properties in the order of the map,
+	 * without the comments of the leads
+	 *
+	 * @param header     the header of the section
+	 * @param properties the properties
+	 * @throws IOException on I/O errors
+	 */
+	public void writePlainProperties(String header, SortedMap<String, String> properties) throws IOException {
+
+		writeSectionHeader(header);
+
+		for (Map.Entry<String, String> e : properties.entrySet()) {
+			writeEscaped(e.getKey(), true);
+			write(EQUALS);
+			writeEscaped(e.getValue(), true);
+			write(NEWLINE);
+		}
+	}
+
+	/**
+	 * Writes the header of a section
+	 */
+	private void writeSectionHeader(String header) throws IOException {
+		writeLine();
+		write(HASHMARK);
+		writeEscaped(header, false);
+		write(CRLF);
+		writeLine();
+	}
+
+	/**
+	 * Returns the length of the lead of the line (see {@link Util#getLead})
+	 */
+	private static int getLeadLength(byte[] line, int length) {
+
+		int index = indexOf(line, length, CHAR_UNDERSCORE);
+		if (index == -1) {
+			index = indexOf(line, length, CHAR_DOT);
+		}
+		if (index == -1) {
+			index = indexOf(line, length, '=');
+		}
+		return index == -1 ? length : index;
+	}
+
+	private static int indexOf(byte[] bytes, int length, char c) {
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Merge sort of the key indexes by the escaped keys
+	 */
+	private void sort(int[] order, int[] work, int from, int to) {
+
+		if (to - from < 2) {
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		sort(order, work, from, middle);
+		sort(order, work, middle, to);
+
+		if (compareLines(order[middle - 1], order[middle]) <= 0) {
+			return;
+		}
+
+		System.arraycopy(order, from, work, from, to - from);
+
+		int i = from;
+		int j = middle;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < middle && compareLines(work[i], work[j]) <= 0)) {
+				order[k] = work[i++];
+			} else {
+				order[k] = work[j++];
+			}
+		}
+	}
+
+	/**
+	 * Compares two lines. The escaped keys are compared as the beginnings of
+	 * their lines, i.e. as if they were followed by a '='. Only if a key contains
+	 * a '=' may this be undecided, then the whole lines are compared.
+	 */
+	private int compareLines(int a, int b) {
+
+		int aStart = offsets[a];
+		int aLength = offsets[a + 1] - aStart;
+		int bStart = offsets[b];
+		int bLength = offsets[b + 1] - bStart;
+
+		int length = Math.min(aLength, bLength);
+
+		for (int i = 0; i < length; i++) {
+			int diff = (keys[aStart + i] & 0xFF) - (keys[bStart + i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		int aNext = aLength > length ? keys[aStart + length] & 0xFF : '=';
+		int bNext = bLength > length ? keys[bStart + length] & 0xFF : '=';
+
+		if (aNext != bNext) {
+			return aNext - bNext;
+		}
+
+		line = ensureCapacity(line, aLength + 1 + values[a].length() * 6);
+		System.arraycopy(keys, aStart, line, 0, aLength);
+		line[aLength] = '=';
+		int aEnd = escape(values[a], true, line, aLength + 1);
+
+		other = ensureCapacity(other, bLength + 1 + values[b].length() * 6);
+		System.arraycopy(keys, bStart, other, 0, bLength);
+		other[bLength] = '=';
+		int bEnd = escape(values[b], true, other, bLength + 1);
+
+		return Arrays.compareUnsigned(line, 0, aEnd, other, 0, bEnd);
+	}
+
+	/**
+	 * Escapes the text into the byte array like
+	 * {@link Util#saveConvert(String, boolean, boolean)} and encodes it in
+	 * ISO-8859-1. The array must have room for 6 bytes per character.
+	 *
+	 * @return the end of the escaped text in the array
+	 */
+	private static int escape(String text, boolean escapeUnicode, byte[] bytes, int position) {
+
+		int length = text.length();
+
+		for (int x = 0; x < length; x++) {
+			char aChar = text.charAt(x);
+
+			if ((aChar > 61) && (aChar < 127)) {
+				if (aChar == CHAR_BACKSLASH) {
+					bytes[position++] = CHAR_BACKSLASH;
+				}
+				bytes[position++] = (byte) aChar;
+			} else if (((aChar < 0x0020) || (aChar > 0x007e)) & escapeUnicode) {
+				bytes[position++] = CHAR_BACKSLASH;
+				bytes[position++] = U;
+				bytes[position++] = (byte) Util.toHex((aChar >> 12) & 0xF);
+				bytes[position++] = (byte) Util.toHex((aChar >> 8) & 0xF);
+				bytes[position++] = (byte) Util.toHex((aChar >> 4) & 0xF);
+				bytes[position++] = (byte) Util.toHex(aChar & 0xF);
+			} else if (Character.isHighSurrogate(aChar) && x + 1 < length
+					&& Character.isLowSurrogate(text.charAt(x + 1))) {
+				// not mappable to ISO-8859-1, replaced like the OutputStreamWriter does
+				bytes[position++] = '?';
+				x++;
+			} else {
+				bytes[position++] = aChar > 0xFF || Character.isSurrogate(aChar) ? (byte) '?' : (byte) aChar;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Writes the text escaped
+	 */
+	private void writeEscaped(String text, boolean escapeUnicode) throws IOException {
+		line = ensureCapacity(line, text.length() * 6);
+		put(line, 0, escape(text, escapeUnicode, line, 0));
+	}
+
+	/**
+	 * Writes a line ({@link Constants#COMMENT_LINE})
+	 */
+	private void writeLine() throws IOException {
+		write(COMMENT_LINE);
+	}
+
+	/**
+	 * Writes an ASCII text
+	 */
+	private void write(String text) throws IOException {
+
+		int length = text.length();
+
+		for (int i = 0; i < length; i++) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			buffer.put((byte) text.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes a range of a byte array
+	 */
+	private void put(byte[] bytes, int offset, int length) throws IOException {
+
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int chunk = Math.min(length, buffer.remaining());
+			buffer.put(bytes, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Writes the content of the buffer to the channel
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Returns the array or a larger copy of it
+	 */
+	private static byte[] ensureCapacity(byte[] bytes, int capacity) {
+		if (capacity <= bytes.length) {
+			return bytes;
+		}
+		return Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+	}
+
+	/**
+	 * Writes the buffered content and closes the channel
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.i18n;
+
+/**
+ * The loaded properties of a resource bundle, as read by the
+ * {@link LabelIndex}: the keys are numbered in the order of the files, if a
+ * key occurs more than once, the last value is the one used.
+ */
+public interface PropertySource {
+
+	/**
+	 * @return the number of the keys (a repeated key is counted each time)
+	 */
+	public int size();
+
+	/**
+	 * Decodes the key
+	 *
+	 * @param index the index of the key
+	 * @return the decoded key
+	 */
+	public String getKey(int index);
+
+	/**
+	 * Decodes the value of the key
+	 *
+	 * @param index the index of the key
+	 * @return the decoded value
+	 */
+	public String getValue(int index);
+
+	/**
+	 * Returns true if the value of the key is the text
+	 *
+	 * @param index the index of the key
+	 * @param text  the text
+	 * @return true if the decoded value equals the text
+	 */
+	public boolean valueEquals(int index, String text);
+
+}
@@ -0,0 +1,131 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The statistics of the report mode: the labels found in the xhtml files are
+ * compared with the resource bundles, but no file is written. Reports the
+ * labels of every file, what the saving would do with every resource bundle,
+ * and the keys which would be added.
+ */
+public class Report {
+
+	/**
+	 * The statistics of the pages in the order they were merged
+	 */
+	private final List<PageStatistics> pages = new ArrayList<PageStatistics>();
+
+	/**
+	 * Adds the statistics of a page
+	 *
+	 * @param path      the path of the page relative to the xhtml dir
+	 * @param labels    the number of the labels found in the page
+	 * @param newLabels the number of the labels not found in any resource bundle
+	 */
+	public void addPage(String path, int labels, int newLabels) {
+		pages.add(new PageStatistics(path, labels, newLabels));
+	}
+
+	/**
+	 * Prints the report
+	 *
+	 * @param out             the stream to print to
+	 * @param resourceBundles the resource bundles with the labels of the pages
+	 */
+	public void print(PrintStream out, List<ResourceBundle> resourceBundles) {
+
+		int labels = 0;
+		int newLabels = 0;
+
+		for (PageStatistics page : pages) {
+			labels += page.labels;
+			newLabels += page.newLabels;
+		}
+
+		out.format(REPORT_HEADER);
+		out.format(REPORT_PAGES, pages.size(), labels, newLabels);
+
+		for (PageStatistics page : pages) {
+			out.format(REPORT_PAGE, page.path, page.labels, page.newLabels);
+		}
+
+		// the keys to add, with the locales they are missing from
+		Map<String, String> proposedValues = new TreeMap<String, String>();
+		Map<String, List<String>> proposedLocales = new TreeMap<String, List<String>>();
+
+		out.format(REPORT_LOCALES);
+
+		for (ResourceBundle rb : resourceBundles) {
+
+			Properties oldButUsed = rb.getOldButUsed();
+			Properties newProperties = rb.getNewProperties();
+			Properties oldNotUsed = rb.getOldNotUsed();
+
+			addDateTimeFormatIfNotFound(oldButUsed, oldNotUsed, newProperties);
+
+			out.format(REPORT_LOCALE, rb.getLocale(), oldButUsed.size(), newProperties.size(),
+					rb.getMessages().size(), oldNotUsed.size());
+
+			for (String key : newProperties.stringPropertyNames()) {
+				proposedValues.put(key, newProperties.getProperty(key));
+				List<String> locales = proposedLocales.get(key);
+				if (locales == null) {
+					locales = new ArrayList<String>();
+					proposedLocales.put(key, locales);
+				}
+				locales.add(rb.getLocale());
+			}
+		}
+
+		out.format(REPORT_PROPOSED_KEYS, proposedValues.size());
+
+		for (Map.Entry<String, String> e : proposedValues.entrySet()) {
+
+			List<String> locales = proposedLocales.get(e.getKey());
+
+			out.print(REPORT_INDENT + saveConvert(e.getKey(), true, false) + EQUALS
+					+ saveConvert(e.getValue(), false, false));
+
+			if (locales.size() < resourceBundles.size()) {
+				out.print(OPEN_PARENTHESIS + String.join(REPORT_LOCALE_SEPARATOR, locales) + CLOSE_PARENTHESIS);
+			}
+			out.println();
+		}
+	}
+
+	/**
+	 * The statistics of a page
+	 */
+	private static class PageStatistics {
+
+		/**
+		 * The path of the page relative to the xhtml dir
+		 */
+		private final String path;
+
+		/**
+		 * The number of the labels found in the page
+		 */
+		private final int labels;
+
+		/**
+		 * The number of the labels not found in any resource bundle
+		 */
+		private final int newLabels;
+
+		PageStatistics(String path, int labels, int newLabels) {
+			this.path = path;
+			this.labels = labels;
+			this.newLabels = newLabels;
+		}
+	}
+
+}
@@ -6,7 +6,9 @@ import java.util.List;
 import java.util.Properties;
 
 /**
- * Class for holding information about a resource bundle
+ * Class for holding information about a resource bundle. The properties are
+ * stored in the {@link LabelIndex}, this class is the view of one locale of it:
+ * the property getters return a new {@link Properties} built from the index.
  */
 public class ResourceBundle {
 
@@ -18,27 +20,17 @@ public class ResourceBundle {
 	 * Conflicting properties messages
 	 */
 	private List<String> messages = new ArrayList<String>();
-	
-	/**
-	 * Properties newly added
-	 */
-	private Properties newProperties = new Properties();
-	
-	/**
-	 * Old properties which are referenced in the xhtml files
-	 */
-	private Properties oldButUsed = new Properties();
-	
+
 	/**
-	 * Old property which is not used (not found)
+	 * The index holding the properties
 	 */
-	private Properties oldNotUsed = new Properties();
-	
+	private final LabelIndex index;
+
 	/**
-	 * The properties from the file
+	 * The slot of the locale in the index
 	 */
-	private Properties properties;
-	
+	private final int slot;
+
 	/**
 	 * Reference to the file
 	 */
@@ -47,13 +39,15 @@ public class ResourceBundle {
 	 * Constructor
 	 * @param locale name of the locale for the resource bundle (e.g.: "en")
 	 * @param propertiesFile the reference to the file
-	 * @param properties the loaded properties
+	 * @param index the index holding the properties
+	 * @param slot the slot of the locale in the index
 	 */
-	protected ResourceBundle(String locale, File propertiesFile, Properties properties) {
+	protected ResourceBundle(String locale, File propertiesFile, LabelIndex index, int slot) {
 		super();
 		this.locale = locale;
 		this.propertiesFile = propertiesFile;
-		this.properties = properties;
+		this.index = index;
+		this.slot = slot;
 	}
 	/**
 	 * @return the locale
@@ -69,29 +63,29 @@ public class ResourceBundle {
 		return this.messages;
 	}
 	/**
-	 * @return the newProperties
+	 * @return the properties found in the xhtml files, but not in the file
 	 */
 	public Properties getNewProperties() {
-		return this.newProperties;
+		return this.index.getNewProperties(this.slot);
 	}
 	/**
-	 * @return the oldButUsed
+	 * @return the properties of the file which are referenced in the xhtml files
 	 */
 	public Properties getOldButUsed() {
-		return this.oldButUsed;
+		return this.index.getOldButUsed(this.slot);
 	}
 	/**
-	 * @return the oldNotUsed
+	 * @return the properties of the file which are not used (not found)
 	 */
 	public Properties getOldNotUsed() {
-		return this.oldNotUsed;
+		return this.index.getOldNotUsed(this.slot);
 	}
 	
 	/**
-	 * @return the properties
+	 * @return the properties from the file
 	 */
 	public Properties getProperties() {
-		return this.properties;
+		return this.index.getProperties(this.slot);
 	}
 	
 	/**
@@ -112,30 +106,6 @@ public class ResourceBundle {
 	public void setMessages(List<String> messages) {
 		this.messages = messages;
 	}
-	/**
-	 * @param newProperties the newProperties to set
-	 */
-	public void setNewProperties(Properties newProperties) {
-		this.newProperties = newProperties;
-	}
-	/**
-	 * @param oldButUsed the oldButUsed to set
-	 */
-	public void setOldButUsed(Properties oldButUsed) {
-		this.oldButUsed = oldButUsed;
-	}
-	/**
-	 * @param oldNotUsed the oldNotUsed to set
-	 */
-	public void setOldNotUsed(Properties oldNotUsed) {
-		this.oldNotUsed = oldNotUsed;
-	}
-	/**
-	 * @param properties the properties to set
-	 */
-	public void setProperties(Properties properties) {
-		this.properties = properties;
-	}
 	/**
 	 * @param propertiesFile the propertiesFile to set
 	 */
@@ -152,14 +122,8 @@ public class ResourceBundle {
 		builder.append(this.locale);
 		builder.append(", messages=");
 		builder.append(this.messages);
-		builder.append(", newProperties=");
-		builder.append(this.newProperties);
-		builder.append(", oldButUsed=");
-		builder.append(this.oldButUsed);
-		builder.append(", oldNotUsed=");
-		builder.append(this.oldNotUsed);
-		builder.append(", properties=");
-		builder.append(this.properties);
+		builder.append(", slot=");
+		builder.append(this.slot);
 		builder.append(", propertiesFile=");
 		builder.append(this.propertiesFile);
 		builder.append("]");
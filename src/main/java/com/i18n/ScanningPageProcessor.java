@@ -0,0 +1,183 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.i18n.Metrics.Counter;
+import com.i18n.Metrics.Phase;
+
+/**
+ * Collects the labels of an xhtml file without rewriting it (report mode). The
+ * file is read with the StAX cursor API: no DOM, no event objects, no
+ * transformer and no output. The labels are the same as the ones found by the
+ * {@link DomPageProcessor} and the {@link StreamingPageProcessor}.<br>
+ * The XHTML DTD is read with its entity declarations only: the element and
+ * attribute declarations (most of the parse time of a small page) do not
+ * change the labels, only the attribute defaults written by a rewrite.
+ */
+public class ScanningPageProcessor extends StreamingPageProcessor {
+
+	/**
+	 * Constructor
+	 *
+	 * @param grammarCache  the cache of the xhtml DTD and entities
+	 * @param xhtmlEncoding the character encoding of the xhtml files
+	 */
+	public ScanningPageProcessor(GrammarCache grammarCache, String xhtmlEncoding) {
+		super(grammarCache, xhtmlEncoding);
+	}
+
+	/**
+	 * Collects the labels of the file, the file is not written
+	 *
+	 * @param file the file to be processed
+	 * @return the labels found in the file
+	 * @throws IOException        on I/O errors
+	 * @throws XMLStreamException on parse errors
+	 */
+	@Override
+	public ProcessedPage process(File file) throws IOException, XMLStreamException {
+
+		ProcessedPage page = new ProcessedPage(file);
+
+		long start = Metrics.start();
+		Metrics.add(Counter.BYTES_READ, file.length());
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+
+			XMLStreamReader reader = getInputFactory().createXMLStreamReader(in, getXhtmlEncoding());
+			try {
+				scan(page, reader);
+			} finally {
+				reader.close();
+			}
+		}
+
+		Metrics.stop(Phase.PARSING, start);
+
+		if (getGrammarCache().isStatistics()) {
+			recordParse(file, System.nanoTime() - start);
+		}
+
+		return page;
+	}
+
+	/**
+	 * Returns the content of an entity of the xhtml files, the XHTML DTD with its
+	 * entity declarations only
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the content of the entity
+	 * @throws IOException if the entity is not known
+	 */
+	@Override
+	InputStream openEntity(String publicId) throws IOException {
+		return getGrammarCache().getEntitiesInputStream(publicId);
+	}
+
+	/**
+	 * Reads the events and collects the labels of the texts and of the
+	 * attributes, like {@link StreamingPageProcessor} does
+	 *
+	 * @param page   the processed page collecting the labels
+	 * @param reader the {@link XMLStreamReader} of the file
+	 * @throws XMLStreamException on parse errors
+	 */
+	void scan(ProcessedPage page, XMLStreamReader reader) throws XMLStreamException {
+
+		// a text node may be reported as more than one characters event
+		StringBuilder text = new StringBuilder();
+		long nodes = 0;
+
+		while (reader.hasNext()) {
+
+			int eventType = reader.next();
+
+			if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.SPACE) {
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				continue;
+			}
+
+			if (text.length() > 0) {
+				nodes++;
+				scanText(page, text);
+				text.setLength(0);
+			}
+
+			if (eventType == XMLStreamConstants.START_ELEMENT) {
+				nodes++;
+				scanStartElement(page, reader);
+			} else if (eventType != XMLStreamConstants.END_ELEMENT
+					&& eventType != XMLStreamConstants.END_DOCUMENT) {
+				nodes++;
+			}
+		}
+
+		Metrics.add(Counter.NODES_VISITED, nodes);
+	}
+
+	/**
+	 * Collects the label of a text node
+	 */
+	private static void scanText(ProcessedPage page, StringBuilder text) {
+
+		int start = TextScanner.trimStart(text, 0, text.length());
+		int end = TextScanner.trimEnd(text, start, text.length());
+
+		if (!TextScanner.containsNoLetters(text, start, end)) {
+			String label = text.substring(start, end);
+			page.addLabel(label, getLabelName(page.getFile(), TEXT_LABEL, label));
+		}
+	}
+
+	/**
+	 * Collects the label of the value attribute of an element which is not
+	 * &lt;s:graphicImage&gt;
+	 */
+	private static void scanStartElement(ProcessedPage page, XMLStreamReader reader) {
+
+		String nodeName = getNodeNameWithoutNameSpace(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+		if (nodeName.equals(GRAPHICIMAGE)) {
+			return;
+		}
+
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+
+			String attributeName = getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+
+			if (attributeName.equals(VALUE)) {
+				String value = reader.getAttributeValue(i);
+				int start = TextScanner.trimStart(value, 0, value.length());
+				int end = TextScanner.trimEnd(value, start, value.length());
+
+				if (!TextScanner.containsNoLetters(value, start, end)) {
+					String label = value.substring(start, end);
+					page.addLabel(label, getLabelName(page.getFile(), nodeName, label));
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the name with the prefix (e.g.: "h:outputText")
+	 */
+	private static String getQualifiedName(String prefix, String localName) {
+		if (prefix == null || prefix.length() == 0) {
+			return localName;
+		}
+		return prefix + DOUBLE_COLON + localName;
+	}
+
+}
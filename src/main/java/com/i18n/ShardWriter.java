@@ -0,0 +1,245 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Saves the resource bundles in shards next to the single
+ * messages_xx.properties file: the keys are grouped by their lead (the name of
+ * the xhtml file for the generated keys, see {@link ShardedBundle#getShardName})
+ * and every group is saved into messages_xx/&lt;lead&gt;.properties, with the
+ * same sections as the single file. The shards are written in parallel, and
+ * only the shards whose content changed are replaced, so a run which changed
+ * one page rewrites one shard.<br>
+ * The messages_xx.index file maps the leads to the shards, one sorted
+ * lead=path line per lead, so a loader can read only the shards of the keys it
+ * needs. It is written by every run, with the date of the generation and the
+ * conflicting properties, which are not written into the shards.<br>
+ * The messages_xx.properties file is still written, for the consumers loading
+ * the bundle with java.util.ResourceBundle.
+ */
+public class ShardWriter {
+
+	/**
+	 * Number of threads writing the shards
+	 */
+	private final int threads;
+
+	/**
+	 * Constructor
+	 *
+	 * @param threads number of threads writing the shards
+	 */
+	public ShardWriter(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Saves the resource bundles in shards
+	 *
+	 * @param resourceBundles the resource bundles
+	 * @throws Exception on I/O errors
+	 */
+	public void saveAll(List<ResourceBundle> resourceBundles) throws Exception {
+
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+
+		try {
+			for (ResourceBundle rb : resourceBundles) {
+				save(rb, executor);
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Saves a resource bundle in shards and into the messages_xx.properties file,
+	 * deletes the shards not needed any more
+	 *
+	 * @param rb       the resource bundle
+	 * @param executor the executor writing the shards, null to write them in the
+	 *                 calling thread
+	 * @throws Exception on I/O errors
+	 */
+	private void save(ResourceBundle rb, ExecutorService executor) throws Exception {
+
+		File propertiesFile = rb.getPropertiesFile();
+		File shardDir = ShardedBundle.getShardDir(propertiesFile);
+
+		Properties oldButUsed = rb.getOldButUsed();
+		Properties newProperties = rb.getNewProperties();
+		Properties oldNotUsed = rb.getOldNotUsed();
+
+		addDateTimeFormatIfNotFound(oldButUsed, oldNotUsed, newProperties);
+
+		// the sections of the shards by the name of the shard, and the shards of the leads
+		Map<String, Properties[]> shards = new TreeMap<String, Properties[]>();
+		SortedMap<String, String> index = new TreeMap<String, String>();
+
+		addToShards(shards, index, shardDir, oldButUsed, 0);
+		addToShards(shards, index, shardDir, newProperties, 1);
+		addToShards(shards, index, shardDir, oldNotUsed, 2);
+
+		Files.createDirectories(shardDir.toPath());
+
+		int rewritten = 0;
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+		for (Map.Entry<String, Properties[]> e : shards.entrySet()) {
+
+			File shard = new File(shardDir, e.getKey());
+			Properties[] sections = e.getValue();
+
+			if (executor != null) {
+				results.add(executor.submit(() -> saveShard(shard, sections)));
+			} else if (saveShard(shard, sections)) {
+				rewritten++;
+			}
+		}
+
+		for (Future<Boolean> result : results) {
+			try {
+				rewritten += result.get() ? 1 : 0;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		// the shards of the keys moved to other shards (the keys are never removed)
+		for (File shard : ShardedBundle.getShards(propertiesFile)) {
+			if (!shards.containsKey(shard.getName())) {
+				Files.delete(shard.toPath());
+			}
+		}
+
+		saveIndex(rb, index);
+
+		writePropertyFile(rb);
+
+		System.out.format(SAVING_SHARDS, shardDir.getName(), shards.size(), rewritten);
+	}
+
+	/**
+	 * Adds the properties of a section to their shards
+	 *
+	 * @param shards     the sections of the shards by the name of the shard
+	 * @param index      the paths of the shards by lead
+	 * @param shardDir   the directory of the shards
+	 * @param properties the properties of the section
+	 * @param section    the number of the section
+	 */
+	private static void addToShards(Map<String, Properties[]> shards, Map<String, String> index, File shardDir,
+			Properties properties, int section) {
+
+		for (Map.Entry<Object, Object> e : properties.entrySet()) {
+
+			String key = (String) e.getKey();
+			String name = ShardedBundle.getShardName(key);
+
+			Properties[] sections = shards.get(name);
+			if (sections == null) {
+				sections = new Properties[] { new Properties(), new Properties(), new Properties() };
+				shards.put(name, sections);
+			}
+			sections[section].put(key, e.getValue());
+
+			index.put(getLead(key), shardDir.getName() + CHAR_SLASH + name);
+		}
+	}
+
+	/**
+	 * Writes a shard if its content changed
+	 *
+	 * @param shard    the shard file
+	 * @param sections the old but used, the new and the old and not used
+	 *                 properties of the shard
+	 * @return true if the shard was written
+	 * @throws IOException on I/O errors
+	 */
+	private static boolean saveShard(File shard, Properties[] sections) throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (PropertiesWriter writer = new PropertiesWriter(Channels.newChannel(out), SHARD_WRITER_BUFFER_SIZE)) {
+			writeSections(writer, sections[0], sections[1], sections[2]);
+		}
+
+		byte[] original = shard.isFile() ? Files.readAllBytes(shard.toPath()) : null;
+
+		// written to a temporary file and renamed, never left half-written
+		return writeIfChanged(shard, original, out.toByteArray());
+	}
+
+	/**
+	 * Writes the index of the shards
+	 *
+	 * @param rb    the resource bundle
+	 * @param index the paths of the shards by lead
+	 * @throws IOException on I/O errors
+	 */
+	private static void saveIndex(ResourceBundle rb, SortedMap<String, String> index) throws IOException {
+
+		File indexFile = ShardedBundle.getIndexFile(rb.getPropertiesFile());
+		File tempFile = new File(indexFile.getPath() + TMP);
+
+		try {
+			try (PropertiesWriter writer = PropertiesWriter.open(tempFile)) {
+				writer.writeComments(new Date(), rb.getMessages());
+				writer.writePlainProperties(SHARDS, index);
+			}
+			replaceFile(tempFile, indexFile);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Deletes the shards and the index of a resource bundle, called when it is
+	 * saved into a single file
+	 *
+	 * @param propertiesFile the messages_xx.properties file of the resource
+	 *                       bundle
+	 * @throws IOException on I/O errors
+	 */
+	static void deleteShards(File propertiesFile) throws IOException {
+
+		if (!ShardedBundle.isSharded(propertiesFile)) {
+			return;
+		}
+
+		for (File shard : ShardedBundle.getShards(propertiesFile)) {
+			Files.delete(shard.toPath());
+		}
+
+		File shardDir = ShardedBundle.getShardDir(propertiesFile);
+		String[] remaining = shardDir.list();
+		if (remaining != null && remaining.length == 0) {
+			Files.delete(shardDir.toPath());
+		}
+		Files.deleteIfExists(ShardedBundle.getIndexFile(propertiesFile).toPath());
+	}
+
+}
@@ -0,0 +1,205 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The properties of a resource bundle saved in shards (see
+ * {@link ShardWriter}). The messages_xx.properties file is written next to the
+ * shards on every run and it is the file the translators edit, so it is read
+ * alone if it exists; the shards of the messages_xx directory are read only
+ * without it (e.g. a bundle whose single file was removed). The files are
+ * read like a single {@link MappedPropertyFile}.
+ */
+public class ShardedBundle implements PropertySource {
+
+	/**
+	 * The files in the order they are read
+	 */
+	private final MappedPropertyFile[] files;
+
+	/**
+	 * The index of the first key of the files, and the number of all the keys
+	 */
+	private final int[] starts;
+
+	/**
+	 * Constructor
+	 *
+	 * @param files the files in the order they are read
+	 */
+	public ShardedBundle(List<MappedPropertyFile> files) {
+
+		this.files = files.toArray(new MappedPropertyFile[files.size()]);
+		this.starts = new int[this.files.length + 1];
+
+		for (int i = 0; i < this.files.length; i++) {
+			starts[i + 1] = starts[i] + this.files[i].size();
+		}
+	}
+
+	/**
+	 * Loads the shards of the resource bundle
+	 *
+	 * @param propertiesFile the messages_xx.properties file of the resource
+	 *                       bundle, loaded instead of the shards if it exists
+	 * @return the loaded resource bundle
+	 * @throws IOException on I/O errors
+	 */
+	public static ShardedBundle load(File propertiesFile) throws IOException {
+
+		List<MappedPropertyFile> files = new ArrayList<MappedPropertyFile>();
+
+		if (propertiesFile.isFile()) {
+			// the shards are derived from the single file, the edits are made there
+			files.add(MappedPropertyFile.load(propertiesFile));
+		} else {
+			for (File shard : getShards(propertiesFile)) {
+				files.add(MappedPropertyFile.load(shard));
+			}
+		}
+
+		return new ShardedBundle(files);
+	}
+
+	/**
+	 * Returns true if the resource bundle has shards or a shard index
+	 *
+	 * @param propertiesFile the messages_xx.properties file of the resource
+	 *                       bundle
+	 * @return true if the resource bundle was saved in shards
+	 */
+	public static boolean isSharded(File propertiesFile) {
+		return getIndexFile(propertiesFile).isFile() || getShardDir(propertiesFile).isDirectory();
+	}
+
+	/**
+	 * Returns the shard files of the resource bundle, sorted by name
+	 *
+	 * @param propertiesFile the messages_xx.properties file of the resource
+	 *                       bundle
+	 * @return the shard files, empty if there are none
+	 */
+	static File[] getShards(File propertiesFile) {
+
+		File[] shards = getShardDir(propertiesFile).listFiles(f -> f.isFile() && f.getName().endsWith(_PROPERTIES));
+
+		if (shards == null) {
+			return new File[0];
+		}
+		Arrays.sort(shards);
+		return shards;
+	}
+
+	/**
+	 * Returns the directory of the shards (messages_xx next to
+	 * messages_xx.properties)
+	 *
+	 * @param propertiesFile the messages_xx.properties file of the resource
+	 *                       bundle
+	 * @return the directory of the shards
+	 */
+	static File getShardDir(File propertiesFile) {
+		String name = propertiesFile.getName();
+		return new File(propertiesFile.getParentFile(), name.substring(0, name.length() - _PROPERTIES.length()));
+	}
+
+	/**
+	 * Returns the index of the shards (messages_xx.index next to
+	 * messages_xx.properties)
+	 *
+	 * @param propertiesFile the messages_xx.properties file of the resource
+	 *                       bundle
+	 * @return the index file
+	 */
+	static File getIndexFile(File propertiesFile) {
+		return new File(getShardDir(propertiesFile).getPath() + _INDEX);
+	}
+
+	/**
+	 * Returns the name of the shard file of a key: the lead of the key (see
+	 * {@link Util#getLead(String)}, the name of the xhtml file for the generated
+	 * keys), in lower case (the file names may not be case sensitive), with the
+	 * characters other than letters, digits, '-' and '_' replaced with '_'
+	 *
+	 * @param key the key
+	 * @return the name of the shard file, without the directory
+	 */
+	static String getShardName(String key) {
+
+		String lead = Util.getLead(key).toLowerCase(Locale.ROOT);
+		StringBuilder sb = new StringBuilder(lead.length() + _PROPERTIES.length());
+
+		for (int i = 0; i < lead.length(); i++) {
+			char c = lead.charAt(i);
+			sb.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' ? c : CHAR_UNDERSCORE);
+		}
+		if (sb.length() == 0) {
+			sb.append(CHAR_UNDERSCORE);
+		}
+		return sb.append(_PROPERTIES).toString();
+	}
+
+	/**
+	 * @return the number of the keys of all the files
+	 */
+	public int size() {
+		return starts[files.length];
+	}
+
+	/**
+	 * Decodes the key
+	 *
+	 * @param index the index of the key in all the files
+	 * @return the decoded key
+	 */
+	public String getKey(int index) {
+		int file = getFile(index);
+		return files[file].getKey(index - starts[file]);
+	}
+
+	/**
+	 * Decodes the value of the key
+	 *
+	 * @param index the index of the key in all the files
+	 * @return the decoded value
+	 */
+	public String getValue(int index) {
+		int file = getFile(index);
+		return files[file].getValue(index - starts[file]);
+	}
+
+	/**
+	 * Returns true if the value of the key is the text
+	 *
+	 * @param index the index of the key in all the files
+	 * @param text  the text
+	 * @return true if the decoded value equals the text
+	 */
+	public boolean valueEquals(int index, String text) {
+		int file = getFile(index);
+		return files[file].valueEquals(index - starts[file], text);
+	}
+
+	/**
+	 * Returns the file of the key
+	 */
+	private int getFile(int index) {
+		// the last file starting at or before the index (empty files start at the same index)
+		int file = Arrays.binarySearch(starts, 0, files.length, index);
+		if (file < 0) {
+			return -file - 2;
+		}
+		while (file + 1 < files.length && starts[file + 1] == index) {
+			file++;
+		}
+		return file;
+	}
+
+}
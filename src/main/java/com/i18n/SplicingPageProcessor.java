@@ -0,0 +1,737 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.i18n.Metrics.Counter;
+import com.i18n.Metrics.Phase;
+
+/**
+ * Rewrites an xhtml file by splicing the EL expressions of the labels into its
+ * original content: only the replaced texts and attribute values change, every
+ * other byte (formatting, entity references, quotes, comments, the DOCTYPE) is
+ * kept, and nothing is serialized.<br>
+ * The labels are found with the StAX cursor API, by the same rules as the
+ * {@link StreamingPageProcessor} uses. A {@link SourceScanner} follows the
+ * events in the original bytes, so the position of every text node and
+ * attribute value is known. The whitespace around a replaced text is kept.<br>
+ * If the events cannot be matched with the original content (e.g. an entity
+ * whose replacement text contains markup), or the encoding of the xhtml files
+ * is not compatible with ASCII, the file is processed by the
+ * {@link StreamingPageProcessor}.
+ */
+public class SplicingPageProcessor extends StreamingPageProcessor {
+
+	/**
+	 * The charset of the xhtml files
+	 */
+	private final Charset charset;
+
+	/**
+	 * True if the markup of the xhtml files can be found in their bytes
+	 */
+	private final boolean asciiCompatible;
+
+	/**
+	 * Constructor
+	 *
+	 * @param grammarCache  the cache of the xhtml DTD and entities
+	 * @param xhtmlEncoding the character encoding of the xhtml files
+	 */
+	public SplicingPageProcessor(GrammarCache grammarCache, String xhtmlEncoding) {
+		super(grammarCache, xhtmlEncoding);
+		this.charset = Charset.forName(xhtmlEncoding);
+		this.asciiCompatible = Arrays.equals(MARKUP_CHARACTERS.getBytes(charset),
+				MARKUP_CHARACTERS.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Process the file as the xhtml source: collects the texts and splices the EL
+	 * expressions into the file. The file is written only if a text or an
+	 * attribute was replaced.
+	 *
+	 * @param file the file to be processed
+	 * @return the labels found in the file
+	 * @throws IOException        on I/O errors
+	 * @throws XMLStreamException on parse errors
+	 */
+	@Override
+	public ProcessedPage process(File file) throws IOException, XMLStreamException {
+
+		if (!asciiCompatible) {
+			return super.process(file);
+		}
+
+		byte[] original = readFile(file);
+		ProcessedPage page = new ProcessedPage(file);
+		List<Edit> edits = new ArrayList<Edit>();
+
+		long start = Metrics.start();
+
+		XMLStreamReader reader = getInputFactory().createXMLStreamReader(new ByteArrayInputStream(original),
+				getXhtmlEncoding());
+		try {
+			scan(page, reader, new SourceScanner(original, charset), edits);
+		} catch (SpliceException e) {
+			// the original content does not follow the events
+			return super.process(file);
+		} finally {
+			reader.close();
+		}
+
+		Metrics.stop(Phase.PARSING, start);
+
+		if (getGrammarCache().isStatistics()) {
+			recordParse(file, System.nanoTime() - start);
+		}
+
+		if (page.isModified()) {
+			page.setRewritten(write(page, original, splice(original, edits)));
+		}
+
+		return page;
+	}
+
+	/**
+	 * Reads the events, collects the labels and the edits of the texts and of the
+	 * attributes
+	 *
+	 * @param page   the processed page collecting the labels
+	 * @param reader the {@link XMLStreamReader} of the file
+	 * @param source the scanner of the original content
+	 * @param edits  receives the edits, in the order of the content
+	 * @throws XMLStreamException on parse errors
+	 * @throws SpliceException    if the content does not follow the events
+	 */
+	private void scan(ProcessedPage page, XMLStreamReader reader, SourceScanner source, List<Edit> edits)
+			throws XMLStreamException, SpliceException {
+
+		// a text node may be reported as more than one characters event
+		StringBuilder text = new StringBuilder();
+		long nodes = 0;
+		int previousEvent = XMLStreamConstants.START_DOCUMENT;
+
+		while (reader.hasNext()) {
+
+			int eventType = reader.next();
+
+			if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.SPACE) {
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				previousEvent = eventType;
+				continue;
+			}
+
+			switch (eventType) {
+			case XMLStreamConstants.START_ELEMENT:
+				source.nextStartTag(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				source.nextEndTag(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+				break;
+			case XMLStreamConstants.CDATA:
+				// the adjacent sections are scanned together
+				if (previousEvent != XMLStreamConstants.CDATA) {
+					source.nextCData();
+				}
+				break;
+			case XMLStreamConstants.COMMENT:
+				source.next(COMMENT_START, COMMENT_END);
+				break;
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+				source.next(PI_START, PI_END);
+				break;
+			case XMLStreamConstants.DTD:
+				source.nextDoctype();
+				break;
+			case XMLStreamConstants.END_DOCUMENT:
+				source.end();
+				break;
+			default:
+				throw new SpliceException();
+			}
+			previousEvent = eventType;
+
+			if (text.length() > 0) {
+				nodes++;
+				spliceText(page, text, source, edits);
+				text.setLength(0);
+			}
+
+			if (eventType == XMLStreamConstants.START_ELEMENT) {
+				nodes++;
+				spliceStartElement(page, reader, source, edits);
+			} else if (eventType != XMLStreamConstants.END_ELEMENT
+					&& eventType != XMLStreamConstants.END_DOCUMENT) {
+				nodes++;
+			}
+		}
+
+		Metrics.add(Counter.NODES_VISITED, nodes);
+	}
+
+	/**
+	 * Collects the label of a text node, the trimmed text is replaced with the EL
+	 * expression (the whole text if its whitespaces are not plain characters in
+	 * the content)
+	 */
+	private void spliceText(ProcessedPage page, StringBuilder text, SourceScanner source, List<Edit> edits) {
+
+		int start = TextScanner.trimStart(text, 0, text.length());
+		int end = TextScanner.trimEnd(text, start, text.length());
+
+		if (TextScanner.containsNoLetters(text, start, end)) {
+			return;
+		}
+
+		String label = text.substring(start, end);
+		String labelName = getLabelName(page.getFile(), TEXT_LABEL, label);
+
+		page.addLabel(label, labelName);
+
+		int textStart = source.getTextStart();
+		int textEnd = source.getTextEnd();
+
+		int editStart = source.skipLeadingWhitespaces(textStart, textEnd, start);
+		int editEnd = source.skipTrailingWhitespaces(editStart, textEnd, text.length() - end);
+
+		if (editStart < 0 || editEnd < 0) {
+			editStart = textStart;
+			editEnd = textEnd;
+		}
+
+		edits.add(new Edit(editStart, editEnd, geti18nLabel(labelName).getBytes(charset)));
+	}
+
+	/**
+	 * Collects the label of the value attribute of an element which is not
+	 * &lt;s:graphicImage&gt; and replaces the pattern attributes, like
+	 * {@link StreamingPageProcessor} does
+	 */
+	private void spliceStartElement(ProcessedPage page, XMLStreamReader reader, SourceScanner source,
+			List<Edit> edits) throws SpliceException {
+
+		String nodeName = getNodeNameWithoutNameSpace(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+		if (nodeName.equals(GRAPHICIMAGE)) {
+			return;
+		}
+
+		boolean labelFound = false;
+
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+
+			String attributeName = getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+			String value = reader.getAttributeValue(i);
+
+			if (attributeName.equals(PATTERN) && !DATE_TIME_FORMAT_EL.equals(value)) {
+				edits.add(source.editAttribute(attributeName, DATE_TIME_FORMAT_EL.getBytes(charset)));
+				page.setModified(true);
+			}
+
+			if (attributeName.equals(VALUE) && !labelFound) {
+				int start = TextScanner.trimStart(value, 0, value.length());
+				int end = TextScanner.trimEnd(value, start, value.length());
+
+				if (!TextScanner.containsNoLetters(value, start, end)) {
+					String label = value.substring(start, end);
+					String labelName = getLabelName(page.getFile(), nodeName, label);
+
+					page.addLabel(label, labelName);
+
+					edits.add(source.editAttribute(attributeName, geti18nLabel(labelName).getBytes(charset)));
+					labelFound = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the content with the edits applied
+	 *
+	 * @param original the original content
+	 * @param edits   the edits, in the order of the content
+	 * @return the new content
+	 */
+	static byte[] splice(byte[] original, List<Edit> edits) {
+
+		// attribute edits are added in the order of the events, not of the content
+		edits.sort((a, b) -> Integer.compare(a.start, b.start));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(original.length + edits.size() * 32);
+		int position = 0;
+
+		for (Edit edit : edits) {
+			out.write(original, position, edit.start - position);
+			out.write(edit.replacement, 0, edit.replacement.length);
+			position = edit.end;
+		}
+		out.write(original, position, original.length - position);
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the name with the prefix (e.g.: "h:outputText")
+	 */
+	private static String getQualifiedName(String prefix, String localName) {
+		if (prefix == null || prefix.length() == 0) {
+			return localName;
+		}
+		return prefix + DOUBLE_COLON + localName;
+	}
+
+	/**
+	 * A replaced range of the original content
+	 */
+	static class Edit {
+
+		/**
+		 * The start of the range (inclusive)
+		 */
+		private final int start;
+
+		/**
+		 * The end of the range (exclusive)
+		 */
+		private final int end;
+
+		/**
+		 * The bytes written instead of the range
+		 */
+		private final byte[] replacement;
+
+		Edit(int start, int end, byte[] replacement) {
+			this.start = start;
+			this.end = end;
+			this.replacement = replacement;
+		}
+	}
+
+	/**
+	 * Thrown when the original content does not follow the events of the parser
+	 */
+	static class SpliceException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Finds the markup of the parsed events in the original content. The markup
+	 * characters are ASCII, so the content is scanned as bytes. Every event has to
+	 * be found in the order of the parser, the text between two markups is the
+	 * content of the text node reported before the second one.
+	 */
+	static class SourceScanner {
+
+		/**
+		 * The original content
+		 */
+		private final byte[] content;
+
+		/**
+		 * The charset of the content, for the names
+		 */
+		private final Charset charset;
+
+		/**
+		 * The position after the last scanned markup
+		 */
+		private int position;
+
+		/**
+		 * The start of the text before the last scanned markup
+		 */
+		private int textStart;
+
+		/**
+		 * The end of the text before the last scanned markup (the start of the
+		 * markup)
+		 */
+		private int textEnd;
+
+		/**
+		 * True if the last start tag was an empty element tag, its end event has no
+		 * markup
+		 */
+		private boolean emptyElement;
+
+		/**
+		 * The names of the attributes of the last start tag
+		 */
+		private final List<String> attributeNames = new ArrayList<String>();
+
+		/**
+		 * The start and the end of the values (without the quotes) of the
+		 * attributes of the last start tag
+		 */
+		private int[] attributeValues = new int[16];
+
+		/**
+		 * Constructor, skips the byte order mark and the xml declaration (they are
+		 * not reported as events)
+		 *
+		 * @param content the original content
+		 * @param charset the charset of the content
+		 */
+		SourceScanner(byte[] content, Charset charset) {
+			this.content = content;
+			this.charset = charset;
+
+			if (content.length >= 3 && (content[0] & 0xFF) == 0xEF && (content[1] & 0xFF) == 0xBB
+					&& (content[2] & 0xFF) == 0xBF) {
+				position = 3;
+			}
+			if (startsWith(XML_DECLARATION_START, position)
+					&& position + XML_DECLARATION_START.length() < content.length
+					&& isWhitespace(content[position + XML_DECLARATION_START.length()])) {
+				position = indexAfter(PI_END, position);
+			}
+			textStart = position;
+			textEnd = position;
+		}
+
+		/**
+		 * @return the start of the text before the last scanned markup
+		 */
+		int getTextStart() {
+			return textStart;
+		}
+
+		/**
+		 * @return the end of the text before the last scanned markup
+		 */
+		int getTextEnd() {
+			return textEnd;
+		}
+
+		/**
+		 * Scans the next markup, which has to start with the given string
+		 *
+		 * @param start the start of the markup (e.g.: "&lt;!--")
+		 * @param end   the end of the markup (e.g.: "--&gt;")
+		 * @throws SpliceException if the next markup is a different one
+		 */
+		void next(String start, String end) throws SpliceException {
+			position = indexAfter(end, nextMarkup(start) + start.length());
+		}
+
+		/**
+		 * Records the text after the last markup, at the end of the document
+		 */
+		void end() {
+			textStart = position;
+			textEnd = content.length;
+		}
+
+		/**
+		 * Scans the next CDATA section and the sections following it without text
+		 * between them
+		 *
+		 * @throws SpliceException if the next markup is not a CDATA section
+		 */
+		void nextCData() throws SpliceException {
+			next(CDATA_START, CDATA_END);
+			while (startsWith(CDATA_START, position)) {
+				position = indexAfter(CDATA_END, position + CDATA_START.length());
+			}
+		}
+
+		/**
+		 * Scans the document type declaration with its internal subset
+		 *
+		 * @throws SpliceException if the next markup is not a DOCTYPE
+		 */
+		void nextDoctype() throws SpliceException {
+
+			int i = nextMarkup(DOCTYPE_START) + DOCTYPE_START.length();
+			byte quote = 0;
+			boolean subset = false;
+
+			for (; i < content.length; i++) {
+				byte b = content[i];
+				if (quote != 0) {
+					if (b == quote) {
+						quote = 0;
+					}
+				} else if (b == '"' || b == '\'') {
+					quote = b;
+				} else if (subset && startsWith(COMMENT_START, i)) {
+					i = indexAfter(COMMENT_END, i + COMMENT_START.length()) - 1;
+				} else if (b == '[') {
+					subset = true;
+				} else if (b == ']') {
+					subset = false;
+				} else if (b == '>' && !subset) {
+					position = i + 1;
+					return;
+				}
+			}
+			throw new SpliceException();
+		}
+
+		/**
+		 * Scans the next start tag and its attributes
+		 *
+		 * @param name the qualified name of the element
+		 * @throws SpliceException if the next markup is not the start tag of the
+		 *                         element
+		 */
+		void nextStartTag(String name) throws SpliceException {
+
+			int i = nextMarkup(TAG_START) + TAG_START.length();
+			if (i < content.length && (content[i] == '/' || content[i] == '!' || content[i] == '?')) {
+				throw new SpliceException();
+			}
+
+			int nameEnd = skipName(i);
+			if (!name.equals(new String(content, i, nameEnd - i, charset))) {
+				throw new SpliceException();
+			}
+
+			attributeNames.clear();
+			i = nameEnd;
+
+			while (true) {
+				i = skipWhitespaces(i);
+				if (i >= content.length) {
+					throw new SpliceException();
+				}
+				if (content[i] == '>') {
+					emptyElement = false;
+					break;
+				}
+				if (content[i] == '/' && i + 1 < content.length && content[i + 1] == '>') {
+					emptyElement = true;
+					i++;
+					break;
+				}
+
+				int attributeEnd = skipName(i);
+				String attributeName = new String(content, i, attributeEnd - i, charset);
+				i = skipWhitespaces(attributeEnd);
+				if (i >= content.length || content[i] != '=') {
+					throw new SpliceException();
+				}
+				i = skipWhitespaces(i + 1);
+				if (i >= content.length || (content[i] != '"' && content[i] != '\'')) {
+					throw new SpliceException();
+				}
+				int valueEnd = indexOf(content[i], i + 1);
+
+				int index = attributeNames.size();
+				if (index * 2 + 2 > attributeValues.length) {
+					attributeValues = Arrays.copyOf(attributeValues, attributeValues.length * 2);
+				}
+				attributeNames.add(attributeName);
+				attributeValues[index * 2] = i + 1;
+				attributeValues[index * 2 + 1] = valueEnd;
+				i = valueEnd + 1;
+			}
+			position = i + 1;
+		}
+
+		/**
+		 * Scans the next end tag, nothing if the last start tag was an empty element
+		 * tag
+		 *
+		 * @param name the qualified name of the element
+		 * @throws SpliceException if the next markup is not the end tag of the
+		 *                         element
+		 */
+		void nextEndTag(String name) throws SpliceException {
+
+			if (emptyElement) {
+				emptyElement = false;
+				textStart = position;
+				textEnd = position;
+				return;
+			}
+
+			int i = nextMarkup(END_TAG_START) + END_TAG_START.length();
+			int nameEnd = skipName(i);
+			if (!name.equals(new String(content, i, nameEnd - i, charset))) {
+				throw new SpliceException();
+			}
+			i = skipWhitespaces(nameEnd);
+			if (i >= content.length || content[i] != '>') {
+				throw new SpliceException();
+			}
+			position = i + 1;
+		}
+
+		/**
+		 * Returns the edit replacing the value of an attribute of the last start tag
+		 *
+		 * @param name        the qualified name of the attribute
+		 * @param replacement the new value
+		 * @return the edit
+		 * @throws SpliceException if the start tag has no such attribute (e.g.: a
+		 *                         default value of the DTD)
+		 */
+		Edit editAttribute(String name, byte[] replacement) throws SpliceException {
+
+			int index = attributeNames.indexOf(name);
+			if (index < 0) {
+				throw new SpliceException();
+			}
+			return new Edit(attributeValues[index * 2], attributeValues[index * 2 + 1], replacement);
+		}
+
+		/**
+		 * Skips the given number of whitespace characters of a text, if they are
+		 * plain characters in the content (a line end counts as one character)
+		 *
+		 * @param start       the start of the text in the content
+		 * @param end         the end of the text in the content
+		 * @param whitespaces the number of the whitespace characters
+		 * @return the position after the whitespaces, -1 if they are not plain
+		 *         characters
+		 */
+		int skipLeadingWhitespaces(int start, int end, int whitespaces) {
+
+			int i = start;
+			for (int n = 0; n < whitespaces; n++) {
+				if (i >= end || !isWhitespace(content[i])) {
+					return -1;
+				}
+				if (content[i] == '\r' && i + 1 < end && content[i + 1] == '\n') {
+					i++;
+				}
+				i++;
+			}
+			return i;
+		}
+
+		/**
+		 * Skips the given number of whitespace characters at the end of a text
+		 * backwards, if they are plain characters in the content
+		 *
+		 * @param start       the start of the text in the content
+		 * @param end         the end of the text in the content
+		 * @param whitespaces the number of the whitespace characters
+		 * @return the position of the whitespaces, -1 if they are not plain
+		 *         characters
+		 */
+		int skipTrailingWhitespaces(int start, int end, int whitespaces) {
+
+			if (start < 0) {
+				return -1;
+			}
+
+			int i = end;
+			for (int n = 0; n < whitespaces; n++) {
+				if (i <= start || !isWhitespace(content[i - 1])) {
+					return -1;
+				}
+				if (content[i - 1] == '\n' && i - 1 > start && content[i - 2] == '\r') {
+					i--;
+				}
+				i--;
+			}
+			return i;
+		}
+
+		/**
+		 * Finds the next markup, records the text before it
+		 *
+		 * @param start the start of the expected markup
+		 * @return the position of the markup
+		 * @throws SpliceException if the next markup does not start with the given
+		 *                         string
+		 */
+		private int nextMarkup(String start) throws SpliceException {
+
+			int markup = indexOf((byte) '<', position);
+			if (!startsWith(start, markup)) {
+				throw new SpliceException();
+			}
+			textStart = position;
+			textEnd = markup;
+			return markup;
+		}
+
+		/**
+		 * Returns the position after the name starting at the given position
+		 */
+		private int skipName(int i) throws SpliceException {
+			int start = i;
+			while (i < content.length && !isWhitespace(content[i]) && content[i] != '>' && content[i] != '/'
+					&& content[i] != '=') {
+				i++;
+			}
+			if (i == start) {
+				throw new SpliceException();
+			}
+			return i;
+		}
+
+		/**
+		 * Returns the position of the first non-whitespace character
+		 */
+		private int skipWhitespaces(int i) {
+			while (i < content.length && isWhitespace(content[i])) {
+				i++;
+			}
+			return i;
+		}
+
+		/**
+		 * Returns the position of the byte
+		 */
+		private int indexOf(byte b, int from) throws SpliceException {
+			for (int i = from; i < content.length; i++) {
+				if (content[i] == b) {
+					return i;
+				}
+			}
+			throw new SpliceException();
+		}
+
+		/**
+		 * Returns the position after the next occurrence of the string
+		 */
+		private int indexAfter(String s, int from) {
+			for (int i = from; i <= content.length - s.length(); i++) {
+				if (startsWith(s, i)) {
+					return i + s.length();
+				}
+			}
+			return content.length;
+		}
+
+		/**
+		 * Returns true if the content contains the ASCII string at the given
+		 * position
+		 */
+		private boolean startsWith(String s, int at) {
+			if (at < 0 || at + s.length() > content.length) {
+				return false;
+			}
+			for (int i = 0; i < s.length(); i++) {
+				if (content[at + i] != s.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isWhitespace(byte b) {
+			return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+		}
+	}
+
+}
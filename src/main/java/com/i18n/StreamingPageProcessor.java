@@ -0,0 +1,512 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static com.i18n.Util.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import com.i18n.Metrics.Counter;
+import com.i18n.Metrics.Phase;
+
+/**
+ * Extracts the labels from an xhtml file and rewrites it while reading, using
+ * StAX. Only the current event and the text of the current text node are held
+ * in memory, so the memory used does not depend on the size of the page.<br>
+ * The labels are the same as the ones found by the DOM based processing, but
+ * the rewritten page keeps the original formatting instead of re-indenting it.
+ */
+public class StreamingPageProcessor implements PageProcessor {
+
+	/**
+	 * The cache of the xhtml DTD and entities
+	 */
+	private final GrammarCache grammarCache;
+
+	/**
+	 * Character encoding for XHTML files.
+	 */
+	private final String xhtmlEncoding;
+
+	/**
+	 * The StAX input factory of the thread, set up with the resolver of the
+	 * xhtml entities
+	 */
+	private final ThreadLocal<XMLInputFactory> inputFactories = new ThreadLocal<XMLInputFactory>();
+
+	/**
+	 * The StAX input factory of the thread reading the original DTD and entity
+	 * files, for the samples of the grammar cache statistics
+	 */
+	private final ThreadLocal<XMLInputFactory> originalInputFactories = new ThreadLocal<XMLInputFactory>();
+
+	/**
+	 * Called before a page is rewritten, null if there is nothing to do
+	 */
+	private WriteAhead writeAhead;
+
+	/**
+	 * Constructor
+	 *
+	 * @param grammarCache  the cache of the xhtml DTD and entities
+	 * @param xhtmlEncoding the character encoding of the xhtml files
+	 */
+	public StreamingPageProcessor(GrammarCache grammarCache, String xhtmlEncoding) {
+		this.grammarCache = grammarCache;
+		this.xhtmlEncoding = xhtmlEncoding;
+	}
+
+	/**
+	 * Process the file as the xhtml source: collects the texts and rewrites the
+	 * file through a temporary file. The file is replaced only if a text or an
+	 * attribute was replaced and the new content differs from the original.
+	 *
+	 * @param file the file to be processed
+	 * @return the labels found in the file
+	 * @throws IOException        on I/O errors
+	 * @throws XMLStreamException on parse errors
+	 */
+	public ProcessedPage process(File file) throws IOException, XMLStreamException {
+
+		ProcessedPage page = new ProcessedPage(file);
+
+		long start = Metrics.start();
+		Metrics.add(Counter.BYTES_READ, file.length());
+
+		File tempFile = new File(file.getPath() + TMP);
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+
+			process(page, in, out);
+		} catch (IOException | XMLStreamException | RuntimeException e) {
+			tempFile.delete();
+			throw e;
+		}
+
+		Metrics.stop(Phase.PARSING, start);
+
+		if (grammarCache.isStatistics()) {
+			recordParse(file, System.nanoTime() - start);
+		}
+
+		if (page.isModified()) {
+			if (writeAhead != null && !hasSameContent(tempFile, file)) {
+				try {
+					writeAhead.beforeWrite(page, Files.readAllBytes(file.toPath()),
+							Files.readAllBytes(tempFile.toPath()));
+				} catch (IOException e) {
+					tempFile.delete();
+					throw e;
+				}
+			}
+			page.setRewritten(replaceIfChanged(tempFile, file));
+		} else {
+			// nothing replaced, the page is not reformatted
+			tempFile.delete();
+		}
+
+		return page;
+	}
+
+	/**
+	 * Sets the listener called before a page is rewritten
+	 *
+	 * @param writeAhead the listener or null
+	 */
+	public void setWriteAhead(WriteAhead writeAhead) {
+		this.writeAhead = writeAhead;
+	}
+
+	/**
+	 * Writes the new content of the page, unless the file already has the same
+	 * content. The {@link WriteAhead} is called before the file is replaced.
+	 *
+	 * @param page     the processed page
+	 * @param original the content of the file
+	 * @param content  the new content of the file
+	 * @return true if the file was written
+	 * @throws IOException on I/O errors
+	 */
+	boolean write(ProcessedPage page, byte[] original, byte[] content) throws IOException {
+
+		return writeIfChanged(page, original, content, writeAhead);
+	}
+
+	/**
+	 * Reads the page from the input stream and writes the rewritten page to the
+	 * output stream
+	 *
+	 * @param page the processed page collecting the labels
+	 * @param in   the content of the file
+	 * @param out  receives the rewritten content
+	 * @throws IOException        on I/O errors
+	 * @throws XMLStreamException on parse errors
+	 */
+	void process(ProcessedPage page, InputStream in, OutputStream out) throws IOException, XMLStreamException {
+
+		XMLEventReader reader = getInputFactory().createXMLEventReader(in, xhtmlEncoding);
+		Writer writer = new OutputStreamWriter(out, xhtmlEncoding);
+		XMLEventWriter eventWriter = XmlPools.getOutputFactory().createXMLEventWriter(writer);
+
+		try {
+			process(page, reader, eventWriter);
+		} finally {
+			reader.close();
+		}
+		eventWriter.close();
+		writer.flush();
+	}
+
+	/**
+	 * Copies the events from the reader to the writer, replacing the texts and the
+	 * attributes with the EL expressions of the labels.
+	 *
+	 * @param page   the processed page collecting the labels
+	 * @param reader the {@link XMLEventReader} of the original file
+	 * @param writer the {@link XMLEventWriter} of the rewritten file
+	 * @throws XMLStreamException on parse errors
+	 */
+	void process(ProcessedPage page, XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException {
+
+		XMLEventFactory eventFactory = XmlPools.getEventFactory();
+
+		// a text node may be reported as more than one characters event (e.g.
+		// around entity references), they are joined like in the DOM
+		StringBuilder text = new StringBuilder();
+		long nodes = 0;
+
+		while (reader.hasNext()) {
+
+			XMLEvent event = reader.nextEvent();
+
+			if (isTextEvent(event)) {
+				text.append(event.asCharacters().getData());
+				continue;
+			}
+
+			if (text.length() > 0) {
+				nodes++;
+				writer.add(processText(page, eventFactory, text.toString()));
+				text.setLength(0);
+			}
+
+			if (isNodeEvent(event)) {
+				nodes++;
+			}
+
+			if (event.isStartElement()) {
+				writer.add(processStartElement(page, eventFactory, event.asStartElement()));
+			} else {
+				writer.add(event);
+			}
+
+			// the whitespace of the prolog is not reported by StAX
+			if (event.isStartDocument() || event.getEventType() == XMLEvent.DTD) {
+				writer.add(eventFactory.createSpace(NEWLINE));
+			}
+		}
+
+		Metrics.add(Counter.NODES_VISITED, nodes);
+	}
+
+	/**
+	 * Returns true if the event starts a node of the DOM (the end events and the
+	 * start of the document do not)
+	 *
+	 * @param event the event
+	 * @return true if the event starts a node
+	 */
+	private static boolean isNodeEvent(XMLEvent event) {
+		switch (event.getEventType()) {
+		case XMLEvent.START_DOCUMENT:
+		case XMLEvent.END_DOCUMENT:
+		case XMLEvent.END_ELEMENT:
+			return false;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Returns true if the event is a part of a text node (CDATA sections are
+	 * separate nodes in the DOM and they are not processed).
+	 *
+	 * @param event the event
+	 * @return true if the event is a part of a text node
+	 */
+	private static boolean isTextEvent(XMLEvent event) {
+		if (event.isCharacters()) {
+			return !event.asCharacters().isCData();
+		}
+		return false;
+	}
+
+	/**
+	 * Process a text node, the same way as {@link I18nGen} processes a text node
+	 * of the DOM
+	 *
+	 * @param page         the processed page collecting the labels
+	 * @param eventFactory the {@link XMLEventFactory}
+	 * @param textContent  the content of the text node
+	 * @return the event to write
+	 */
+	private Characters processText(ProcessedPage page, XMLEventFactory eventFactory, String textContent) {
+
+		int start = TextScanner.trimStart(textContent, 0, textContent.length());
+		int end = TextScanner.trimEnd(textContent, start, textContent.length());
+
+		if (!TextScanner.containsNoLetters(textContent, start, end)) {
+
+			String text = textContent.substring(start, end);
+			String labelName = getLabelName(page.getFile(), TEXT_LABEL, text);
+
+			page.addLabel(text, labelName);
+
+			return eventFactory.createCharacters(geti18nLabel(labelName));
+		}
+		return eventFactory.createCharacters(textContent);
+	}
+
+	/**
+	 * Process the attributes of an element which is not &lt;s:graphicImage&gt;,
+	 * the same way as {@link I18nGen} processes the non text nodes of the DOM
+	 *
+	 * @param page         the processed page collecting the labels
+	 * @param eventFactory the {@link XMLEventFactory}
+	 * @param element      the start element
+	 * @return the event to write
+	 */
+	private StartElement processStartElement(ProcessedPage page, XMLEventFactory eventFactory,
+			StartElement element) {
+
+		String nodeName = getNodeNameWithoutNameSpace(getQualifiedName(element.getName()));
+
+		if (nodeName.equals(GRAPHICIMAGE)) {
+			return element;
+		}
+
+		boolean modified = false;
+		boolean labelFound = false;
+		List<Attribute> attributes = new ArrayList<Attribute>();
+
+		for (Iterator<?> i = element.getAttributes(); i.hasNext();) {
+
+			Attribute attribute = (Attribute) i.next();
+			String attributeName = getQualifiedName(attribute.getName());
+
+			if (attributeName.equals(PATTERN) && !DATE_TIME_FORMAT_EL.equals(attribute.getValue())) {
+				attribute = eventFactory.createAttribute(attribute.getName(), DATE_TIME_FORMAT_EL);
+				modified = true;
+			}
+
+			if (attributeName.equals(VALUE) && !labelFound) {
+				String value = attribute.getValue();
+				int start = TextScanner.trimStart(value, 0, value.length());
+				int end = TextScanner.trimEnd(value, start, value.length());
+
+				if (!TextScanner.containsNoLetters(value, start, end)) {
+					String text = value.substring(start, end);
+					String labelName = getLabelName(page.getFile(), nodeName, text);
+
+					page.addLabel(text, labelName);
+
+					attribute = eventFactory.createAttribute(attribute.getName(), geti18nLabel(labelName));
+					modified = true;
+					labelFound = true;
+				}
+			}
+
+			attributes.add(attribute);
+		}
+
+		if (!modified) {
+			return element;
+		}
+
+		page.setModified(true);
+
+		return eventFactory.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+	}
+
+	/**
+	 * Returns the name with the prefix (e.g.: "h:outputText")
+	 *
+	 * @param name the {@link QName}
+	 * @return the name with the prefix
+	 */
+	private static String getQualifiedName(QName name) {
+		String prefix = name.getPrefix();
+		if (prefix == null || prefix.length() == 0) {
+			return name.getLocalPart();
+		}
+		return prefix + DOUBLE_COLON + name.getLocalPart();
+	}
+
+	/**
+	 * Returns the character encoding of the xhtml files
+	 *
+	 * @return the character encoding
+	 */
+	String getXhtmlEncoding() {
+		return xhtmlEncoding;
+	}
+
+	/**
+	 * Returns the {@link XMLInputFactory} of the current thread
+	 *
+	 * @return the {@link XMLInputFactory}
+	 */
+	XMLInputFactory getInputFactory() {
+
+		XMLInputFactory factory = inputFactories.get();
+
+		if (factory == null) {
+			factory = createInputFactory();
+			inputFactories.set(factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Returns the {@link XMLInputFactory} of the current thread reading the
+	 * original DTD and entity files
+	 *
+	 * @return the {@link XMLInputFactory}
+	 */
+	private XMLInputFactory getOriginalInputFactory() {
+
+		XMLInputFactory factory = originalInputFactories.get();
+
+		if (factory == null) {
+			factory = createInputFactory(true);
+			originalInputFactories.set(factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Returns the content of an entity of the xhtml files
+	 *
+	 * @param publicId the public-id of the entity
+	 * @return the content of the entity
+	 * @throws IOException if the entity is not known
+	 */
+	InputStream openEntity(String publicId) throws IOException {
+		return grammarCache.getInputStream(publicId);
+	}
+
+	/**
+	 * Returns the cache of the xhtml DTD and entities
+	 *
+	 * @return the {@link GrammarCache}
+	 */
+	GrammarCache getGrammarCache() {
+		return grammarCache;
+	}
+
+	/**
+	 * Records the time of the parse for the grammar cache statistics, the file
+	 * may be parsed again for a sample
+	 *
+	 * @param file  the parsed file
+	 * @param nanos the time of the parse in nanoseconds
+	 */
+	void recordParse(final File file, long nanos) {
+
+		grammarCache.recordParse(nanos, new GrammarCache.DocumentParser() {
+
+			public void parse(boolean originalDtd) throws Exception {
+
+				XMLInputFactory factory = originalDtd ? getOriginalInputFactory() : getInputFactory();
+
+				try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+					XMLStreamReader reader = factory.createXMLStreamReader(in, xhtmlEncoding);
+					try {
+						while (reader.hasNext()) {
+							reader.next();
+						}
+					} finally {
+						reader.close();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates the {@link XMLInputFactory} resolving the xhtml entities from the
+	 * entities loaded from the classpath
+	 *
+	 * @return the {@link XMLInputFactory}
+	 */
+	private XMLInputFactory createInputFactory() {
+		return createInputFactory(false);
+	}
+
+	/**
+	 * Creates the {@link XMLInputFactory} resolving the xhtml entities from the
+	 * entities loaded from the classpath
+	 *
+	 * @param originalDtd true if the original DTD and entity files should be read
+	 *                    instead of the compiled DTD (the samples of the grammar
+	 *                    cache statistics)
+	 * @return the {@link XMLInputFactory}
+	 */
+	private XMLInputFactory createInputFactory(final boolean originalDtd) {
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+
+		// element names are used with their prefixes, like in the DOM
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+		// CDATA sections are separate nodes in the DOM, they are not processed
+		if (factory.isPropertySupported(REPORT_CDATA_EVENT)) {
+			factory.setProperty(REPORT_CDATA_EVENT, Boolean.TRUE);
+		}
+		factory.setXMLResolver(new XMLResolver() {
+
+			public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace)
+					throws XMLStreamException {
+
+				try {
+					if (originalDtd) {
+						return grammarCache.getOriginalInputStream(publicID);
+					}
+					return openEntity(publicID);
+				} catch (IOException e) {
+					throw new XMLStreamException(e);
+				}
+			}
+		});
+
+		return factory;
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+/**
+ * Scans texts in place: every method works on a char range of a
+ * {@link CharSequence} and creates no intermediate objects, so the texts of the
+ * xhtml files can be examined before (and unless) a label is created from
+ * them.<br>
+ * The results are the same as the ones of the original String based
+ * implementations in {@link Util}, including their corner cases (e.g. the last
+ * character of a text is never checked for letters).
+ */
+public class TextScanner {
+
+	private TextScanner() {
+	}
+
+	/**
+	 * Returns the index of the first character of the range for which
+	 * {@link Character#isWhitespace(char)} returns false
+	 *
+	 * @param text  the text
+	 * @param start the start of the range (inclusive)
+	 * @param end   the end of the range (exclusive)
+	 * @return the index, {@code end} if the range is whitespace only
+	 */
+	public static int trimStart(CharSequence text, int start, int end) {
+		while (start < end && Character.isWhitespace(text.charAt(start))) {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the index after the last character of the range for which
+	 * {@link Character#isWhitespace(char)} returns false
+	 *
+	 * @param text  the text
+	 * @param start the start of the range (inclusive)
+	 * @param end   the end of the range (exclusive)
+	 * @return the index, {@code start} if the range is whitespace only
+	 */
+	public static int trimEnd(CharSequence text, int start, int end) {
+		while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Removes the whitespaces from the beginning and the end of the text
+	 *
+	 * @param text the text
+	 * @return the text itself if there is nothing to remove, the substring
+	 *         otherwise
+	 */
+	public static String trim(String text) {
+
+		int start = trimStart(text, 0, text.length());
+		int end = trimEnd(text, start, text.length());
+
+		return text.substring(start, end);
+	}
+
+	/**
+	 * Returns true if the range contains only whitespaces and other non letter
+	 * characters (EL expression content excluded), see
+	 * {@link Util#containsNoLetters(String)}
+	 *
+	 * @param text  the text
+	 * @param start the start of the range (inclusive)
+	 * @param end   the end of the range (exclusive)
+	 * @return true if the range contains no letter characters
+	 */
+	public static boolean containsNoLetters(CharSequence text, int start, int end) {
+
+		if (start >= end) {
+			return true;
+		}
+
+		int i = start;
+		while (i < end) {
+
+			if (i + 1 < end && text.charAt(i) == EL_START.charAt(0) && text.charAt(i + 1) == EL_START.charAt(1)) {
+
+				while (i < end && text.charAt(i) != '}') {
+					i++;
+				}
+
+				if (i > end - 1) {
+					// the EL expression is not closed (the last character is not a '}',
+					// the loop would have stopped on it)
+					return text.charAt(end - 1) == '}';
+				}
+
+				i++;
+			}
+
+			if (i < end - 1 && Character.isLetter(text.charAt(i))) {
+				return false;
+			}
+
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the range converted to a label name: the letters are kept, every
+	 * run of other characters is replaced with an underscore, except at the
+	 * beginning of the label. "This is a label" -&gt; This_is_a_label
+	 *
+	 * @param sb    the label is appended to it
+	 * @param text  the text
+	 * @param start the start of the range (inclusive)
+	 * @param end   the end of the range (exclusive)
+	 * @return the number of the appended characters (0 if the range contains no
+	 *         letters)
+	 */
+	public static int appendLabel(StringBuilder sb, CharSequence text, int start, int end) {
+
+		int length = sb.length();
+		boolean separator = false;
+
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (!Character.isLetter(c)) {
+				separator = true;
+			} else {
+				if (separator && sb.length() > length) {
+					sb.append(CHAR_UNDERSCORE);
+				}
+				separator = false;
+				sb.append(c);
+			}
+		}
+
+		if (separator && sb.length() > length) {
+			sb.append(CHAR_UNDERSCORE);
+		}
+
+		return sb.length() - length;
+	}
+
+}
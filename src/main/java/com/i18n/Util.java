@@ -2,33 +2,32 @@ package com.i18n;
 
 import static com.i18n.Constants.*;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
 
-import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 
+import com.i18n.Metrics.Counter;
+import com.i18n.Metrics.Phase;
+
 public class Util {
 
 	/**
@@ -73,6 +72,63 @@ public class Util {
 		return outBuffer.toString();
 	}
 
+	/**
+	 * Converts encoded &#92;uxxxx to unicode chars and removes the escaping
+	 * slashes, the inverse of {@link #saveConvert(String, boolean, boolean)}.
+	 * Based on the java.util.Properties class.
+	 * 
+	 * @param theString the String to convert
+	 * @return the converted String
+	 */
+	public static String loadConvert(String theString) {
+
+		if (theString.indexOf(CHAR_BACKSLASH) == -1) {
+			return theString;
+		}
+
+		int len = theString.length();
+		StringBuilder outBuffer = new StringBuilder(len);
+
+		for (int x = 0; x < len; x++) {
+			char aChar = theString.charAt(x);
+
+			if (aChar == CHAR_BACKSLASH && x + 1 < len) {
+				aChar = theString.charAt(++x);
+
+				if (aChar == U && x + 4 < len) {
+					aChar = (char) Integer.parseInt(theString.substring(x + 1, x + 5), 16);
+					x += 4;
+				}
+			}
+			outBuffer.append(aChar);
+		}
+		return outBuffer.toString();
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the content as hexadecimal String
+	 * 
+	 * @param content the content to hash
+	 * @return the hash
+	 */
+	public static String hash(byte[] content) {
+
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance(SHA_256).digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+
+		StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			sb.append(toHex(b >> 4));
+			sb.append(toHex(b));
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Appends the {@code aChar} to the {@code outBuffer} as unicode literal
 	 * 
@@ -108,38 +164,7 @@ public class Util {
 	 */
 	public static boolean containsNoLetters(String text) {
 
-		int length = text.length();
-		if (text == null || length == 0) {
-			return true;
-		}
-
-		int i = 0;
-		while (i < length) {
-
-			if (i + 1 < length && text.substring(i, i + 2).equals(EL_START)) {
-
-				while (i < length && text.charAt(i) != '}') {
-					i++;
-				}
-
-				if (i > length - 1 && text.charAt(length - 1) != '}') {
-					return false;
-				}
-
-				if (i > length - 1 && text.charAt(length - 1) == '}') {
-					return true;
-				}
-
-				i++;
-			}
-
-			if (i < length - 1 && Character.isLetter(text.charAt(i))) {
-				return false;
-			}
-
-			i++;
-		}
-		return true;
+		return TextScanner.containsNoLetters(text, 0, text.length());
 	}
 
 	/**
@@ -155,28 +180,16 @@ public class Util {
 		DOMSource domSource = new DOMSource(doc);
 		StringWriter writer = new StringWriter();
 		StreamResult result = new StreamResult(writer);
-		TransformerFactory tf = TransformerFactory.newInstance();
 
-		Transformer transformer = tf.newTransformer();
+		long start = Metrics.start();
 
-		transformer.setOutputProperty(OutputKeys.INDENT, YES);
-		transformer.setOutputProperty(HTTP_XML_APACHE_ORG_XSLT_INDENT_AMOUNT, String.valueOf(INDENT_4));
+		Transformer transformer = XmlPools.getTransformer();
 
 		transformer.transform(domSource, result);
-		return writer.toString();
-	}
+		String string = writer.toString();
 
-	/**
-	 * Returns true if the last character is an underscore
-	 * 
-	 * @param sb the StringBuilder instance
-	 * @return true if the sb's last char is underscore
-	 */
-	static boolean isLastCharUnderscore(StringBuilder sb) {
-		if (sb == null || sb.length() == 0) {
-			return false;
-		}
-		return sb.charAt(sb.length() - 1) != CHAR_UNDERSCORE;
+		Metrics.stop(Phase.GET_STRING, start);
+		return string;
 	}
 
 	/**
@@ -190,18 +203,7 @@ public class Util {
 	static String convertTextToLabel(String text) {
 		StringBuilder sb = new StringBuilder(text.length());
 
-		for (int i = 0; i < text.length(); i++) {
-			char c = text.charAt(i);
-			if (!Character.isLetter(c)) {
-				if (isLastCharUnderscore(sb)) {
-					sb.append(UNDERSCORE);
-				}
-			} else {
-				sb.append(c);
-			}
-		}
-
-		if (sb.length() == 0) {
+		if (TextScanner.appendLabel(sb, text, 0, text.length()) == 0) {
 			return NO_LETTERS;
 		}
 
@@ -232,15 +234,21 @@ public class Util {
 			nodeName = EMPTY_STRING;
 		}
 
-		String labelName;
+		StringBuilder labelName = new StringBuilder(dotIndex + nodeName.length() + text.length() + 2);
+
+		labelName.append(fileName, 0, dotIndex);
+		labelName.append(CHAR_UNDERSCORE);
 
 		if (nodeName.length() > 0) {
-			labelName = fileName.substring(0, dotIndex) + UNDERSCORE + nodeName + UNDERSCORE + convertTextToLabel(text);
-		} else {
-			labelName = fileName.substring(0, dotIndex) + UNDERSCORE + convertTextToLabel(text);
+			labelName.append(nodeName);
+			labelName.append(CHAR_UNDERSCORE);
 		}
 
-		return labelName;
+		if (TextScanner.appendLabel(labelName, text, 0, text.length()) == 0) {
+			labelName.append(NO_LETTERS);
+		}
+
+		return labelName.toString();
 
 	}
 
@@ -260,37 +268,6 @@ public class Util {
 		return nodeName.substring(index + 1);
 	}
 
-	/**
-	 * Adds the labelName as a key to the Properties p with the value of text.
-	 * 
-	 * @param labelValue the value of the new property
-	 * @param labelName  the name of the new property
-	 */
-	public static void addLabel(ResourceBundle rb, String labelValue, String labelName) {
-
-		String oldLabelValue = rb.getProperties().getProperty(labelName);
-
-		if (oldLabelValue == null) {
-			rb.getNewProperties().put(labelName, labelValue);
-		} else {
-
-			rb.getOldButUsed().put(labelName, labelValue);
-
-			if (!oldLabelValue.equals(labelValue)) {
-				writeConflictMessage(rb, labelValue, labelName, oldLabelValue);
-			}
-		}
-	}
-
-	/**
-	 * Writes conflicting property values message to ResourceBundle
-	 */
-	private static void writeConflictMessage(ResourceBundle resourceBundle, String labelValue, String labelName,
-			String oldLabelValue) {
-		resourceBundle.getMessages().add("Property: \"" + labelName + "\" already exist with value: \"" + //
-				oldLabelValue + "\", the new value would have been: \"" + labelValue + "\"");
-	}
-
 	/**
 	 * Removes characters from the beginning and end from {@code text} to whom
 	 * {@link Character#isWhitespace(char)} returns true.
@@ -300,212 +277,266 @@ public class Util {
 	 */
 	public static String trim(String text) {
 
-		StringBuilder sb = new StringBuilder(text);
-		while (sb.length() > 0 && Character.isWhitespace(sb.charAt(0))) {
-			sb.deleteCharAt(0);
-		}
-		while (sb.length() > 0 && Character.isWhitespace(sb.charAt(sb.length() - 1))) {
-			sb.deleteCharAt(sb.length() - 1);
-		}
-		return sb.toString();
+		return TextScanner.trim(text);
 	}
 
 	/**
-	 * Writes a line ({@link Constants#COMMENT_LINE}) into the buffer {@code bw}
+	 * Saves the property data to the given file name (overwrites the original).
+	 * The shards of the resource bundle are deleted, the file replaces them.
 	 * 
-	 * @param bw the BufferedWriter
-	 * @throws IOException
+	 * @param rb ResourceBundle
+	 * @throws IOException throwen if the operation is unsuccessfull
 	 */
-	public static void writeLine(BufferedWriter bw) throws IOException {
-		bw.write(COMMENT_LINE);
+	static void saveProperties(ResourceBundle rb) throws IOException {
+
+		writePropertyFile(rb);
+
+		ShardWriter.deleteShards(rb.getPropertiesFile());
 	}
 
 	/**
-	 * Writes the comment block into the buffer
+	 * Writes the property data to the messages_xx.properties file of the resource
+	 * bundle (overwrites the original)
 	 * 
-	 * @param rb {@link ResourceBundle}
-	 * @param bw {@link BufferedWriter}
+	 * @param rb ResourceBundle
+	 * @throws IOException throwen if the operation is unsuccessfull
 	 */
-	public static void writeComments(ResourceBundle rb, BufferedWriter bw) throws IOException {
-		writeLine(bw);
-		bw.write(GENERATED_ON + new Date() + CRLF);
-		writeLine(bw);
+	static void writePropertyFile(ResourceBundle rb) throws IOException {
 
-		if (rb.getMessages().size() > 0) {
-			writeWarningsAsComments(rb, bw);
-		}
-	}
+		System.out.println(SAVING + rb.getPropertiesFile().getName());
+
+		Properties oldButUsed = rb.getOldButUsed();
+		Properties newProperties = rb.getNewProperties();
+		Properties oldNotUsed = rb.getOldNotUsed();
+
+		addDateTimeFormatIfNotFound(oldButUsed, oldNotUsed, newProperties);
+
+		// written to a temporary file and renamed, never left half-written
+		File tempFile = new File(rb.getPropertiesFile().getPath() + TMP);
+
+		try {
+			try (PropertiesWriter writer = PropertiesWriter.open(tempFile)) {
+
+				writer.writeComments(new Date(), rb.getMessages());
 
-	private static void writeWarningsAsComments(ResourceBundle rb, BufferedWriter bw) throws IOException {
-		bw.write(COMMENTS);
+				writeSections(writer, oldButUsed, newProperties, oldNotUsed);
+			}
 
-		for (String s : rb.getMessages()) {
-			bw.write(HASHMARK + saveConvert(s, true, false) + CRLF);
+			replaceFile(tempFile, rb.getPropertiesFile());
+		} finally {
+			tempFile.delete();
 		}
-		bw.write(CRLF);
 	}
 
 	/**
-	 * Writes the properties into a BufferedWriter
+	 * Writes the sections of a property file: the old but used, the new and the
+	 * old and not used properties
 	 * 
-	 * @param header     the header String
-	 * @param properties Properties
-	 * @param bw         BufferedWriter
-	 * @throws IOException when an error happens
+	 * @param writer        the writer of the file
+	 * @param oldButUsed    the properties of the file found in the xhtml files
+	 * @param newProperties the properties found in the xhtml files only
+	 * @param oldNotUsed    the properties of the file not found in the xhtml
+	 *                      files
+	 * @throws IOException on I/O errors
 	 */
-	public static void writeProperties(String header, Properties properties, BufferedWriter bw) throws IOException {
-		ArrayList<String> propLines = new ArrayList<String>(properties.size());
+	static void writeSections(PropertiesWriter writer, Properties oldButUsed, Properties newProperties,
+			Properties oldNotUsed) throws IOException {
 
-		Enumeration<Object> keys = properties.keys();
-		while (keys.hasMoreElements()) {
-			String key = (String) keys.nextElement();
-			String value = properties.getProperty(key);
-			String line = saveConvert(key, true, true) + EQUALS + saveConvert(value, false, true);
-			propLines.add(line);
+		if (oldButUsed.size() > 0) {
 
+			writer.writeProperties(OLD_BUT_USED_PROPERTIES, oldButUsed);
+		} else {
+			writer.writeHeader(THERE_ARE_NO_OLD_BUT_USED_PROPERTIES);
 		}
 
-		Collections.sort(propLines);
+		if (newProperties.size() > 0) {
 
-		String lead = EMPTY_STRING;
-		String prev = EMPTY_STRING;
-		writeLine(bw);
-		bw.write(HASHMARK + saveConvert(header, true, false) + CRLF);
-		writeLine(bw);
+			writer.writeProperties(NEW_PROPERTIES, newProperties);
+		} else {
+			writer.writeHeader(THERE_ARE_NO_NEW_PROPERTIES);
+		}
 
-		for (String line : propLines) {
-			lead = getLead(line);
-			if (!prev.equals(lead)) {
+		if (oldNotUsed.size() > 0) {
 
-				bw.write(NEWLINE);
-				bw.write(PROPERTY_FILE_COMMENT_START + lead + NEWLINE);
-			}
-			prev = lead;
-			bw.write(line + NEWLINE);
+			writer.writeProperties(
+					OLD_AND_UNUSED_PROPERTIES_SOME_ENTRIES_MAY_BE_REMOVABLE_EXCEPT_JSF_AND_SEAM_PROPERTIES,
+					oldNotUsed);
+		} else {
+			writer.writeHeader(THERE_ARE_NO_OLD_AND_NOT_USED_PROPERTIES);
 		}
 	}
 
 	/**
-	 * Writes the header
-	 * 
-	 * @param string the header String
-	 * @param bw     BufferedWriter
-	 * @throws IOException when error happens
+	 * Adds the default date time format to the new properties, if the file does
+	 * not contain it (the file contains the old properties)
 	 */
-	static void writeHeader(String string, BufferedWriter bw) throws IOException {
-
-		writeLine(bw);
-		bw.write(HASHMARK + saveConvert(string, true, true) + CRLF);
-		writeLine(bw);
+	static void addDateTimeFormatIfNotFound(Properties oldButUsed, Properties oldNotUsed,
+			Properties newProperties) {
+		if (oldButUsed.getProperty(DATE_TIME_FORMAT) == null && oldNotUsed.getProperty(DATE_TIME_FORMAT) == null) {
+			newProperties.put(DATE_TIME_FORMAT, YYYY_MM_DD_HH_MM_SS_Z);
+		}
 	}
 
 	/**
-	 * Saves the property data to the given file name (overwrites the original)
+	 * Loads the given file from the classpath and returns its bytes
 	 * 
-	 * @param rb ResourceBundle
-	 * @throws IOException throwen if the operation is unsuccessfull
+	 * @param path the path to the resource
+	 * @return the file's content
+	 * @throws IOException if the resource is not found or cannot be read
 	 */
-	static void saveProperties(ResourceBundle rb) throws IOException {
-
-		System.out.println(SAVING + rb.getPropertiesFile().getName());
+	public static byte[] loadFromClasspath(String path) throws IOException {
 
-		addDateTimeFormatIfNotFound(rb);
+		try (InputStream is = I18nGen.class.getResourceAsStream(RES + path)) {
 
-		BufferedWriter bw = new BufferedWriter(
-				new OutputStreamWriter(new FileOutputStream(rb.getPropertiesFile()), ISO_8859_1));
+			if (is == null) {
+				throw new IOException(RESOURCE_NOT_FOUND + RES + path);
+			}
+			return is.readAllBytes();
+		}
+	}
 
-		writeComments(rb, bw);
+	/**
+	 * Reads the content of the file, the bytes read are counted in the
+	 * {@link Metrics}
+	 * 
+	 * @param file the file to read
+	 * @return the content of the file
+	 * @throws IOException on I/O errors
+	 */
+	public static byte[] readFile(File file) throws IOException {
 
-		normalizeOldProperties(rb);
+		byte[] content = Files.readAllBytes(file.toPath());
 
-		if (rb.getOldButUsed().size() > 0) {
+		Metrics.add(Counter.BYTES_READ, content.length);
+		return content;
+	}
 
-			writeProperties(OLD_BUT_USED_PROPERTIES, rb.getOldButUsed(), bw);
-		} else {
-			writeHeader(THERE_ARE_NO_OLD_BUT_USED_PROPERTIES, bw);
-		}
+	/**
+	 * Returns the path of the file relative to the root, with '/' separators
+	 * 
+	 * @param root the root directory (absolute)
+	 * @param file the file in the root directory
+	 * @return the relative path
+	 */
+	public static String getRelativePath(Path root, File file) {
+		Path relative = root.relativize(file.toPath().toAbsolutePath());
+		return relative.toString().replace(File.separatorChar, '/');
+	}
 
-		if (rb.getNewProperties().size() > 0) {
+	/**
+	 * Writes the content to the file through a temporary file and an atomic
+	 * rename, unless the file already has the same content.
+	 * 
+	 * @param file     the file to write
+	 * @param original the original content of the file
+	 * @param content  the new content of the file
+	 * @return true if the file was written
+	 * @throws IOException on I/O errors
+	 */
+	public static boolean writeIfChanged(File file, byte[] original, byte[] content) throws IOException {
 
-			writeProperties(NEW_PROPERTIES, rb.getNewProperties(), bw);
-		} else {
-			writeHeader(THERE_ARE_NO_NEW_PROPERTIES, bw);
+		if (Arrays.equals(original, content)) {
+			return false;
 		}
 
-		if (rb.getOldNotUsed().size() > 0) {
-
-			writeProperties(OLD_AND_UNUSED_PROPERTIES_SOME_ENTRIES_MAY_BE_REMOVABLE_EXCEPT_JSF_AND_SEAM_PROPERTIES,
-					rb.getOldNotUsed(), bw);
-		} else {
-			writeHeader(THERE_ARE_NO_OLD_AND_NOT_USED_PROPERTIES, bw);
+		File tempFile = new File(file.getPath() + TMP);
+		try {
+			Files.write(tempFile.toPath(), content);
+			replaceFile(tempFile, file);
+		} finally {
+			tempFile.delete();
 		}
-
-		bw.close();
+		return true;
 	}
 
-	private static void addDateTimeFormatIfNotFound(ResourceBundle rb) {
-		if (rb.getProperties().getProperty(DATE_TIME_FORMAT) == null) {
-			rb.getNewProperties().put(DATE_TIME_FORMAT, YYYY_MM_DD_HH_MM_SS_Z);
+	/**
+	 * Writes the new content of a processed page like
+	 * {@link #writeIfChanged(File, byte[], byte[])}, calling the
+	 * {@link PageProcessor.WriteAhead} before the file is replaced
+	 * 
+	 * @param page       the processed page
+	 * @param original   the original content of the file
+	 * @param content    the new content of the file
+	 * @param writeAhead the listener or null
+	 * @return true if the file was written
+	 * @throws IOException on I/O errors
+	 */
+	static boolean writeIfChanged(ProcessedPage page, byte[] original, byte[] content,
+			PageProcessor.WriteAhead writeAhead) throws IOException {
+
+		if (writeAhead != null && !Arrays.equals(original, content)) {
+			writeAhead.beforeWrite(page, original, content);
 		}
+		return writeIfChanged(page.getFile(), original, content);
 	}
 
 	/**
-	 * old and not used properties = [old properties] - [old and used]
+	 * Moves the temporary file over the file, unless the file already has the
+	 * same content (the temporary file is deleted then).
 	 * 
-	 * @param rb the resource bundle
+	 * @param tempFile the temporary file with the new content
+	 * @param file     the file to replace
+	 * @return true if the file was replaced
+	 * @throws IOException on I/O errors
 	 */
-	private static void normalizeOldProperties(ResourceBundle rb) {
-		Enumeration<Object> old = rb.getProperties().keys();
-		while (old.hasMoreElements()) {
-			String oldKey = (String) old.nextElement();
-			String oldValue = rb.getProperties().getProperty(oldKey);
+	public static boolean replaceIfChanged(File tempFile, File file) throws IOException {
 
-			String oldButUsedValue = (String) rb.getOldButUsed().get(oldKey);
-
-			if (oldButUsedValue == null) {
-				rb.getOldNotUsed().put(oldKey, oldValue);
+		try {
+			if (hasSameContent(tempFile, file)) {
+				return false;
 			}
+			replaceFile(tempFile, file);
+			return true;
+		} finally {
+			tempFile.delete();
 		}
-
 	}
 
 	/**
-	 * Loads the content of the property file.
+	 * Renames the temporary file to the file atomically, so the file is never
+	 * left half-written. Falls back to a simple rename if the file system does
+	 * not support atomic renames.
 	 * 
-	 * @param f the file to load from
-	 * @throws IOException if I/O error occurs
+	 * @param tempFile the temporary file in the directory of the file
+	 * @param file     the file to replace
+	 * @throws IOException on I/O errors
 	 */
-	public static Properties loadPropertyFile(File f) throws FileNotFoundException, IOException {
-
-		Properties p = new Properties();
-
-		p.load(new FileInputStream(f));
-
-		return p;
+	static void replaceFile(File tempFile, File file) throws IOException {
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
 	}
 
 	/**
-	 * Loads the given file from the classpath and returns the content as a String
+	 * Returns true if the two files have the same content
 	 * 
-	 * @param path the path to the resource
-	 * @return the file's content as String
-	 * @throws IOException
+	 * @param a a file
+	 * @param b another file
+	 * @return true if the content of the files is the same
+	 * @throws IOException on I/O errors
 	 */
-	public static String loadFromClasspath(String path) throws IOException {
-
-		InputStream is = I18nGen.class.getResourceAsStream(RES + path);
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, UTF_8));
-		StringBuilder sb = new StringBuilder();
-		String line = null;
-		do {
-			line = br.readLine();
-			if (line != null) {
-				sb.append(line);
-				sb.append(NEWLINE);
-			}
-		} while (line != null);
+	static boolean hasSameContent(File a, File b) throws IOException {
 
-		return sb.toString();
+		if (a.length() != b.length()) {
+			return false;
+		}
+
+		try (InputStream ia = new FileInputStream(a); InputStream ib = new FileInputStream(b)) {
+
+			byte[] bufferA = new byte[COMPARE_BUFFER_SIZE];
+			byte[] bufferB = new byte[COMPARE_BUFFER_SIZE];
+
+			int read;
+			while ((read = ia.readNBytes(bufferA, 0, bufferA.length)) > 0) {
+				if (ib.readNBytes(bufferB, 0, read) != read
+						|| !Arrays.equals(bufferA, 0, read, bufferB, 0, read)) {
+					return false;
+				}
+			}
+			return ib.read() == -1;
+		}
 	}
 
 	/**
@@ -573,4 +604,22 @@ public class Util {
 		return locale;
 	}
 
+	/**
+	 * Returns the locale name from the name of the shard index of a resource
+	 * bundle (e.g.: "messages_en.index" gives "en")
+	 * 
+	 * @param name the file name
+	 * @return the locale name or null if the file name is not the name of a
+	 *         shard index
+	 */
+	static String getShardedLocale(String name) {
+		String locale = null;
+
+		if (name.startsWith(MESSAGES_) && name.endsWith(_INDEX)) {
+			locale = name.substring(MESSAGES_.length(), name.length() - _INDEX.length());
+		}
+
+		return locale;
+	}
+
 }
@@ -0,0 +1,58 @@
+package com.i18n;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads, if the Java runtime supports them (Java 21 or
+ * later). The project is compiled for an older Java version, so the factory of
+ * the virtual threads is looked up by reflection once.
+ */
+public class VirtualThreads {
+
+	/**
+	 * The factory of the virtual threads, null if they are not supported
+	 */
+	private static final ThreadFactory FACTORY = lookupFactory();
+
+	/**
+	 * Returns the factory of Thread.ofVirtual()
+	 *
+	 * @return the factory, null if virtual threads are not supported
+	 */
+	private static ThreadFactory lookupFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// before Java 21, or a preview API not enabled
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the Java runtime supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return FACTORY != null;
+	}
+
+	/**
+	 * Creates a virtual thread, not started. If virtual threads are not
+	 * supported, a platform thread is created instead.
+	 *
+	 * @param task the task of the thread
+	 * @param name the name of the thread
+	 * @return the thread
+	 */
+	public static Thread newThread(Runnable task, String name) {
+
+		if (FACTORY == null) {
+			return new Thread(task, name);
+		}
+
+		Thread thread = FACTORY.newThread(task);
+		thread.setName(name);
+		return thread;
+	}
+
+}
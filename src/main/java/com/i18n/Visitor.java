@@ -1,6 +1,8 @@
 package com.i18n;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Interface for visiting and directories and files.
@@ -23,4 +25,27 @@ public interface Visitor {
 	 */
 	public void process(File f) throws Exception;
 
+	/**
+	 * Should return true if the file/directory should be processed. The NIO
+	 * variant used by {@link PathWalker}, the attributes are read together with
+	 * the directory listing.
+	 * 
+	 * @param path       the file or directory to be processed
+	 * @param attributes the attributes of the file or directory
+	 * @return true if the file or directory should be processed
+	 */
+	public default boolean visit(Path path, BasicFileAttributes attributes) {
+		return visit(path.toFile());
+	}
+
+	/**
+	 * Process the file. The NIO variant used by {@link PathWalker}.
+	 * 
+	 * @param path the file to be processed
+	 * @throws Exception
+	 */
+	public default void process(Path path) throws Exception {
+		process(path.toFile());
+	}
+
 }
@@ -0,0 +1,147 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import org.xml.sax.EntityResolver;
+
+/**
+ * Per-thread pools of the XML parsers and serializers. The factories are looked
+ * up (through service loading) only once, every thread creates its parsers and
+ * serializers once, and they are reset before each document.
+ */
+public class XmlPools {
+
+	/**
+	 * The factory of the DOM parsers, guarded by itself
+	 */
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+	/**
+	 * The factory of the serializers, guarded by itself
+	 */
+	private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+	/**
+	 * The DOM parser of the thread
+	 */
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = new ThreadLocal<DocumentBuilder>();
+
+	/**
+	 * The serializer of the thread
+	 */
+	private static final ThreadLocal<Transformer> TRANSFORMERS = new ThreadLocal<Transformer>();
+
+	/**
+	 * The StAX event factory of the thread
+	 */
+	private static final ThreadLocal<XMLEventFactory> EVENT_FACTORIES = new ThreadLocal<XMLEventFactory>();
+
+	/**
+	 * The StAX output factory of the thread
+	 */
+	private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORIES = new ThreadLocal<XMLOutputFactory>();
+
+	/**
+	 * Utility class, no instances
+	 */
+	private XmlPools() {
+	}
+
+	/**
+	 * Returns the DOM parser of the current thread, reset to its original
+	 * configuration and set up with the given {@link EntityResolver}
+	 *
+	 * @param entityResolver the entity resolver for the next document
+	 * @return the parser
+	 * @throws ParserConfigurationException if the parser cannot be created
+	 */
+	public static DocumentBuilder getDocumentBuilder(EntityResolver entityResolver)
+			throws ParserConfigurationException {
+
+		DocumentBuilder builder = DOCUMENT_BUILDERS.get();
+
+		if (builder == null) {
+			synchronized (DOCUMENT_BUILDER_FACTORY) {
+				builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			}
+			DOCUMENT_BUILDERS.set(builder);
+		} else {
+			builder.reset();
+		}
+
+		// reset() removes the entity resolver too
+		builder.setEntityResolver(entityResolver);
+
+		return builder;
+	}
+
+	/**
+	 * Returns the serializer of the current thread, reset and set up to indent
+	 * the output by {@link Constants#INDENT_4}
+	 *
+	 * @return the serializer
+	 * @throws TransformerConfigurationException if the serializer cannot be
+	 *                                           created
+	 */
+	public static Transformer getTransformer() throws TransformerConfigurationException {
+
+		Transformer transformer = TRANSFORMERS.get();
+
+		if (transformer == null) {
+			synchronized (TRANSFORMER_FACTORY) {
+				transformer = TRANSFORMER_FACTORY.newTransformer();
+			}
+			TRANSFORMERS.set(transformer);
+		} else {
+			transformer.reset();
+		}
+
+		transformer.setOutputProperty(OutputKeys.INDENT, YES);
+		transformer.setOutputProperty(HTTP_XML_APACHE_ORG_XSLT_INDENT_AMOUNT, String.valueOf(INDENT_4));
+
+		return transformer;
+	}
+
+	/**
+	 * Returns the StAX event factory of the current thread
+	 *
+	 * @return the {@link XMLEventFactory}
+	 */
+	public static XMLEventFactory getEventFactory() {
+
+		XMLEventFactory factory = EVENT_FACTORIES.get();
+
+		if (factory == null) {
+			factory = XMLEventFactory.newInstance();
+			EVENT_FACTORIES.set(factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Returns the StAX output factory of the current thread
+	 *
+	 * @return the {@link XMLOutputFactory}
+	 */
+	public static XMLOutputFactory getOutputFactory() {
+
+		XMLOutputFactory factory = OUTPUT_FACTORIES.get();
+
+		if (factory == null) {
+			factory = XMLOutputFactory.newInstance();
+			OUTPUT_FACTORIES.set(factory);
+		}
+		return factory;
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.i18n;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Kills a -journal run while it rewrites the pages and resumes it: the
+ * resource bundles must be the same as the ones of a run which was not
+ * interrupted, although the killed run already replaced the texts of some
+ * pages with EL expressions
+ */
+public class JournalTest {
+
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+			+ "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" "
+			+ "\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n"
+			+ "<ui:composition xmlns=\"http://www.w3.org/1999/xhtml\" xmlns:ui=\"http://java.sun.com/jsf/facelets\" "
+			+ "xmlns:h=\"http://java.sun.com/jsf/html\">\n";
+
+	private static final String FOOTER = "</ui:composition>\n";
+
+	/**
+	 * The number of the generated pages, enough to kill the run before it ends
+	 */
+	private static final int PAGES = 1500;
+
+	/**
+	 * The time between the first journaled page and the kill
+	 */
+	private static final int KILL_DELAY_MILLIS = 300;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void killAndResume() throws Exception {
+
+		File expected = createCorpus("expected");
+		File killed = createCorpus("killed");
+
+		assertEquals(0, run(expected, "-threads=2").waitFor());
+
+		Process process = run(killed, "-journal", "-threads=2");
+		File journalFile = new File(killed, "bundles/" + Constants.JOURNAL_FILE);
+
+		// killed a while after the first page is journaled, in the middle of the
+		// rewriting, not right after a batch was written
+		while (process.isAlive() && !(journalFile.isFile() && journalFile.length() > 0)) {
+			Thread.sleep(1);
+		}
+		Thread.sleep(KILL_DELAY_MILLIS);
+		process.destroyForcibly();
+		process.waitFor(1, TimeUnit.MINUTES);
+
+		int rewritten = countRewrittenPages(killed);
+		assertTrue(rewritten > 0, "no page was rewritten before the kill");
+		assertTrue(rewritten < PAGES, "the run ended before the kill");
+		assertTrue(journalFile.isFile());
+
+		assertEquals(0, run(killed, "-journal", "-threads=2").waitFor());
+
+		assertFalse(journalFile.exists());
+		assertEquals(PAGES, countRewrittenPages(killed));
+		assertEquals(load(new File(expected, "bundles/messages_en.properties")),
+				load(new File(killed, "bundles/messages_en.properties")));
+	}
+
+	@Test
+	public void completeLength() throws IOException {
+
+		assertEquals(0, Journal.getCompleteLength(bytes("")));
+		assertEquals(0, Journal.getCompleteLength(bytes("P\ta\th\tREWRITTEN\t0\r\n")));
+		assertEquals(3, Journal.getCompleteLength(bytes("B\r\nP\ta")));
+		assertEquals(22, Journal.getCompleteLength(bytes("P\ta\th\tREWRITTEN\t0\r\nB\r\nL\tB\r")));
+		// a label value ending with B is not a batch line
+		assertEquals(0, Journal.getCompleteLength(bytes("L\tname\tB\r\n")));
+	}
+
+	/**
+	 * Runs I18nGen on the corpus in a new process
+	 */
+	private static Process run(File corpus, String... options) throws IOException {
+
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(I18nGen.class.getName());
+		command.add(new File(corpus, "xhtml").getPath());
+		command.add(new File(corpus, "bundles").getPath());
+		command.add("ISO-8859-1");
+		for (String option : options) {
+			command.add(option);
+		}
+
+		return new ProcessBuilder(command).redirectErrorStream(true)
+				.redirectOutput(new File(corpus, "output.txt")).start();
+	}
+
+	/**
+	 * Creates the xhtml pages and an empty resource bundle
+	 */
+	private File createCorpus(String name) throws IOException {
+
+		File corpus = dir.resolve(name).toFile();
+		File xhtml = new File(corpus, "xhtml");
+		File bundles = new File(corpus, "bundles");
+		xhtml.mkdirs();
+		bundles.mkdirs();
+
+		Files.write(new File(bundles, "messages_en.properties").toPath(), new byte[0]);
+
+		for (int i = 0; i < PAGES; i++) {
+			String body = "  <h1>Page " + i + " title</h1>\n" //
+					+ "  <p>Common text</p>\n" //
+					+ "  <h:outputLabel value=\"Label of page " + i + "\"/>\n";
+			Files.write(new File(xhtml, "page" + i + ".xhtml").toPath(),
+					(HEADER + body + FOOTER).getBytes(StandardCharsets.ISO_8859_1));
+		}
+		return corpus;
+	}
+
+	/**
+	 * Returns the number of the pages whose texts were replaced
+	 */
+	private static int countRewrittenPages(File corpus) throws IOException {
+		int count = 0;
+		for (File page : new File(corpus, "xhtml").listFiles()) {
+			if (new String(Files.readAllBytes(page.toPath()), StandardCharsets.ISO_8859_1).contains("#{")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Loads the properties of the file
+	 */
+	private static HashMap<Object, Object> load(File file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+		return new HashMap<Object, Object>(properties);
+	}
+
+	private static byte[] bytes(String content) {
+		return content.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+}
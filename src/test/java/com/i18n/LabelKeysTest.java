@@ -0,0 +1,133 @@
+package com.i18n;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pins {@link LabelKeys} to a {@link HashMap} of the names: the numbers in the
+ * order of the adding, the growth of the arrays and of the hash table, the
+ * names split after their second underscore and the colliding hash codes
+ */
+public class LabelKeysTest {
+
+	/**
+	 * The fragments of the generated names, "Aa" and "BB" have the same hash
+	 * code, so do the names only differing in them
+	 */
+	private static final String[] FRAGMENTS = { "", "_", "__", "a", "b", "orderEdit", "outputText", "h1", "Aa",
+			"BB", "\u00e9", "\u20ac" };
+
+	@Test
+	public void cornerCases() {
+		String[] names = { "", "_", "__", "___", "a", "a_", "_a", "a_b", "a_b_", "a_b_c", "a__c", "__c", "a_b_c_d",
+				"a_b", "", "a_bc", "ab_c", "orderEdit_outputText_1", "orderEdit_outputText_10",
+				"orderEdit_outputText_", "orderEdit_outputText", "orderEdit_h1_1", "\u00e9_\u20ac_x" };
+
+		check(names);
+	}
+
+	@Test
+	public void collidingHashes() {
+
+		// every combination of "Aa" and "BB" has the same hash code, with or
+		// without a shared prefix
+		List<String> names = new ArrayList<String>();
+		for (String prefix : new String[] { "", "x_", "x_y_", "Aa_BB_" }) {
+			for (int combination = 0; combination < 256; combination++) {
+				StringBuilder sb = new StringBuilder(prefix);
+				for (int bit = 0; bit < 8; bit++) {
+					sb.append((combination & (1 << bit)) == 0 ? "Aa" : "BB");
+				}
+				names.add(sb.toString());
+			}
+		}
+		assertEquals(names.get(0).hashCode(), names.get(255).hashCode());
+
+		check(names.toArray(new String[names.size()]));
+	}
+
+	@Test
+	public void growth() {
+		LabelKeys keys = new LabelKeys();
+
+		// far beyond the initial sizes of the table, of the arrays and of the
+		// characters, checked at every rehash
+		for (int number = 0; number < 100000; number++) {
+			String name = "page" + (number % 37) + "_text_" + number;
+			assertEquals(-1, keys.find(name));
+			assertEquals(number, keys.add(name));
+			assertEquals(number + 1, keys.size());
+
+			if (Integer.bitCount(number) == 1) {
+				for (int i = 0; i <= number; i++) {
+					String added = "page" + (i % 37) + "_text_" + i;
+					assertEquals(i, keys.find(added));
+					assertEquals(added, keys.get(i));
+				}
+			}
+		}
+		assertEquals(-1, keys.find("page0_text_100000"));
+	}
+
+	@Test
+	public void randomNames() {
+		Random random = new Random(20181029L);
+
+		for (int n = 0; n < 200; n++) {
+			String[] names = new String[random.nextInt(2000)];
+			for (int i = 0; i < names.length; i++) {
+				StringBuilder sb = new StringBuilder();
+				for (int j = random.nextInt(8); j > 0; j--) {
+					sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+				}
+				names[i] = sb.toString();
+			}
+			check(names);
+		}
+	}
+
+	/**
+	 * Adds the names (repeated ones included) and compares the numbers and the
+	 * lookups with a {@link HashMap}
+	 */
+	private static void check(String[] names) {
+		LabelKeys keys = new LabelKeys();
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+
+		for (String name : names) {
+			Integer number = expected.get(name);
+			assertEquals(number == null ? -1 : number.intValue(), keys.find(name), name);
+			if (number == null) {
+				number = expected.size();
+				expected.put(name, number);
+			}
+			assertEquals(number.intValue(), keys.add(name), name);
+			assertEquals(expected.size(), keys.size());
+		}
+
+		for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue().intValue(), keys.find(entry.getKey()), entry.getKey());
+			assertEquals(entry.getKey(), keys.get(entry.getValue()));
+		}
+
+		// absent names: longer, shorter and with the same prefix as the added ones
+		for (String name : names) {
+			for (String absent : new String[] { name + "_", name + "Aa", "_" + name, name + "\u0000" }) {
+				if (!expected.containsKey(absent)) {
+					assertEquals(-1, keys.find(absent), absent);
+				}
+			}
+			if (name.length() > 0 && !expected.containsKey(name.substring(1))) {
+				assertEquals(-1, keys.find(name.substring(1)), name);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.i18n;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pins {@link MappedPropertyFile} to {@link Properties#load(java.io.InputStream)},
+ * which read the property files before: the escapes, the line continuations,
+ * the key terminators, the comments, the line ends and ISO-8859-1
+ */
+public class MappedPropertyFileTest {
+
+	/**
+	 * The fragments of the generated files
+	 */
+	private static final String[] FRAGMENTS = { "a", "key", "_", ".", " ", "  ", "\t", "\f", "=", ":", " = ", " : ",
+			"\\=", "\\:", "\\ ", "\\\\", "\\t", "\\n", "\\r", "\\f", "\\x", "\\u00e9", "\\u20AC", "\u00e9", "\u00ff",
+			"#", "!", "\n", "\r\n", "\r", "\\\n", "\\\r\n", "\\\r", "\\\n   ", "\\\r\n\t", "\n# comment\n",
+			"\r\n! comment\r\n", "\n\n", "\n  \t\n" };
+
+	@Test
+	public void cornerCases() throws IOException {
+		String[] files = { "", "\n", "a", "a=", "=b", "a=b", "a b", "a:b", "a\tb", "a = b", "a : b ", " a=b", "a==b",
+				"a::b", "a\\=b=c", "a\\\n b=c", "a=b\\\n  c", "a=b\\", "a=b\\\\", "a=b\\\\\nc=d", "#a=b\nc=d",
+				"  #a=b", "a=\\u00e9\\u20ac", "a=\u00e9\u00ff", "a=b\r\nc=d\re=f\n", "a=b\\\r\n  c\r\n",
+				"a\\\n\n=b", "a=1\na=2", "\\#a=b", "a\\ b=c", "a=b\\\n#c", "a=\\\n\\\n  b" };
+
+		for (String file : files) {
+			check(file);
+		}
+	}
+
+	@Test
+	public void randomFiles() throws IOException {
+		Random random = new Random(20181029L);
+
+		for (int n = 0; n < 20000; n++) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = random.nextInt(30); i > 0; i--) {
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			check(sb.toString());
+		}
+	}
+
+	@Test
+	public void replacedWhileLoaded() throws IOException {
+
+		File file = File.createTempFile("messages_en", ".properties");
+		File tempFile = File.createTempFile("messages_en", ".tmp");
+		try {
+			Files.write(file.toPath(), "a=b\nc\u00e9\nd=e\n".getBytes(StandardCharsets.ISO_8859_1));
+			MappedPropertyFile loaded = MappedPropertyFile.load(file);
+
+			// the saving renames a new file over the loaded one and deletes the shards,
+			// both fail on Windows while the file has a mapped view
+			Files.write(tempFile.toPath(), "x=y\n".getBytes(StandardCharsets.ISO_8859_1));
+			Util.replaceFile(tempFile, file);
+			Files.delete(file.toPath());
+
+			assertEquals(3, loaded.size());
+			assertEquals("a", loaded.getKey(0));
+			assertEquals("b", loaded.getValue(0));
+			assertEquals("c\u00e9", loaded.getKey(1));
+			assertEquals("e", loaded.getValue(2));
+		} finally {
+			file.delete();
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Reads the file with both and compares the properties, the last value of a
+	 * key is the one used
+	 */
+	private static void check(String file) throws IOException {
+
+		byte[] bytes = file.getBytes(StandardCharsets.ISO_8859_1);
+
+		Properties expected = new Properties();
+		expected.load(new ByteArrayInputStream(bytes));
+
+		MappedPropertyFile mapped = new MappedPropertyFile(ByteBuffer.wrap(bytes));
+		Map<Object, Object> actual = new HashMap<Object, Object>();
+
+		for (int i = 0; i < mapped.size(); i++) {
+			String value = mapped.getValue(i);
+			actual.put(mapped.getKey(i), value);
+			assertTrue(mapped.valueEquals(i, value), file);
+		}
+
+		assertEquals(new HashMap<Object, Object>(expected), actual, file);
+	}
+
+}
@@ -0,0 +1,227 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pins {@link PropertiesWriter} to the BufferedWriter based writing it
+ * replaced: saveConvert on every key and value, the lines sorted as Strings,
+ * the comments of the leads, ISO-8859-1. The old implementation is kept below
+ * as it was.
+ */
+public class PropertiesWriterTest {
+
+	/**
+	 * The characters of the generated keys and values: the separators, the lead
+	 * delimiters, the escaped characters, Latin-1 and non Latin-1 characters
+	 */
+	private static final String ALPHABET = "aBz09 _.=:#!\\\t\n\r\u00e9\u00ff\u0151\u20ac";
+
+	@Test
+	public void emptySections() throws IOException {
+		Date date = new Date(0);
+
+		byte[] expected = oldWrite(date, Collections.<String>emptyList(), new Properties());
+		byte[] actual = newWrite(date, Collections.<String>emptyList(), new Properties());
+
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void randomProperties() throws IOException {
+		Random random = new Random(20181029L);
+		Date date = new Date(1540800000000L);
+
+		for (int n = 0; n < 500; n++) {
+			Properties properties = new Properties();
+			int size = random.nextInt(40);
+			for (int i = 0; i < size; i++) {
+				properties.put(randomText(random, 1 + random.nextInt(10)), randomText(random, random.nextInt(20)));
+			}
+			List<String> messages = new ArrayList<String>();
+			for (int i = random.nextInt(3); i > 0; i--) {
+				messages.add(randomText(random, random.nextInt(30)));
+			}
+
+			assertArrayEquals(oldWrite(date, messages, properties), newWrite(date, messages, properties),
+					properties.toString());
+		}
+	}
+
+	@Test
+	public void generatedKeys() throws IOException {
+		Properties properties = new Properties();
+		properties.put("orderEdit_TEXT_Save", "Save");
+		properties.put("orderEdit_TEXT_Cancel", "M\u00e9gse");
+		properties.put("orderList.title", "Orders \u20ac");
+		properties.put("dateTimeFormat", "yyyy.MM.dd");
+		properties.put("order", "=:#");
+		Date date = new Date(0);
+
+		assertArrayEquals(oldWrite(date, Arrays.asList("conflict"), properties),
+				newWrite(date, Arrays.asList("conflict"), properties));
+	}
+
+	/**
+	 * Returns a random text of the alphabet
+	 */
+	private static String randomText(Random random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the comments, a section and an empty section with the
+	 * {@link PropertiesWriter}
+	 */
+	private static byte[] newWrite(Date date, List<String> messages, Properties properties) throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (PropertiesWriter writer = new PropertiesWriter(Channels.newChannel(out), 64)) {
+			writer.writeComments(date, messages);
+			writer.writeProperties(NEW_PROPERTIES, properties);
+			writer.writeHeader(THERE_ARE_NO_OLD_AND_NOT_USED_PROPERTIES);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Writes the comments, a section and an empty section as Util did before
+	 * {@link PropertiesWriter}
+	 */
+	private static byte[] oldWrite(Date date, List<String> messages, Properties properties) throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.ISO_8859_1))) {
+
+			bw.write(COMMENT_LINE);
+			bw.write(GENERATED_ON + date + CRLF);
+			bw.write(COMMENT_LINE);
+
+			if (messages.size() > 0) {
+				bw.write(COMMENTS);
+				for (String s : messages) {
+					bw.write(HASHMARK + saveConvert(s, true, false) + CRLF);
+				}
+				bw.write(CRLF);
+			}
+
+			oldWriteProperties(NEW_PROPERTIES, properties, bw);
+
+			bw.write(COMMENT_LINE);
+			bw.write(HASHMARK + saveConvert(THERE_ARE_NO_OLD_AND_NOT_USED_PROPERTIES, true, true) + CRLF);
+			bw.write(COMMENT_LINE);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Util.writeProperties before {@link PropertiesWriter}
+	 */
+	private static void oldWriteProperties(String header, Properties properties, BufferedWriter bw)
+			throws IOException {
+		ArrayList<String> propLines = new ArrayList<String>(properties.size());
+
+		Enumeration<Object> keys = properties.keys();
+		while (keys.hasMoreElements()) {
+			String key = (String) keys.nextElement();
+			String value = properties.getProperty(key);
+			String line = saveConvert(key, true, true) + EQUALS + saveConvert(value, false, true);
+			propLines.add(line);
+		}
+
+		Collections.sort(propLines);
+
+		String lead = EMPTY_STRING;
+		String prev = EMPTY_STRING;
+		bw.write(COMMENT_LINE);
+		bw.write(HASHMARK + saveConvert(header, true, false) + CRLF);
+		bw.write(COMMENT_LINE);
+
+		for (String line : propLines) {
+			lead = getLead(line);
+			if (!prev.equals(lead)) {
+
+				bw.write(NEWLINE);
+				bw.write(PROPERTY_FILE_COMMENT_START + lead + NEWLINE);
+			}
+			prev = lead;
+			bw.write(line + NEWLINE);
+		}
+	}
+
+	/**
+	 * Util.getLead before {@link PropertiesWriter}
+	 */
+	private static String getLead(String line) {
+		int index = line.indexOf(CHAR_UNDERSCORE);
+		if (index == -1) {
+			index = line.indexOf(CHAR_DOT);
+		}
+		if (index == -1) {
+			index = line.indexOf('=');
+		}
+
+		if (index == -1) {
+			return line;
+		} else {
+			return line.substring(0, index);
+		}
+	}
+
+	/**
+	 * Util.saveConvert before {@link PropertiesWriter}
+	 */
+	private static String saveConvert(String theString, boolean escapeSpace, boolean escapeUnicode) {
+		int len = theString.length();
+		StringBuffer outBuffer = new StringBuffer(len * 2);
+
+		for (int x = 0; x < len; x++) {
+			char aChar = theString.charAt(x);
+
+			if ((aChar > 61) && (aChar < 127)) {
+				if (aChar == CHAR_BACKSLASH) {
+					outBuffer.append(CHAR_BACKSLASH);
+					outBuffer.append(CHAR_BACKSLASH);
+					continue;
+				}
+				outBuffer.append(aChar);
+				continue;
+			}
+			if (((aChar < 0x0020) || (aChar > 0x007e)) & escapeUnicode) {
+				outBuffer.append(CHAR_BACKSLASH);
+				outBuffer.append(U);
+				outBuffer.append(hexDigit[(aChar >> 12) & 0xF]);
+				outBuffer.append(hexDigit[(aChar >> 8) & 0xF]);
+				outBuffer.append(hexDigit[(aChar >> 4) & 0xF]);
+				outBuffer.append(hexDigit[aChar & 0xF]);
+			} else {
+				outBuffer.append(aChar);
+			}
+		}
+		return outBuffer.toString();
+	}
+
+}
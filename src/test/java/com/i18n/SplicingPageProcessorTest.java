@@ -0,0 +1,151 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Pins the splicing rewrite to the streaming rewrite and to the DOM processing
+ * it replaces: the same labels, and the same document once the rewritten pages
+ * are parsed again, apart from the whitespace around the replaced texts, which
+ * the splicing keeps. The comments and the CDATA sections are kept as they
+ * were.
+ */
+public class SplicingPageProcessorTest {
+
+	private static final String ENCODING = "ISO-8859-1";
+
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+			+ "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" "
+			+ "\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n"
+			+ "<ui:composition xmlns=\"http://www.w3.org/1999/xhtml\" xmlns:ui=\"http://java.sun.com/jsf/facelets\" "
+			+ "xmlns:h=\"http://java.sun.com/jsf/html\">\n";
+
+	private static final String FOOTER = "</ui:composition>\n";
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void entities() throws Exception {
+		check("  <h1>Order &amp; items</h1>\n" //
+				+ "  <p>Price&nbsp;total #{bean.total}</p>\n" //
+				+ "  <p>Caf&eacute; &lt;menu&gt; &#233;t&#xE9;</p>\n" //
+				+ "  <h:outputLabel value=\"Caf&eacute; &amp; bar\"/>\n" //
+				+ "  <h:commandButton value=\"Save &quot;all&quot;\" action=\"#{bean.save}\"/>\n");
+	}
+
+	@Test
+	public void cdata() throws Exception {
+		check("  <p><![CDATA[Some <b>raw</b> text]]></p>\n" //
+				+ "  <p>Before <![CDATA[inside]]> after</p>\n" //
+				+ "  <script type=\"text/javascript\">//<![CDATA[\n var x = 1;\n//]]></script>\n");
+	}
+
+	@Test
+	public void comments() throws Exception {
+		check("  <!-- a comment with text -->\n" //
+				+ "  <p>Text <!-- inside --> more text</p>\n" //
+				+ "  <p><!-- only a comment --></p>\n" //
+				+ "  <h:outputText value=\"Name\"/><!-- after -->\n");
+	}
+
+	@Test
+	public void noLetters() throws Exception {
+		check("  <p>  </p>\n" //
+				+ "  <p>#{bean.value}</p>\n" //
+				+ "  <p>12:30 - 13:00</p>\n" //
+				+ "  <h:outputLabel value=\"#{bean.label}\"/>\n" //
+				+ "  <p>Latin-1 \u00e9\u00e1\u0151\u00fc</p>\n");
+	}
+
+	/**
+	 * Processes the page with the splicing, the streaming and the DOM processors
+	 * and compares the results
+	 *
+	 * @param body the body of the page
+	 */
+	private void check(String body) throws Exception {
+
+		byte[] original = (HEADER + body + FOOTER).getBytes(ENCODING);
+
+		GrammarCache grammarCache = new GrammarCache(getEntities());
+		DomPageProcessor dom = new DomPageProcessor(grammarCache, ENCODING);
+
+		File spliced = write("splice", original);
+		File streamed = write("stream", original);
+		File parsed = write("dom", original);
+
+		ProcessedPage splicedPage = new SplicingPageProcessor(grammarCache, ENCODING).process(spliced);
+		ProcessedPage streamedPage = new StreamingPageProcessor(grammarCache, ENCODING).process(streamed);
+		ProcessedPage domPage = dom.process(parsed);
+
+		assertEquals(domPage.getLabels().toString(), splicedPage.getLabels().toString());
+		assertEquals(streamedPage.getLabels().toString(), splicedPage.getLabels().toString());
+
+		Document splicedDocument = dom.parse(Files.readAllBytes(spliced.toPath()));
+		Document streamedDocument = dom.parse(Files.readAllBytes(streamed.toPath()));
+
+		trimTexts(splicedDocument);
+		trimTexts(streamedDocument);
+
+		assertEquals(Util.getString(streamedDocument), Util.getString(splicedDocument));
+
+		String content = new String(Files.readAllBytes(spliced.toPath()), ENCODING);
+		for (String kept : new String[] { "<!--", "<![CDATA[" }) {
+			for (int i = body.indexOf(kept); i >= 0; i = body.indexOf(kept, i + 1)) {
+				String node = body.substring(i, body.indexOf(kept.equals("<!--") ? "-->" : "]]>", i));
+				assertTrue(content.contains(node), node);
+			}
+		}
+
+		// the rewritten page has nothing left to replace
+		assertFalse(new SplicingPageProcessor(grammarCache, ENCODING).process(spliced).isModified());
+	}
+
+	/**
+	 * Removes the whitespaces around the texts of the text nodes
+	 */
+	private static void trimTexts(Node node) {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.TEXT_NODE) {
+				child.setNodeValue(child.getNodeValue().trim());
+			}
+			trimTexts(child);
+		}
+	}
+
+	/**
+	 * Writes the page into a directory of its own, with the same file name
+	 */
+	private File write(String name, byte[] content) throws Exception {
+		File pageDir = dir.resolve(name).toFile();
+		pageDir.mkdirs();
+		File file = new File(pageDir, "page.xhtml");
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	/**
+	 * Returns the xhtml DTD and entities, as I18nGen registers them
+	 */
+	private static Map<String, String> getEntities() {
+		Map<String, String> entities = new HashMap<String, String>();
+		entities.put(W3C_DTD_XHTML_1_0_TRANSITIONAL_EN, XHTML1_TRANSITIONAL_DTD);
+		entities.put(W3C_ENTITIES_LATIN_1_FOR_XHTML_EN, XHTML_LAT1_ENT);
+		entities.put(W3C_ENTITIES_SYMBOLS_FOR_XHTML_EN, XHTML_SYMBOL_ENT);
+		entities.put(W3C_ENTITIES_SPECIAL_FOR_XHTML_EN, XHTML_SPECIAL_ENT);
+		return entities;
+	}
+
+}
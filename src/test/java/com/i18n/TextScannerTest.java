@@ -0,0 +1,155 @@
+package com.i18n;
+
+import static com.i18n.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pins {@link TextScanner} (and the {@link Util} methods delegating to it) to
+ * the String based implementations it replaced, kept below as they were
+ */
+public class TextScannerTest {
+
+	/**
+	 * The characters of the generated texts: letters, whitespaces and the
+	 * characters of the EL expressions
+	 */
+	private static final String ALPHABET = "aZ\u00e9\u0151 \t\n\u00a0#{}$_1.-";
+
+	@Test
+	public void cornerCases() {
+		String[] texts = { "", " ", "a", " a ", "#{", "#{a", "#{a}", "a#{b}", "#{a} b", "1 2", "a1", "1a", "#{a}#{b}",
+				"x #{a", "}", "{#", "_a_", "\u00a0a\u00a0", "a b c" };
+
+		for (String text : texts) {
+			check(text);
+		}
+	}
+
+	@Test
+	public void randomTexts() {
+		Random random = new Random(20181029L);
+
+		for (int n = 0; n < 100000; n++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int i = 0; i < length; i++) {
+				sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+			check(sb.toString());
+		}
+	}
+
+	@Test
+	public void ranges() {
+		Random random = new Random(5L);
+
+		for (int n = 0; n < 20000; n++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int i = 0; i < length; i++) {
+				sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+			String text = sb.toString();
+			int start = random.nextInt(length + 1);
+			int end = start + random.nextInt(length - start + 1);
+			String range = text.substring(start, end);
+
+			assertEquals(oldContainsNoLetters(range), TextScanner.containsNoLetters(text, start, end), range);
+			assertEquals(oldTrim(range), text.substring(TextScanner.trimStart(text, start, end),
+					TextScanner.trimEnd(text, TextScanner.trimStart(text, start, end), end)), range);
+		}
+	}
+
+	/**
+	 * Compares the methods with the old implementations
+	 */
+	private static void check(String text) {
+		assertEquals(oldContainsNoLetters(text), Util.containsNoLetters(text), text);
+		assertEquals(oldTrim(text), Util.trim(text), text);
+		assertEquals(oldConvertTextToLabel(text), Util.convertTextToLabel(text), text);
+	}
+
+	/**
+	 * Util.containsNoLetters before TextScanner
+	 */
+	private static boolean oldContainsNoLetters(String text) {
+
+		int length = text.length();
+		if (text == null || length == 0) {
+			return true;
+		}
+
+		int i = 0;
+		while (i < length) {
+
+			if (i + 1 < length && text.substring(i, i + 2).equals(EL_START)) {
+
+				while (i < length && text.charAt(i) != '}') {
+					i++;
+				}
+
+				if (i > length - 1 && text.charAt(length - 1) != '}') {
+					return false;
+				}
+
+				if (i > length - 1 && text.charAt(length - 1) == '}') {
+					return true;
+				}
+
+				i++;
+			}
+
+			if (i < length - 1 && Character.isLetter(text.charAt(i))) {
+				return false;
+			}
+
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 * Util.trim before TextScanner
+	 */
+	private static String oldTrim(String text) {
+
+		StringBuilder sb = new StringBuilder(text);
+		while (sb.length() > 0 && Character.isWhitespace(sb.charAt(0))) {
+			sb.deleteCharAt(0);
+		}
+		while (sb.length() > 0 && Character.isWhitespace(sb.charAt(sb.length() - 1))) {
+			sb.deleteCharAt(sb.length() - 1);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Util.convertTextToLabel before TextScanner
+	 */
+	private static String oldConvertTextToLabel(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (!Character.isLetter(c)) {
+				// Util.isLastCharUnderscore: true if the last character is not an underscore
+				if (sb.length() > 0 && sb.charAt(sb.length() - 1) != CHAR_UNDERSCORE) {
+					sb.append(UNDERSCORE);
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+
+		if (sb.length() == 0) {
+			return NO_LETTERS;
+		}
+
+		return sb.toString();
+	}
+
+}